@@ -2,6 +2,7 @@ package com.playmonumenta.redissync.adapters;
 
 import com.google.gson.JsonObject;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import org.bukkit.Location;
 import org.bukkit.entity.Player;
 import org.bukkit.scoreboard.Scoreboard;
@@ -21,16 +22,36 @@ public interface VersionAdapter {
 	}
 
 	class SaveData {
-		private final byte[] mData;
+		private final ByteBuffer mData;
 		private final @Nullable String mShardData;
 
 		protected SaveData(byte[] data, @Nullable String shardData) {
+			this(ByteBuffer.wrap(data), shardData);
+		}
+
+		protected SaveData(ByteBuffer data, @Nullable String shardData) {
 			mData = data;
 			mShardData = shardData;
 		}
 
+		/**
+		 * Returns the serialized data as an array. Copies the data unless it exactly fills its backing array,
+		 * prefer {@link #getDataBuffer()}
+		 */
 		public byte[] getData() {
-			return mData;
+			if (mData.hasArray() && mData.arrayOffset() == 0 && mData.position() == 0 && mData.remaining() == mData.array().length) {
+				return mData.array();
+			}
+			byte[] data = new byte[mData.remaining()];
+			mData.duplicate().get(data);
+			return data;
+		}
+
+		/**
+		 * Returns the serialized data without copying it
+		 */
+		public ByteBuffer getDataBuffer() {
+			return mData.duplicate();
 		}
 
 		public @Nullable String getShardData() {
@@ -44,6 +65,15 @@ public interface VersionAdapter {
 
 	Object retrieveSaveData(byte[] data, JsonObject shardData) throws IOException;
 
+	/**
+	 * Same as {@link #retrieveSaveData(byte[], JsonObject)}, adapters should override this to read the buffer in place
+	 */
+	default Object retrieveSaveData(ByteBuffer data, JsonObject shardData) throws IOException {
+		byte[] bytes = new byte[data.remaining()];
+		data.duplicate().get(bytes);
+		return retrieveSaveData(bytes, shardData);
+	}
+
 	SaveData extractSaveData(Object nbtObj, @Nullable ReturnParams returnParams) throws IOException;
 
 	void savePlayer(Player player) throws Exception;
@@ -9,6 +9,8 @@ import com.playmonumenta.mixinapi.v1.RedisSyncIO;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.logging.Logger;
 import javax.annotation.Nullable;
@@ -24,6 +26,20 @@ import org.bukkit.craftbukkit.v1_20_R3.scoreboard.CraftScoreboard;
 import org.bukkit.entity.Player;
 
 public class VersionAdapter_v1_20_R3 implements VersionAdapter {
+	/* Exposes the written bytes without the copy made by toByteArray() */
+	private static final class SaveDataOutputStream extends ByteArrayOutputStream {
+		private SaveDataOutputStream(int size) {
+			super(size);
+		}
+
+		private ByteBuffer toByteBuffer() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+	}
+
+	/* Size of the most recent save, used to size the next output buffer so it rarely needs to grow */
+	private volatile int mLastSaveSize = 64 * 1024;
+
 	/**
 	 * Creates the version adapter.
 	 *
@@ -46,7 +62,20 @@ public class VersionAdapter_v1_20_R3 implements VersionAdapter {
 
 	@Override
 	public Object retrieveSaveData(byte[] data, JsonObject shardData) throws IOException {
-		ByteArrayInputStream inBytes = new ByteArrayInputStream(data);
+		return retrieveSaveData(ByteBuffer.wrap(data), shardData);
+	}
+
+	@Override
+	public Object retrieveSaveData(ByteBuffer data, JsonObject shardData) throws IOException {
+		final InputStream inBytes;
+		if (data.hasArray()) {
+			/* Read the buffer in place */
+			inBytes = new ByteArrayInputStream(data.array(), data.arrayOffset() + data.position(), data.remaining());
+		} else {
+			byte[] bytes = new byte[data.remaining()];
+			data.duplicate().get(bytes);
+			inBytes = new ByteArrayInputStream(bytes);
+		}
 		CompoundTag nbt = NbtIo.readCompressed(inBytes, NbtAccounter.unlimitedHeap());
 
 		applyInt(shardData, nbt, "SpawnX");
@@ -128,9 +157,11 @@ public class VersionAdapter_v1_20_R3 implements VersionAdapter {
 			obj.add("Rotation", arr);
 		}
 
-		ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+		/* Leave some headroom so a slightly bigger save doesn't need to copy the whole buffer to grow */
+		SaveDataOutputStream outBytes = new SaveDataOutputStream(mLastSaveSize + mLastSaveSize / 8);
 		NbtIo.writeCompressed(nbt, outBytes);
-		return new VersionAdapter.SaveData(outBytes.toByteArray(), obj.toString());
+		mLastSaveSize = outBytes.size();
+		return new VersionAdapter.SaveData(outBytes.toByteBuffer(), obj.toString());
 	}
 
 	@Override
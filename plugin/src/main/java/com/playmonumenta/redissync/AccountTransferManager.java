@@ -199,7 +199,7 @@ public class AccountTransferManager implements Listener {
 				}
 
 				// Fetch the list of transfers from Redis
-				List<String> transferJsonStrList = RedisAPI.getInstance().async().zrangebyscore(REDIS_KEY, Range.from(
+				List<String> transferJsonStrList = RedisAPI.getInstance().asyncRead(RedisAPI.ReadSource.TRANSFER_LOG, REDIS_KEY).zrangebyscore(REDIS_KEY, Range.from(
 					startBound,
 					endBound
 				)).toCompletableFuture().join();
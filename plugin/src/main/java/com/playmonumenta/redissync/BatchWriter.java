@@ -0,0 +1,156 @@
+package com.playmonumenta.redissync;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * Base for the classes that collect writes locally and send them in batches from their own background thread.
+ * <p>
+ * Runs {@link #flush()} on a daemon thread at a fixed interval once {@link #start} is called, and keeps the counters
+ * shown by /redisstats and exported as metrics.
+ */
+public abstract class BatchWriter {
+	/* One field or member of one board, the unit writes are collected under */
+	protected static final class BoardKey<K> {
+		protected final String mBoard;
+		protected final K mKey;
+
+		protected BoardKey(String board, K key) {
+			mBoard = board;
+			mKey = key;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof BoardKey<?> boardKey && mBoard.equals(boardKey.mBoard) && mKey.equals(boardKey.mKey);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(mBoard, mKey);
+		}
+	}
+
+	private final String mStatsName;
+	private final String mMetricName;
+	private final ScheduledExecutorService mFlusher;
+
+	private final LongAdder mQueued = new LongAdder();
+	private final LongAdder mFlushes = new LongAdder();
+	private final LongAdder mFlushed = new LongAdder();
+
+	/**
+	 * @param statsName Label of this writer's line in /redisstats
+	 * @param metricName Middle part of this writer's metric names, monumenta_redis_[metricName]_queued_total etc
+	 * @param threadName Name of the flush thread
+	 */
+	protected BatchWriter(String statsName, String metricName, String threadName) {
+		mStatsName = statsName;
+		mMetricName = metricName;
+		mFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, threadName);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Starts flushing every interval. Called at the end of the subclass constructor, once its state is initialized
+	 */
+	protected void start(long interval, TimeUnit unit) {
+		long period = Math.max(1, interval);
+		mFlusher.scheduleAtFixedRate(this::scheduledFlush, period, period, unit);
+	}
+
+	/**
+	 * Sends everything pending now. Called by the flush thread, and on shutdown
+	 */
+	public abstract void flush();
+
+	/**
+	 * Number of writes waiting for the next flush
+	 */
+	public abstract int getPending();
+
+	/* An exception would cancel the fixed rate schedule, and nothing would ever be flushed again */
+	private void scheduledFlush() {
+		try {
+			flush();
+		} catch (Exception ex) {
+			MonumentaRedisSync.getInstance().getLogger().log(Level.SEVERE, "Failed to flush " + mStatsName, ex);
+		}
+	}
+
+	/**
+	 * Runs a flush on the flush thread as soon as possible, or right away on this thread if closed
+	 */
+	protected void flushSoon() {
+		try {
+			mFlusher.execute(this::scheduledFlush);
+		} catch (RejectedExecutionException ex) {
+			flush();
+		}
+	}
+
+	protected boolean isClosed() {
+		return mFlusher.isShutdown();
+	}
+
+	protected void close() {
+		mFlusher.shutdown();
+		flush();
+	}
+
+	protected void recordQueued() {
+		mQueued.increment();
+	}
+
+	/**
+	 * Counts a flush that sent items writes as the given commands, and times them under api
+	 */
+	protected void recordFlush(RedisStats.Api api, List<? extends CompletableFuture<?>> commands, int items) {
+		mFlushes.increment();
+		mFlushed.add(items);
+		RedisStats.time(api, CompletableFuture.allOf(commands.toArray(new CompletableFuture[0])));
+	}
+
+	/**
+	 * Total number of writes collected so far
+	 */
+	public long getQueued() {
+		return mQueued.sum();
+	}
+
+	/**
+	 * Total number of flushes that sent at least one write
+	 */
+	public long getFlushes() {
+		return mFlushes.sum();
+	}
+
+	/**
+	 * Total number of writes sent by all flushes, after combining. Divided by {@link #getFlushes()}, the average batch size
+	 */
+	public long getFlushed() {
+		return mFlushed.sum();
+	}
+
+	protected String getStatsLine() {
+		long flushes = getFlushes();
+		return mStatsName + ": queued " + getQueued() + "  flushes " + flushes + "  avg batch "
+			+ (flushes == 0 ? 0 : getFlushed() / flushes) + "  pending " + getPending();
+	}
+
+	protected void appendMetrics(StringBuilder out, String shard) {
+		RedisStats.appendCounter(out, "monumenta_redis_" + mMetricName + "_queued_total", shard, getQueued());
+		RedisStats.appendCounter(out, "monumenta_redis_" + mMetricName + "_flushes_total", shard, getFlushes());
+		RedisStats.appendCounter(out, "monumenta_redis_" + mMetricName + "_flushed_total", shard, getFlushed());
+	}
+}
@@ -1,6 +1,7 @@
 package com.playmonumenta.redissync;
 
 import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
 import java.util.UUID;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
 import net.md_5.bungee.api.event.PostLoginEvent;
@@ -19,10 +20,21 @@ public class BungeeListener implements Listener {
 		String name = player.getName();
 		UUID uuid = player.getUniqueId();
 
-		RedisAsyncCommands<String, String> async = RedisAPI.getInstance().async();
-		async.multi();
-		async.hset("uuid2name", uuid.toString(), name);
-		async.hset("name2uuid", name, uuid.toString());
-		async.exec();
+		RedisAPI api = RedisAPI.getInstance();
+		if (api.isCluster()) {
+			/* The two hashes are in different slots on a cluster, where they can't be updated in one transaction */
+			setName(api.async(), uuid, name, false);
+		} else {
+			RedisAsyncCommands<String, String> async = api.asyncForKey(uuidToNamePath);
+			async.multi();
+			setName(async, uuid, name, true);
+			async.exec();
+		}
+	}
+
+	private static void setName(RedisClusterAsyncCommands<String, String> async, UUID uuid, String name, boolean transaction) {
+		async.hset(uuidToNamePath, uuid.toString(), name);
+		async.hset(nameToUUIDPath, name, uuid.toString());
+		NameCacheLoader.recordChange(async, uuid, name, System.currentTimeMillis(), transaction);
 	}
 }
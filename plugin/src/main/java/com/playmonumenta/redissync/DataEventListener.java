@@ -12,18 +12,22 @@ import com.playmonumenta.redissync.adapters.VersionAdapter;
 import com.playmonumenta.redissync.adapters.VersionAdapter.ReturnParams;
 import com.playmonumenta.redissync.adapters.VersionAdapter.SaveData;
 import com.playmonumenta.redissync.config.BukkitConfig;
+import com.playmonumenta.redissync.config.CommonConfig;
 import com.playmonumenta.redissync.event.PlayerJoinSetWorldEvent;
 import com.playmonumenta.redissync.event.PlayerSaveEvent;
 import com.playmonumenta.redissync.event.PlayerTransferFailEvent;
 import com.playmonumenta.redissync.utils.ScoreboardUtils;
 import io.lettuce.core.LettuceFutures;
 import io.lettuce.core.RedisFuture;
+import io.lettuce.core.TransactionResult;
 import io.lettuce.core.api.async.RedisAsyncCommands;
-import io.lettuce.core.output.KeyValueStreamingChannel;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
 import io.papermc.paper.event.server.ServerResourcesReloadedEvent;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
@@ -38,6 +42,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -83,37 +89,10 @@ import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.player.PlayerSwapHandItemsEvent;
-import org.bukkit.plugin.Plugin;
 import org.bukkit.projectiles.ProjectileSource;
 import org.bukkit.scheduler.BukkitTask;
 
 public class DataEventListener implements Listener {
-	private static class PlayerUuidToNameStreamingChannel implements KeyValueStreamingChannel<String, String> {
-		@Override
-		public void onKeyValue(String key /*UUID*/, String value /*name*/) {
-			UUID uuid;
-			try {
-				uuid = UUID.fromString(key);
-			} catch (Exception e) {
-				return;
-			}
-			MonumentaRedisSyncAPI.updateUuidToName(uuid, value);
-		}
-	}
-
-	private static class PlayerNameToUuidStreamingChannel implements KeyValueStreamingChannel<String, String> {
-		@Override
-		public void onKeyValue(String key /*name*/, String value /*UUID*/) {
-			UUID uuid;
-			try {
-				uuid = UUID.fromString(value);
-			} catch (Exception e) {
-				return;
-			}
-			MonumentaRedisSyncAPI.updateNameToUuid(key, uuid);
-		}
-	}
-
 	private static final Map<UUID, BukkitTask> TRANSFER_UNLOCK_TASKS = new HashMap<>(); // TODO Never queried
 	private static final int TRANSFER_UNLOCK_TIMEOUT_TICKS = 10 * 20;
 	private static final Component LOAD_ERROR_MSG =
@@ -124,12 +103,14 @@ public class DataEventListener implements Listener {
 	private final Gson mGson = new Gson();
 	private final Logger mLogger;
 	private final VersionAdapter mAdapter;
+	private final @Nullable SaveJournal mJournal;
 	private final Set<UUID> mTransferringPlayers = new HashSet<>();
 	private final Map<UUID, ReturnParams> mReturnParams = new HashMap<>();
 	/* Key = shoulder entity UUID (i.e. parrot), value = player */
 	private final Map<UUID, UUID> mTransferringPlayerShoulderEntities = new LinkedHashMap<>();
 
-	private final Map<UUID, List<RedisFuture<?>>> mPendingSaves = new HashMap<>();
+	/* Lists are only modified by whichever thread removed them from the map, and put back when done */
+	private final Map<UUID, List<RedisFuture<?>>> mPendingSaves = new ConcurrentHashMap<>();
 	private final Map<UUID, JsonObject> mPluginData = new HashMap<>();
 	private final Set<UUID> mLoadingPlayers = new HashSet<>();
 	private final Set<UUID> mLoadFailedPlayers = new HashSet<>();
@@ -140,18 +121,11 @@ public class DataEventListener implements Listener {
 	 */
 	private final Map<UUID, Map<String, String>> mShardData = new HashMap<>();
 
-	protected DataEventListener(Logger logger, VersionAdapter adapter) {
+	protected DataEventListener(Logger logger, VersionAdapter adapter, @Nullable SaveJournal journal) {
 		mLogger = logger;
 		mAdapter = adapter;
+		mJournal = journal;
 		INSTANCE = this;
-
-		Bukkit.getServer().getScheduler().runTaskAsynchronously(MonumentaRedisSync.getInstance(), () -> {
-			KeyValueStreamingChannel<String, String> uuidToNameChannel = new PlayerUuidToNameStreamingChannel();
-			RedisAPI.getInstance().async().hgetall(uuidToNameChannel, "uuid2name");
-
-			KeyValueStreamingChannel<String, String> nameToUuidChannel = new PlayerNameToUuidStreamingChannel();
-			RedisAPI.getInstance().async().hgetall(nameToUuidChannel, "name2uuid");
-		});
 	}
 
 	/* ******************* Protected API ******************* */
@@ -207,12 +181,8 @@ public class DataEventListener implements Listener {
 		return INSTANCE.mTransferringPlayers.contains(player.getUniqueId());
 	}
 
-	protected static void waitForPlayerToSaveThenSync(Player player, Runnable callback) {
-		INSTANCE.waitForPlayerToSaveInternal(player, callback, true);
-	}
-
-	protected static void waitForPlayerToSaveThenAsync(Player player, Runnable callback) {
-		INSTANCE.waitForPlayerToSaveInternal(player, callback, false);
+	protected static CompletableFuture<Void> waitForPlayerToSave(Player player) {
+		return INSTANCE.waitForPlayerToSaveInternal(player);
 	}
 
 	protected static @Nullable JsonObject getPlayerPluginData(UUID uuid) {
@@ -223,45 +193,59 @@ public class DataEventListener implements Listener {
 		return INSTANCE.mShardData.get(uuid);
 	}
 
-	private void waitForPlayerToSaveInternal(Player player, Runnable callback, boolean sync) {
-		Plugin plugin = MonumentaRedisSync.getInstance();
-
-		if (!mPendingSaves.containsKey(player.getUniqueId()) && !BukkitConfig.getSavingDisabled()) {
-			mLogger.warning("Got request to wait for save commit but no pending save operations found. This might be a bug with the plugin that uses MonumentaRedisSync");
+	/*
+	 * Completes when every pending save for this player has been committed. Must be called on the main thread.
+	 * EXEC only completes once its transaction has been applied, so there's no need to wait any longer than that.
+	 */
+	private CompletableFuture<Void> waitForPlayerToSaveInternal(Player player) {
+		List<RedisFuture<?>> futures = mPendingSaves.get(player.getUniqueId());
+		if (futures == null || futures.isEmpty()) {
+			if (!BukkitConfig.getSavingDisabled()) {
+				mLogger.warning("Got request to wait for save commit but no pending save operations found. This might be a bug with the plugin that uses MonumentaRedisSync");
+			}
+			return CompletableFuture.completedFuture(null);
 		}
 
 		long startTime = System.currentTimeMillis();
 
-		Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-			blockingWaitForPlayerToSave(player);
+		/* Saves are issued on the pipelined connection, make sure they've actually been sent */
+		RedisAPI.getInstance().flushPipeline();
 
-			mLogger.fine(() -> "Committing save took " + (System.currentTimeMillis() - startTime) + " milliseconds");
-
-			/* Run the callback after about 150ms have passed to make sure the redis changes commit */
-			if (sync) {
-				/* Run the sync callback on the main thread */
-				Bukkit.getServer().getScheduler().runTaskLater(plugin, callback, 3);
-			} else {
-				/* Run the async callback */
-				Bukkit.getServer().getScheduler().runTaskLaterAsynchronously(plugin, callback, 3);
-			}
-		});
+		return CompletableFuture.allOf(futures.stream().map(RedisFuture::toCompletableFuture).toArray(CompletableFuture[]::new))
+			.orTimeout(MonumentaRedisSyncAPI.TIMEOUT_SECONDS, TimeUnit.SECONDS)
+			.whenComplete((unused, ex) -> {
+				if (ex != null) {
+					mLogger.severe("Failed to commit transactions for player '" + player.getName() + "'. This is very bad! " + ex);
+				} else {
+					mLogger.fine(() -> "Committing save took " + (System.currentTimeMillis() - startTime) + " milliseconds");
+				}
+			});
 	}
 
 	private void blockingWaitForPlayerToSave(Player player) {
 		List<RedisFuture<?>> futures = mPendingSaves.remove(player.getUniqueId());
 
-		if (futures == null || futures.isEmpty()) {
-			return;
-		}
+		if (futures != null && !futures.isEmpty()) {
+			mLogger.fine("Blocking wait for pending save for player=" + player.getName());
+
+			/* Saves are issued on the pipelined connection, make sure they've actually been sent */
+			RedisAPI.getInstance().flushPipeline();
 
-		mLogger.fine("Blocking wait for pending save for player=" + player.getName());
+			if (!LettuceFutures.awaitAll(MonumentaRedisSyncAPI.TIMEOUT_SECONDS, TimeUnit.SECONDS, futures.toArray(new RedisFuture[0]))) {
+				if (mJournal != null) {
+					mLogger.severe("Got timeout waiting to commit transactions for player '" + player.getName() + "'. The save is in the local journal and will be replayed on restart if it never commits");
+				} else {
+					mLogger.severe("Got timeout waiting to commit transactions for player '" + player.getName() + "'. This is very bad!");
+				}
+			}
 
-		if (!LettuceFutures.awaitAll(MonumentaRedisSyncAPI.TIMEOUT_SECONDS, TimeUnit.SECONDS, futures.toArray(new RedisFuture[0]))) {
-			mLogger.severe("Got timeout waiting to commit transactions for player '" + player.getName() + "'. This is very bad!");
+			mLogger.fine("Pending save completed for player=" + player.getName());
 		}
 
-		mLogger.fine("Pending save completed for player=" + player.getName());
+		/* Queued operations were waited for before login (see prepareLogin), anything here was submitted since */
+		if (!PlayerLanes.isIdle(player.getUniqueId())) {
+			mLogger.warning("Loading player '" + player.getName() + "' while operations are still queued for them");
+		}
 	}
 
 	/* ******************* Data Save/Load Event Handlers ******************* */
@@ -342,22 +326,55 @@ public class DataEventListener implements Listener {
 		}
 
 		/* Execute the advancements as a multi() batch */
-		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().async();
+		String advPath = MonumentaRedisSyncAPI.getRedisAdvancementsPath(player);
+		long sequence = journalSave(player, new SaveJournal.Entry(player.getUniqueId(), System.currentTimeMillis())
+			.lpush(advPath, event.getJsonData(), BukkitConfig.getHistoryAmount()));
+		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().pipelinedForKey(advPath);
 		futures.add(commands.multi()); /* < MULTI */
 
 		/* Advancements */
 		mLogger.fine("Saving advancements data for player=" + player.getName());
 		mLogger.finest(() -> "Data:" + event.getJsonData());
-		String advPath = MonumentaRedisSyncAPI.getRedisAdvancementsPath(player);
 		commands.lpush(advPath, event.getJsonData());
 		commands.ltrim(advPath, 0, BukkitConfig.getHistoryAmount());
 
-		futures.add(commands.exec()); /* MULTI > */
+		RedisFuture<TransactionResult> execFuture = commands.exec(); /* MULTI > */
+		acknowledgeWhenCommitted(sequence, List.of(execFuture), execFuture);
+		futures.add(execFuture);
 
 		/* Don't block - store the pending futures for completion later */
 		mPendingSaves.put(player.getUniqueId(), futures);
 	}
 
+	/* Writes a save to the local journal before it is sent, returns its sequence number or 0 if not journaled */
+	private long journalSave(Player player, SaveJournal.Entry entry) {
+		if (mJournal == null) {
+			return 0;
+		}
+		try {
+			return mJournal.append(entry);
+		} catch (Exception ex) {
+			/* Still send the save to redis, it just won't be replayed if that fails */
+			mLogger.severe("Failed to write save for player '" + player.getName() + "' to the journal: " + ex);
+			return 0;
+		}
+	}
+
+	/* Marks a journaled save as done once all of its commands have been applied */
+	private void acknowledgeWhenCommitted(long sequence, List<RedisFuture<?>> saveFutures, RedisFuture<TransactionResult> execFuture) {
+		SaveJournal journal = mJournal;
+		if (journal == null || sequence == 0) {
+			return;
+		}
+		CompletableFuture.allOf(saveFutures.stream().map(RedisFuture::toCompletableFuture).toArray(CompletableFuture[]::new))
+			.thenCompose(unused -> execFuture.toCompletableFuture())
+			.thenAccept(result -> {
+				if (!result.wasDiscarded()) {
+					journal.acknowledge(sequence);
+				}
+			});
+	}
+
 	private interface Callable {
 		void run(Path dest) throws Exception;
 	}
@@ -394,22 +411,27 @@ public class DataEventListener implements Listener {
 		}
 
 		long startTime = System.currentTimeMillis();
+		long startNanos = System.nanoTime();
 		mLogger.fine("Started loading data for player=" + player.getName());
 
 		/* Wait until player has finished saving if they just logged out and back in */
 		blockingWaitForPlayerToSave(player);
 
-		RedisFuture<byte[]> dataFuture = RedisAPI.getInstance().asyncStringBytes().lindex(MonumentaRedisSyncAPI.getRedisDataPath(player), 0);
-		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().async();
+		RedisFuture<ByteBuffer> dataFuture = RedisAPI.getInstance().asyncByteBuffers().lindex(MonumentaRedisSyncAPI.getRedisDataPath(player), 0);
+		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().asyncForKey(MonumentaRedisSyncAPI.getRedisPluginDataPath(player));
 		commands.multi();
 		RedisFuture<String> pluginDataFuture = commands.lindex(MonumentaRedisSyncAPI.getRedisPluginDataPath(player), 0);
 		RedisFuture<String> scoreFuture = commands.lindex(MonumentaRedisSyncAPI.getRedisScoresPath(player), 0);
 		RedisFuture<Map<String, String>> shardDataFuture = commands.hgetall(MonumentaRedisSyncAPI.getRedisPerShardDataPath(player));
+		/* Load remote data into the cache in the same round trip, if it is enabled */
+		RemoteDataCache remoteDataCache = RemoteDataCache.getInstance();
+		Object remoteDataLoad = remoteDataCache == null ? null : remoteDataCache.startLoad(player.getUniqueId());
+		RedisFuture<Map<String, String>> remoteDataFuture = remoteDataCache == null ? null : commands.hgetall(RemoteDataAPI.getRedisPath(player.getUniqueId()));
 		commands.exec();
 
 		try {
 			/* Load the primary shared NBT data */
-			byte[] data = dataFuture.get();
+			ByteBuffer data = dataFuture.get();
 			if (data == null) {
 				mLogger.warning("No data for player '" + player.getName() + "' - if they are not new, this is a serious error!");
 				return;
@@ -444,6 +466,11 @@ public class DataEventListener implements Listener {
 				mLogger.warning("No scoreboard data for player '" + player.getName() + "' - if they are not new, this is a serious error!");
 			}
 
+			if (remoteDataCache != null && remoteDataLoad != null && remoteDataFuture != null) {
+				remoteDataCache.finishLoad(player.getUniqueId(), remoteDataLoad, remoteDataFuture.get());
+				mLogger.finer("Remote data cached for player=" + player.getName());
+			}
+
 			/* Get all the shard data for all shards and worlds */
 			Map<String, String> shardData = shardDataFuture.get();
 			/* Look up in the shard data first the "overall" part - which world this player was on last time they were on this shard */
@@ -557,6 +584,7 @@ public class DataEventListener implements Listener {
 			Object nbtTagCompound = mAdapter.retrieveSaveData(data, shardDataJson);
 			event.setData(nbtTagCompound);
 
+			RedisStats.record(RedisStats.Api.LOAD, System.nanoTime() - startNanos);
 			mLogger.fine(() -> "Processing PlayerDataLoadEvent took " + (System.currentTimeMillis() - startTime) + " milliseconds on main thread");
 		} catch (Throwable ex) {
 			mLoadFailedPlayers.add(event.getPlayer().getUniqueId());
@@ -575,7 +603,7 @@ public class DataEventListener implements Listener {
 			try {
 				Files.createDirectories(rootPath);
 				trySave(rootPath, "error.txt", dest -> Files.writeString(dest, exceptionToString(ex)));
-				trySave(rootPath, "data.nbt", dest -> Files.write(dest, dataFuture.get()));
+				trySave(rootPath, "data.nbt", dest -> Files.write(dest, toBytes(dataFuture.get())));
 				trySave(rootPath, "plugin_data.json", dest -> Files.writeString(dest, pluginDataFuture.get()));
 				trySave(rootPath, "score.json", dest -> Files.writeString(dest, scoreFuture.get()));
 				trySave(rootPath, "shard", dest -> {
@@ -617,6 +645,7 @@ public class DataEventListener implements Listener {
 		}
 
 		mLogger.fine("Saving data for player=" + player.getName());
+		long saveStartNanos = System.nanoTime();
 
 		List<RedisFuture<?>> futures = mPendingSaves.remove(player.getUniqueId());
 		if (futures == null) {
@@ -650,23 +679,16 @@ public class DataEventListener implements Listener {
 			ReturnParams returnParams = mReturnParams.get(player.getUniqueId());
 			SaveData data = mAdapter.extractSaveData(event.getData(), returnParams);
 
-			mLogger.finest(() -> "data: " + b64encode(data.getData()));
+			mLogger.finest(() -> "data: " + b64encode(data.getDataBuffer()));
 			String dataPath = MonumentaRedisSyncAPI.getRedisDataPath(player);
-			futures.add(RedisAPI.getInstance().asyncStringBytes().lpush(dataPath, data.getData()));
-			futures.add(RedisAPI.getInstance().asyncStringBytes().ltrim(dataPath, 0, BukkitConfig.getHistoryAmount()));
-
-			/* Execute the sharddata, history and plugin data as a multi() batch */
-			RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().async();
-			futures.add(commands.multi()); /* < MULTI */
 
 			/*
 			 * sharddata
 			 * This has two parts - an entry for the overall shard, and an entry for the specific world the player is on
 			 */
+			// The data specifically for the world the player is currently on
 			String shardDataPath = MonumentaRedisSyncAPI.getRedisPerShardDataPath(player);
-			// Save the data specifically for the world the player is currently on
 			String worldKey = MonumentaRedisSyncAPI.getRedisPerShardDataWorldKey(player.getWorld());
-			commands.hset(shardDataPath, worldKey, data.getShardData());
 			// Also update the local sharddata cache
 			Map<String, String> shardDataMap = mShardData.get(player.getUniqueId());
 			if (shardDataMap == null) {
@@ -676,12 +698,11 @@ public class DataEventListener implements Listener {
 			}
 			mLogger.finest("sharddata (world): " + worldKey + "=" + data.getShardData());
 
-			// Save the data for this shard indicating which world the player is currently on
+			// The data for this shard indicating which world the player is currently on
 			JsonObject overallShardData = new JsonObject();
 			overallShardData.addProperty("WorldUUID", player.getWorld().getUID().toString());
 			overallShardData.addProperty("World", player.getWorld().getName());
 			String overallShardDataStr = mGson.toJson(overallShardData);
-			commands.hset(shardDataPath, BukkitConfig.getShardName(), overallShardDataStr);
 			if (shardDataMap != null) {
 				shardDataMap.put(BukkitConfig.getShardName(), overallShardDataStr);
 			}
@@ -689,18 +710,15 @@ public class DataEventListener implements Listener {
 
 			/* history */
 			String histPath = MonumentaRedisSyncAPI.getRedisHistoryPath(player);
-			String history = BukkitConfig.getShardName() + "|" + System.currentTimeMillis() + "|" + player.getName();
+			long timestamp = System.currentTimeMillis();
+			String history = BukkitConfig.getShardName() + "|" + timestamp + "|" + player.getName();
 			mLogger.finest(() -> "history: " + history);
-			commands.lpush(histPath, history);
-			commands.ltrim(histPath, 0, BukkitConfig.getHistoryAmount());
 
 			/* plugindata */
 			String pluginDataPath = MonumentaRedisSyncAPI.getRedisPluginDataPath(player);
 			mPluginData.put(player.getUniqueId(), pluginData); // Update cache
 			String pluginDataStr = mGson.toJson(pluginData);
 			mLogger.finest(() -> "plugindata: " + pluginDataStr);
-			commands.lpush(pluginDataPath, pluginDataStr);
-			commands.ltrim(pluginDataPath, 0, BukkitConfig.getHistoryAmount());
 
 			/* Scoreboards */
 			mLogger.fine("Saving scoreboard data for player=" + player.getName());
@@ -710,10 +728,41 @@ public class DataEventListener implements Listener {
 			mLogger.fine(() -> "Scoreboard saving took " + (System.currentTimeMillis() - scoreStartTime) + " " + "milliseconds on main thread");
 			mLogger.finest(() -> "Data:" + scoreboardData);
 			String scorePath = MonumentaRedisSyncAPI.getRedisScoresPath(player);
+
+			/* Everything is known now - journal the save before any of it is sent */
+			int historyAmount = BukkitConfig.getHistoryAmount();
+			long sequence = journalSave(player, new SaveJournal.Entry(player.getUniqueId(), timestamp)
+				.lpush(dataPath, data.getDataBuffer(), historyAmount)
+				.hset(shardDataPath, worldKey, data.getShardData())
+				.hset(shardDataPath, BukkitConfig.getShardName(), overallShardDataStr)
+				.lpush(histPath, history, historyAmount)
+				.lpush(pluginDataPath, pluginDataStr, historyAmount)
+				.lpush(scorePath, scoreboardData, historyAmount)
+				.history(history));
+
+			/* Pipelined like the rest of the save, and flushed together with it at the end of the tick */
+			RedisClusterAsyncCommands<String, ByteBuffer> dataCommands = RedisAPI.getInstance().pipelinedByteBuffers();
+			RedisFuture<Long> dataFuture = dataCommands.lpush(dataPath, data.getDataBuffer());
+			RedisFuture<String> trimFuture = dataCommands.ltrim(dataPath, 0, historyAmount);
+			futures.add(dataFuture);
+			futures.add(trimFuture);
+
+			/* Execute the sharddata, history and plugin data as a multi() batch */
+			RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().pipelinedForKey(shardDataPath);
+			futures.add(commands.multi()); /* < MULTI */
+			commands.hset(shardDataPath, worldKey, data.getShardData());
+			commands.hset(shardDataPath, BukkitConfig.getShardName(), overallShardDataStr);
+			commands.lpush(histPath, history);
+			commands.ltrim(histPath, 0, historyAmount);
+			commands.lpush(pluginDataPath, pluginDataStr);
+			commands.ltrim(pluginDataPath, 0, historyAmount);
 			commands.lpush(scorePath, scoreboardData);
-			commands.ltrim(scorePath, 0, BukkitConfig.getHistoryAmount());
+			commands.ltrim(scorePath, 0, historyAmount);
 
-			futures.add(commands.exec()); /* MULTI > */
+			RedisFuture<TransactionResult> execFuture = commands.exec(); /* MULTI > */
+			execFuture.whenComplete((result, ex) -> RedisStats.record(RedisStats.Api.SAVE, System.nanoTime() - saveStartNanos));
+			acknowledgeWhenCommitted(sequence, List.of(dataFuture, trimFuture, execFuture), execFuture);
+			futures.add(execFuture);
 		} catch (IOException ex) {
 			mLogger.severe("Failed to save player data: " + ex);
 			ex.printStackTrace();
@@ -735,12 +784,16 @@ public class DataEventListener implements Listener {
 		String nameStr = player.getName();
 		UUID uuid = player.getUniqueId();
 		String uuidStr = uuid.toString();
+		KeyRegistry.cachePlayer(uuid);
 
 		Bukkit.getServer().getScheduler().runTaskAsynchronously(MonumentaRedisSync.getInstance(), () -> {
 			RedisAPI.getInstance().async().hset("uuid2name", uuidStr, nameStr);
 			RedisAPI.getInstance().async().hset("name2uuid", nameStr, uuidStr);
+			long now = System.currentTimeMillis();
+			NameCacheLoader.recordChange(RedisAPI.getInstance().async(), uuid, nameStr, now);
 			MonumentaRedisSyncAPI.updateUuidToName(uuid, nameStr);
 			MonumentaRedisSyncAPI.updateNameToUuid(nameStr, uuid);
+			MonumentaRedisSyncAPI.recordNameHistory(uuid, nameStr, now);
 		});
 	}
 
@@ -767,6 +820,11 @@ public class DataEventListener implements Listener {
 			if (Bukkit.getPlayer(playerUUID) == null) {
 				mPluginData.remove(playerUUID);
 				mShardData.remove(playerUUID);
+				RemoteDataCache remoteDataCache = RemoteDataCache.getInstance();
+				if (remoteDataCache != null) {
+					remoteDataCache.remove(playerUUID);
+				}
+				KeyRegistry.uncachePlayer(playerUUID);
 			}
 		}, 50);
 	}
@@ -933,6 +991,33 @@ public class DataEventListener implements Listener {
 		}
 	}
 
+	/*
+	 * Before the player's data is loaded, waits for any stash, rollback or offline save of this player still writing it,
+	 * and moves any keys still stored under the old key layout. This runs on the async login thread, so waiting for
+	 * it doesn't hold up the main thread.
+	 */
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = false)
+	public void prepareLogin(AsyncPlayerPreLoginEvent event) {
+		if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED || BukkitConfig.getSavingDisabled()) {
+			return;
+		}
+		UUID uuid = event.getUniqueId();
+		try {
+			/* Migration runs on the player's lane too, so it also waits for everything queued before it */
+			int moved = MonumentaRedisSyncAPI.migratePlayerKeys(uuid).get(PlayerLanes.LANE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			if (moved > 0) {
+				mLogger.info("Migrated " + moved + " keys to the hash tagged layout for player=" + event.getName());
+			}
+			if (!CommonConfig.getHashTagPlayerKeys()) {
+				PlayerLanes.drain(uuid).get(PlayerLanes.LANE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			}
+		} catch (Exception ex) {
+			/* Loading now could read data that is about to be overwritten, or find none under the new layout */
+			mLogger.severe("Failed to prepare data for player=" + event.getName() + ": " + ex);
+			event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, LOAD_ERROR_MSG);
+		}
+	}
+
 	/* ******************* Private Utility Methods ******************* */
 
 	private void cancelEventIfTransferring(Entity entity, Cancellable event) {
@@ -941,7 +1026,13 @@ public class DataEventListener implements Listener {
 		}
 	}
 
-	private static String b64encode(byte[] data) {
-		return Base64.getEncoder().encodeToString(data);
+	private static String b64encode(ByteBuffer data) {
+		return StandardCharsets.ISO_8859_1.decode(Base64.getEncoder().encode(data.duplicate())).toString();
+	}
+
+	private static byte[] toBytes(ByteBuffer data) {
+		byte[] bytes = new byte[data.remaining()];
+		data.duplicate().get(bytes);
+		return bytes;
 	}
 }
@@ -0,0 +1,86 @@
+package com.playmonumenta.redissync;
+
+import io.lettuce.core.MapScanCursor;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Reads a hash a page at a time with HSCAN, instead of all at once with HGETALL/HKEYS.
+ * <p>
+ * Redis only does a bounded amount of work per page, so reading a huge hash doesn't block it, and callers can process
+ * (or drop) each page before the next one is fetched. As with any SCAN, entries added or removed while scanning may or
+ * may not be returned, and an entry may be returned more than once.
+ */
+public class HashScan {
+	/** Cursor to pass to start a new scan */
+	public static final String START = "0";
+	public static final int DEFAULT_PAGE_SIZE = 500;
+
+	public static final class Page {
+		private final Map<String, String> mEntries;
+		private final String mCursor;
+		private final boolean mFinished;
+
+		private Page(Map<String, String> entries, String cursor, boolean finished) {
+			mEntries = entries;
+			mCursor = cursor;
+			mFinished = finished;
+		}
+
+		public Map<String, String> getEntries() {
+			return mEntries;
+		}
+
+		/**
+		 * Cursor to pass to get the next page. Meaningless if {@link #isFinished()}
+		 */
+		public String getCursor() {
+			return mCursor;
+		}
+
+		/**
+		 * Whether this was the last page
+		 */
+		public boolean isFinished() {
+			return mFinished;
+		}
+	}
+
+	/**
+	 * Fetches one page, starting at the given cursor ({@link #START} for the first page).
+	 * The page size is a hint to Redis - a page may have somewhat more or fewer entries, or even none
+	 */
+	public static CompletableFuture<Page> page(RedisClusterAsyncCommands<String, String> commands, String key, String cursor, int pageSize) {
+		return commands.hscan(key, ScanCursor.of(cursor), ScanArgs.Builder.limit(Math.max(1, pageSize))).toCompletableFuture()
+			.thenApply(HashScan::toPage);
+	}
+
+	/**
+	 * Scans the whole hash, calling onPage with each page as it arrives, on a Redis thread.
+	 * The next page is only requested once onPage returns. Completes once the last page has been handled
+	 */
+	public static CompletableFuture<Void> all(RedisClusterAsyncCommands<String, String> commands, String key, int pageSize, Consumer<Map<String, String>> onPage) {
+		return next(commands, key, START, pageSize, onPage);
+	}
+
+	private static CompletableFuture<Void> next(RedisClusterAsyncCommands<String, String> commands, String key, String cursor, int pageSize, Consumer<Map<String, String>> onPage) {
+		return page(commands, key, cursor, pageSize).thenCompose(page -> {
+			if (!page.getEntries().isEmpty()) {
+				onPage.accept(page.getEntries());
+			}
+			if (page.isFinished()) {
+				return CompletableFuture.completedFuture(null);
+			}
+			return next(commands, key, page.getCursor(), pageSize, onPage);
+		});
+	}
+
+	private static Page toPage(MapScanCursor<String, String> scanCursor) {
+		return new Page(new LinkedHashMap<>(scanCursor.getMap()), scanCursor.getCursor(), scanCursor.isFinished());
+	}
+}
@@ -0,0 +1,108 @@
+package com.playmonumenta.redissync;
+
+import com.playmonumenta.redissync.config.CommonConfig;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Builds Redis key names once and reuses them, instead of formatting them for every command.
+ * <p>
+ * Player keys are cached while the player is on this shard, rboard keys for the most recently used rboard names.
+ * Keys of other players are built one at a time as they are asked for.
+ */
+public class KeyRegistry {
+	private static final class PlayerKeys {
+		private final String mData;
+		private final String mHistory;
+		private final String mShardData;
+		private final String mPlugins;
+		private final String mAdvancements;
+		private final String mScores;
+		private final String mRemoteData;
+
+		private PlayerKeys(UUID uuid) {
+			String prefix = RedisAPI.getPlayerKeyPrefix(uuid);
+			mData = prefix + ":data";
+			mHistory = prefix + ":history";
+			mShardData = prefix + ":sharddata";
+			mPlugins = prefix + ":plugins";
+			mAdvancements = prefix + ":advancements";
+			mScores = prefix + ":scores";
+			mRemoteData = prefix + ":remotedata";
+		}
+	}
+
+	private static final Pattern RBOARD_NAME_PATTERN = Pattern.compile("^[-_0-9A-Za-z$]+$");
+	private static final int MAX_CACHED_RBOARD_PATHS = 4096;
+
+	private static final ConcurrentHashMap<UUID, PlayerKeys> PLAYER_KEYS = new ConcurrentHashMap<>();
+	private static final ConcurrentHashMap<String, String> RBOARD_PATHS = new ConcurrentHashMap<>();
+
+	public static String getDataPath(UUID uuid) {
+		return getPlayerKey(uuid, keys -> keys.mData, ":data");
+	}
+
+	public static String getHistoryPath(UUID uuid) {
+		return getPlayerKey(uuid, keys -> keys.mHistory, ":history");
+	}
+
+	public static String getShardDataPath(UUID uuid) {
+		return getPlayerKey(uuid, keys -> keys.mShardData, ":sharddata");
+	}
+
+	public static String getPluginsPath(UUID uuid) {
+		return getPlayerKey(uuid, keys -> keys.mPlugins, ":plugins");
+	}
+
+	public static String getAdvancementsPath(UUID uuid) {
+		return getPlayerKey(uuid, keys -> keys.mAdvancements, ":advancements");
+	}
+
+	public static String getScoresPath(UUID uuid) {
+		return getPlayerKey(uuid, keys -> keys.mScores, ":scores");
+	}
+
+	public static String getRemoteDataPath(UUID uuid) {
+		return getPlayerKey(uuid, keys -> keys.mRemoteData, ":remotedata");
+	}
+
+	/* Cached if the player is online, otherwise only the one requested key is built */
+	private static String getPlayerKey(UUID uuid, Function<PlayerKeys, String> cached, String suffix) {
+		PlayerKeys keys = PLAYER_KEYS.get(uuid);
+		if (keys != null) {
+			return cached.apply(keys);
+		}
+		return RedisAPI.getPlayerKeyPrefix(uuid) + suffix;
+	}
+
+	/**
+	 * Keeps this player's keys until {@link #uncachePlayer(UUID)} is called, i.e. when they log in to this shard
+	 */
+	public static void cachePlayer(UUID uuid) {
+		PLAYER_KEYS.computeIfAbsent(uuid, PlayerKeys::new);
+	}
+
+	public static void uncachePlayer(UUID uuid) {
+		PLAYER_KEYS.remove(uuid);
+	}
+
+	public static String getRBoardPath(String name) throws IllegalArgumentException {
+		String path = RBOARD_PATHS.get(name);
+		if (path != null) {
+			return path;
+		}
+
+		if (!RBOARD_NAME_PATTERN.matcher(name).matches()) {
+			throw new IllegalArgumentException("Name '" + name + "' contains illegal characters, must match '^[-_$0-9A-Za-z$]+'");
+		}
+		path = CommonConfig.getServerDomain() + ":rboard:" + name;
+		if (RBOARD_PATHS.size() >= MAX_CACHED_RBOARD_PATHS) {
+			/* Names are usually a small fixed set, so this only happens if something generates them dynamically */
+			RBOARD_PATHS.clear();
+		}
+		RBOARD_PATHS.put(name, path);
+		return path;
+	}
+}
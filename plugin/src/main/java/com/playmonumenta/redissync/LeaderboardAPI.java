@@ -3,12 +3,100 @@ package com.playmonumenta.redissync;
 import com.playmonumenta.redissync.config.CommonConfig;
 import io.lettuce.core.RedisFuture;
 import io.lettuce.core.ScoredValue;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.ZAddArgs;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 public class LeaderboardAPI {
+	private static final class CachedTop {
+		private final CompletableFuture<LeaderboardPage> mFuture;
+		private final int mCount;
+		private final long mLoadedAt = System.nanoTime();
+
+		private CachedTop(CompletableFuture<LeaderboardPage> future, int count) {
+			mFuture = future;
+			mCount = count;
+		}
+	}
+
+	private static final ConcurrentHashMap<String, UpdateMode> UPDATE_MODES = new ConcurrentHashMap<>();
+	/* Key = objective plus direction */
+	private static final ConcurrentHashMap<String, CachedTop> TOP_CACHE = new ConcurrentHashMap<>();
+	/* Looks up the rank and reads the entries around it in one command. ARGV = name, radius, 1 if ascending */
+	private static final RedisScript AROUND_SCRIPT = new RedisScript(
+		"local ascending = ARGV[3] == '1'\n"
+		+ "local rank\n"
+		+ "if ascending then rank = redis.call('ZRANK', KEYS[1], ARGV[1]) else rank = redis.call('ZREVRANK', KEYS[1], ARGV[1]) end\n"
+		+ "if not rank then return false end\n"
+		+ "local start = math.max(0, rank - tonumber(ARGV[2]))\n"
+		+ "local stop = rank + tonumber(ARGV[2])\n"
+		+ "local range\n"
+		+ "if ascending then range = redis.call('ZRANGE', KEYS[1], start, stop, 'WITHSCORES') else range = redis.call('ZREVRANGE', KEYS[1], start, stop, 'WITHSCORES') end\n"
+		+ "table.insert(range, 1, start)\n"
+		+ "return range\n");
+
+	/**
+	 * How an update to a name already on a leaderboard is applied, set per objective in the config
+	 */
+	public enum UpdateMode {
+		/** The new value always replaces the old one */
+		REPLACE,
+		/** Only a higher value replaces the old one (ZADD GT) */
+		GREATER,
+		/** Only a lower value replaces the old one (ZADD LT) */
+		LESS;
+
+		protected long combine(long oldValue, long newValue) {
+			switch (this) {
+				case GREATER:
+					return Math.max(oldValue, newValue);
+				case LESS:
+					return Math.min(oldValue, newValue);
+				default:
+					return newValue;
+			}
+		}
+	}
+
+	/**
+	 * The period a windowed leaderboard is reset on. Windows roll over at midnight UTC, weeks start on Monday
+	 */
+	public enum Window {
+		DAILY("day", 1),
+		WEEKLY("week", 7);
+
+		private final String mName;
+		private final long mDays;
+
+		Window(String name, long days) {
+			mName = name;
+			mDays = days;
+		}
+
+		/**
+		 * Index of the window containing the given time, counted from the epoch
+		 */
+		public long getIndex(long epochMillis) {
+			long epochDay = Math.floorDiv(epochMillis, TimeUnit.DAYS.toMillis(1));
+			/* 1970-01-01 was a Thursday, shift by 3 days so weeks start on Monday */
+			return this == WEEKLY ? Math.floorDiv(epochDay + 3, mDays) : epochDay;
+		}
+
+		public long getCurrentIndex() {
+			return getIndex(System.currentTimeMillis());
+		}
+
+		public long getLengthSeconds() {
+			return TimeUnit.DAYS.toSeconds(mDays);
+		}
+	}
 
 	/**
 	 * Retrieve the leaderboard entries between the specified start and stop indices (inclusive)
@@ -20,21 +108,139 @@ public class LeaderboardAPI {
 	 */
 	public static CompletableFuture<Map<String, Integer>> get(String objective, long start, long stop, boolean ascending) {
 		RedisAPI api = RedisAPI.getInstance();
+		String redisPath = getRedisPath(objective);
 		final RedisFuture<List<ScoredValue<String>>> values;
 		if (ascending) {
-			values = api.async().zrangeWithScores(getRedisPath(objective), start, stop);
+			values = api.asyncRead(RedisAPI.ReadSource.LEADERBOARD, redisPath).zrangeWithScores(redisPath, start, stop);
 		} else {
-			values = api.async().zrevrangeWithScores(getRedisPath(objective), start, stop);
+			values = api.asyncRead(RedisAPI.ReadSource.LEADERBOARD, redisPath).zrevrangeWithScores(redisPath, start, stop);
 		}
 
-		return values.thenApply((scores) -> {
+		return RedisStats.time(RedisStats.Api.LEADERBOARD, values.thenApply((scores) -> {
 			LinkedHashMap<String, Integer> map = new LinkedHashMap<>();
 			for (ScoredValue<String> value : scores) {
 				map.put(value.getValue(), (int)value.getScore());
 			}
 
 			return (Map<String, Integer>)map;
-		}).toCompletableFuture();
+		}).toCompletableFuture());
+	}
+
+	/**
+	 * Retrieve the leaderboard entries between the specified start and stop indices (inclusive), as a compact page.
+	 * Negative indices count from the end, as with ZRANGE; the page's ranks are always counted from the top
+	 *
+	 * @param objective The leaderboard objective name (one leaderboard per objective)
+	 * @param start Starting index to retrieve (inclusive)
+	 * @param stop Ending index to retrieve (inclusive)
+	 * @param ascending If true, leaderboard and results are smallest to largest and vice versa
+	 */
+	public static CompletableFuture<LeaderboardPage> getPage(String objective, long start, long stop, boolean ascending) {
+		return getPageAt(getRedisPath(objective), start, stop, ascending);
+	}
+
+	private static CompletableFuture<LeaderboardPage> getPageAt(String redisPath, long start, long stop, boolean ascending) {
+		RedisClusterAsyncCommands<String, String> commands = RedisAPI.getInstance().asyncRead(RedisAPI.ReadSource.LEADERBOARD, redisPath);
+		final RedisFuture<List<ScoredValue<String>>> values;
+		if (ascending) {
+			values = commands.zrangeWithScores(redisPath, start, stop);
+		} else {
+			values = commands.zrevrangeWithScores(redisPath, start, stop);
+		}
+
+		/* A negative start counts from the end, so the rank of the first entry depends on the board's size */
+		final CompletableFuture<Long> firstRank;
+		if (start < 0) {
+			firstRank = commands.zcard(redisPath).toCompletableFuture().thenApply(size -> Math.max(0, size + start));
+		} else {
+			firstRank = CompletableFuture.completedFuture(start);
+		}
+
+		return RedisStats.time(RedisStats.Api.LEADERBOARD, values.toCompletableFuture()
+			.thenCombine(firstRank, LeaderboardPage::fromScoredValues));
+	}
+
+	/**
+	 * Retrieve the top count entries of a leaderboard.
+	 * <p>
+	 * If leaderboard_cache_ttl_ms is set, results are cached for that long and shared by all callers, and concurrent
+	 * callers wait for the same single read rather than each sending their own
+	 *
+	 * @param objective The leaderboard objective name (one leaderboard per objective)
+	 * @param count Number of entries to retrieve
+	 * @param ascending If true, leaderboard and results are smallest to largest and vice versa
+	 */
+	public static CompletableFuture<LeaderboardPage> getTop(String objective, int count, boolean ascending) {
+		if (count <= 0) {
+			/* getPage(objective, 0, -1) would be the whole board */
+			return CompletableFuture.completedFuture(LeaderboardPage.EMPTY);
+		}
+		long ttlNanos = TimeUnit.MILLISECONDS.toNanos(CommonConfig.getLeaderboardCacheTtlMs());
+		if (ttlNanos <= 0) {
+			return getPage(objective, 0, count - 1, ascending);
+		}
+
+		CachedTop cached = TOP_CACHE.compute(objective + (ascending ? ":asc" : ":desc"), (key, existing) -> {
+			if (existing != null && existing.mCount >= count) {
+				if (!existing.mFuture.isDone()) {
+					return existing;
+				}
+				if (!existing.mFuture.isCompletedExceptionally() && System.nanoTime() - existing.mLoadedAt < ttlNanos) {
+					return existing;
+				}
+			}
+			/* Never shrink, so displays of different sizes share one entry instead of evicting each other */
+			int loadCount = existing == null ? count : Math.max(count, existing.mCount);
+			return new CachedTop(getPage(objective, 0, loadCount - 1, ascending), loadCount);
+		});
+		return cached.mFuture.thenApply(page -> page.head(count));
+	}
+
+	/**
+	 * Gets the rank of name on a leaderboard, where 0 is the top. Completes with null if name is not on it
+	 *
+	 * @param objective The leaderboard objective name (one leaderboard per objective)
+	 * @param name The name to look up
+	 * @param ascending If true, rank 0 is the smallest value and vice versa
+	 */
+	public static CompletableFuture<Long> getRank(String objective, String name, boolean ascending) {
+		RedisAPI api = RedisAPI.getInstance();
+		String redisPath = getRedisPath(objective);
+		final RedisFuture<Long> rank;
+		if (ascending) {
+			rank = api.asyncRead(RedisAPI.ReadSource.LEADERBOARD, redisPath).zrank(redisPath, name);
+		} else {
+			rank = api.asyncRead(RedisAPI.ReadSource.LEADERBOARD, redisPath).zrevrank(redisPath, name);
+		}
+		return RedisStats.time(RedisStats.Api.LEADERBOARD, rank.toCompletableFuture());
+	}
+
+	/**
+	 * Gets the entries within radius ranks of name (name's own entry included), in one round trip.
+	 * Completes with an empty page if name is not on the leaderboard
+	 *
+	 * @param objective The leaderboard objective name (one leaderboard per objective)
+	 * @param name The name to look up
+	 * @param radius How many entries above and below name to include
+	 * @param ascending If true, leaderboard and results are smallest to largest and vice versa
+	 */
+	public static CompletableFuture<LeaderboardPage> getAround(String objective, String name, int radius, boolean ascending) {
+		String redisPath = getRedisPath(objective);
+		CompletableFuture<List<Object>> result = AROUND_SCRIPT.eval(RedisAPI.getInstance().asyncForKey(redisPath), ScriptOutputType.MULTI,
+			new String[] {redisPath}, name, Integer.toString(Math.max(0, radius)), ascending ? "1" : "0");
+		return RedisStats.time(RedisStats.Api.LEADERBOARD, result.thenApply(values -> {
+			if (values == null || values.isEmpty()) {
+				return LeaderboardPage.EMPTY;
+			}
+			int size = (values.size() - 1) / 2;
+			String[] names = new String[size];
+			long[] scores = new long[size];
+			for (int i = 0; i < size; i++) {
+				names[i] = (String) values.get(1 + i * 2);
+				scores[i] = (long) Double.parseDouble((String) values.get(2 + i * 2));
+			}
+			return new LeaderboardPage(names, scores, (Long) values.get(0));
+		}));
 	}
 
 	/**
@@ -48,10 +254,120 @@ public class LeaderboardAPI {
 	 */
 	public static void updateAsync(String objective, String name, long value) {
 		RedisAPI api = RedisAPI.getInstance();
-		api.async().zadd(getRedisPath(objective), (double)value, name);
+		LeaderboardWriteBuffer buffer = api.getLeaderboardWriteBuffer();
+		UpdateMode mode = getUpdateMode(objective);
+		String redisPath = getRedisPath(objective);
+		if (buffer != null) {
+			buffer.update(redisPath, mode, 0, name, value);
+		} else {
+			zadd(api.pipelinedForKey(redisPath), redisPath, mode, List.of(ScoredValue.just((double)value, name)));
+		}
+	}
+
+	/**
+	 * Updates the current window of a windowed leaderboard with name/value.
+	 * <p>
+	 * Each window is its own leaderboard that expires leaderboard_window_retention windows after it was last written,
+	 * so old windows never need to be deleted. The objective's GT/LT update mode applies within each window.
+	 * If leaderboard_window_all_time is set, the value is also applied to the objective's all-time board
+	 * (see {@link #getAllTimePage}), which keeps the best value of each name across all windows.
+	 * <p>
+	 * Update is dispatched asynchronously, this method does not block or return success/failure
+	 *
+	 * @param objective The leaderboard objective name
+	 * @param window Which period the leaderboard resets on
+	 * @param name The name to associate with the value
+	 * @param value Leaderboard value
+	 */
+	public static void updateWindowed(String objective, Window window, String name, long value) {
+		RedisAPI api = RedisAPI.getInstance();
+		UpdateMode mode = getUpdateMode(objective);
+		String redisPath = getWindowedRedisPath(objective, window, window.getCurrentIndex());
+		long ttlSeconds = window.getLengthSeconds() * Math.max(1, CommonConfig.getLeaderboardWindowRetention());
+
+		LeaderboardWriteBuffer buffer = api.getLeaderboardWriteBuffer();
+		if (buffer != null) {
+			buffer.update(redisPath, mode, ttlSeconds, name, value);
+		} else {
+			RedisAsyncCommands<String, String> commands = api.pipelinedForKey(redisPath);
+			zadd(commands, redisPath, mode, List.of(ScoredValue.just((double)value, name)));
+			commands.expire(redisPath, ttlSeconds);
+		}
+
+		if (CommonConfig.getLeaderboardWindowAllTime()) {
+			/* Best value ever, the lowest for LT objectives, otherwise the highest - so ZADD LT/GT keeps it up to date */
+			UpdateMode allTimeMode = mode == UpdateMode.LESS ? UpdateMode.LESS : UpdateMode.GREATER;
+			String allTimePath = getAllTimeRedisPath(objective);
+			if (buffer != null) {
+				buffer.update(allTimePath, allTimeMode, 0, name, value);
+			} else {
+				zadd(api.pipelinedForKey(allTimePath), allTimePath, allTimeMode, List.of(ScoredValue.just((double)value, name)));
+			}
+		}
+	}
+
+	/**
+	 * Retrieve entries between the specified start and stop indices (inclusive) of one window of a windowed leaderboard
+	 *
+	 * @param objective The leaderboard objective name
+	 * @param window Which period the leaderboard resets on
+	 * @param index Which window to read, i.e. {@link Window#getCurrentIndex()} or one less for the previous one
+	 * @param start Starting index to retrieve (inclusive)
+	 * @param stop Ending index to retrieve (inclusive)
+	 * @param ascending If true, leaderboard and results are smallest to largest and vice versa
+	 */
+	public static CompletableFuture<LeaderboardPage> getWindowedPage(String objective, Window window, long index, long start, long stop, boolean ascending) {
+		return getPageAt(getWindowedRedisPath(objective, window, index), start, stop, ascending);
+	}
+
+	/**
+	 * Retrieve entries between the specified start and stop indices (inclusive) of the all-time board that windowed
+	 * updates to this objective are also applied to
+	 *
+	 * @param objective The leaderboard objective name
+	 * @param start Starting index to retrieve (inclusive)
+	 * @param stop Ending index to retrieve (inclusive)
+	 * @param ascending If true, leaderboard and results are smallest to largest and vice versa
+	 */
+	public static CompletableFuture<LeaderboardPage> getAllTimePage(String objective, long start, long stop, boolean ascending) {
+		return getPageAt(getAllTimeRedisPath(objective), start, stop, ascending);
+	}
+
+	public static UpdateMode getUpdateMode(String objective) {
+		/* Called for every update, so don't copy the config lists each time */
+		return UPDATE_MODES.computeIfAbsent(objective, k -> {
+			if (CommonConfig.getLeaderboardGtObjectives().contains(objective)) {
+				return UpdateMode.GREATER;
+			} else if (CommonConfig.getLeaderboardLtObjectives().contains(objective)) {
+				return UpdateMode.LESS;
+			}
+			return UpdateMode.REPLACE;
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	protected static RedisFuture<Long> zadd(RedisClusterAsyncCommands<String, String> commands, String redisPath, UpdateMode mode, List<ScoredValue<String>> values) {
+		ScoredValue<String>[] array = values.toArray(new ScoredValue[0]);
+		switch (mode) {
+			case GREATER:
+				return commands.zadd(redisPath, ZAddArgs.Builder.gt(), array);
+			case LESS:
+				return commands.zadd(redisPath, ZAddArgs.Builder.lt(), array);
+			default:
+				return commands.zadd(redisPath, array);
+		}
 	}
 
 	public static String getRedisPath(String objective) {
 		return String.format("%s:leaderboard:%s", CommonConfig.getServerDomain(), objective);
 	}
+
+	/* Windowed boards share a hash tag with their all-time board, so on a cluster both ZADDs of one update go to the same node, in order on one connection */
+	public static String getWindowedRedisPath(String objective, Window window, long index) {
+		return String.format("%s:leaderboard:{%s}:%s:%d", CommonConfig.getServerDomain(), objective, window.mName, index);
+	}
+
+	public static String getAllTimeRedisPath(String objective) {
+		return String.format("%s:leaderboard:{%s}:alltime", CommonConfig.getServerDomain(), objective);
+	}
 }
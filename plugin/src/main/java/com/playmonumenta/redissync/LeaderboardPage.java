@@ -0,0 +1,83 @@
+package com.playmonumenta.redissync;
+
+import io.lettuce.core.ScoredValue;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A contiguous run of leaderboard entries, stored as parallel arrays.
+ * <p>
+ * Entry i is at rank {@link #getStartRank()} + i, where rank 0 is the top of the leaderboard in the order it was read.
+ * Immutable, so the same page can be handed to any number of viewers.
+ */
+public class LeaderboardPage {
+	public static final LeaderboardPage EMPTY = new LeaderboardPage(new String[0], new long[0], 0);
+
+	private final String[] mNames;
+	private final long[] mScores;
+	private final long mStartRank;
+
+	protected LeaderboardPage(String[] names, long[] scores, long startRank) {
+		mNames = names;
+		mScores = scores;
+		mStartRank = startRank;
+	}
+
+	protected static LeaderboardPage fromScoredValues(List<ScoredValue<String>> values, long startRank) {
+		String[] names = new String[values.size()];
+		long[] scores = new long[values.size()];
+		for (int i = 0; i < names.length; i++) {
+			ScoredValue<String> value = values.get(i);
+			names[i] = value.getValue();
+			scores[i] = (long) value.getScore();
+		}
+		return new LeaderboardPage(names, scores, startRank);
+	}
+
+	public int size() {
+		return mNames.length;
+	}
+
+	public boolean isEmpty() {
+		return mNames.length == 0;
+	}
+
+	public long getStartRank() {
+		return mStartRank;
+	}
+
+	public String getName(int index) {
+		return mNames[index];
+	}
+
+	public long getScore(int index) {
+		return mScores[index];
+	}
+
+	public long getRank(int index) {
+		return mStartRank + index;
+	}
+
+	/**
+	 * Returns the index of the given name in this page, or -1 if it isn't in it
+	 */
+	public int indexOf(String name) {
+		for (int i = 0; i < mNames.length; i++) {
+			if (mNames[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the first count entries of this page (or all of them, if there are fewer)
+	 */
+	public LeaderboardPage head(int count) {
+		if (count >= mNames.length) {
+			return this;
+		}
+		int size = Math.max(0, count);
+		return new LeaderboardPage(Arrays.copyOf(mNames, size), Arrays.copyOf(mScores, size), mStartRank);
+	}
+}
@@ -0,0 +1,89 @@
+package com.playmonumenta.redissync;
+
+import io.lettuce.core.ScoredValue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces {@link LeaderboardAPI#updateAsync} calls and sends them as one multi-member ZADD per board.
+ * <p>
+ * Only one value per (board, name) is kept between flushes - the best one for GT/LT objectives, otherwise the
+ * latest one - so a score that changes many times per flush interval costs a single ZADD member.
+ */
+public class LeaderboardWriteBuffer extends BatchWriter {
+	/* A pending value, with how to write its board. Kept per member so nothing outlives the flush that sends it */
+	private static final class Pending {
+		private final LeaderboardAPI.UpdateMode mMode;
+		private final long mTtlSeconds;
+		private final long mValue;
+
+		private Pending(LeaderboardAPI.UpdateMode mode, long ttlSeconds, long value) {
+			mMode = mode;
+			mTtlSeconds = ttlSeconds;
+			mValue = value;
+		}
+
+		private Pending combine(Pending newer) {
+			return new Pending(newer.mMode, newer.mTtlSeconds, newer.mMode.combine(mValue, newer.mValue));
+		}
+	}
+
+	private final ConcurrentHashMap<BoardKey<String>, Pending> mPending = new ConcurrentHashMap<>();
+
+	protected LeaderboardWriteBuffer(int intervalMs) {
+		super("Leaderboard write buffer", "leaderboard_buffer", "MonumentaRedisSync-LeaderboardFlush");
+		start(intervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Queues an update. If ttlSeconds is positive, the board's expiry is set to that after every flush that writes to it
+	 */
+	public void update(String redisPath, LeaderboardAPI.UpdateMode mode, long ttlSeconds, String name, long value) {
+		mPending.merge(new BoardKey<>(redisPath, name), new Pending(mode, ttlSeconds, value), Pending::combine);
+		recordQueued();
+	}
+
+	@Override
+	public void flush() {
+		Map<String, List<ScoredValue<String>>> byBoard = new HashMap<>();
+		/* A board's mode and TTL never change, so any of its members says how to write it */
+		Map<String, Pending> boards = new HashMap<>();
+		for (BoardKey<String> member : mPending.keySet()) {
+			Pending pending = mPending.remove(member);
+			if (pending != null) {
+				byBoard.computeIfAbsent(member.mBoard, k -> new ArrayList<>()).add(ScoredValue.just(pending.mValue, member.mKey));
+				boards.putIfAbsent(member.mBoard, pending);
+			}
+		}
+		if (byBoard.isEmpty()) {
+			return;
+		}
+
+		RedisAPI api = RedisAPI.getInstance();
+		List<CompletableFuture<?>> batch = new ArrayList<>();
+		int members = 0;
+		for (Map.Entry<String, List<ScoredValue<String>>> entry : byBoard.entrySet()) {
+			String redisPath = entry.getKey();
+			List<ScoredValue<String>> values = entry.getValue();
+			Pending board = boards.get(redisPath);
+			batch.add(LeaderboardAPI.zadd(api.pipelinedForKey(redisPath), redisPath, board.mMode, values).toCompletableFuture());
+			if (board.mTtlSeconds > 0) {
+				/* After the ZADD, so the key exists */
+				batch.add(api.pipelinedForKey(redisPath).expire(redisPath, board.mTtlSeconds).toCompletableFuture());
+			}
+			members += values.size();
+		}
+		api.flushPipeline();
+		recordFlush(RedisStats.Api.LEADERBOARD_FLUSH, batch, members);
+	}
+
+	@Override
+	public int getPending() {
+		return mPending.size();
+	}
+}
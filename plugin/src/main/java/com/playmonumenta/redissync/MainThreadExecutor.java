@@ -0,0 +1,106 @@
+package com.playmonumenta.redissync;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Runs tasks on the main thread, from a lock-free queue drained by a single repeating task.
+ * <p>
+ * Submitting a task is just a queue insertion, so any number of async callbacks can be handed to the main thread
+ * without scheduling a one-shot Bukkit task for each of them. Each tick the queue is drained for at most the
+ * configured time budget; whatever is left over carries over to the next tick, in order.
+ * <p>
+ * Once shut down, tasks submitted from the main thread run immediately and tasks from any other thread are rejected,
+ * so a future waiting on one never silently hangs.
+ * <p>
+ * Intended to be passed to {@link java.util.concurrent.CompletableFuture#thenAcceptAsync} and similar
+ */
+public class MainThreadExecutor implements Executor {
+	private final ConcurrentLinkedQueue<Runnable> mQueue = new ConcurrentLinkedQueue<>();
+	/* ConcurrentLinkedQueue.size() walks the whole queue, so the size is tracked separately */
+	private final AtomicInteger mPending = new AtomicInteger();
+	private final Logger mLogger;
+	private final long mBudgetNanos;
+	private final BukkitTask mTask;
+	private volatile boolean mShutdown = false;
+
+	protected MainThreadExecutor(Plugin plugin, int budgetMs) {
+		if (budgetMs < 1) {
+			/* Only one task would run per tick, which is as good as stalling the queue */
+			throw new IllegalArgumentException("Main thread queue budget must be at least 1ms, got " + budgetMs);
+		}
+		mLogger = plugin.getLogger();
+		mBudgetNanos = budgetMs * 1000000L;
+		mTask = Bukkit.getScheduler().runTaskTimer(plugin, this::drain, 0, 1);
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		if (mShutdown) {
+			runAfterShutdown(task);
+			return;
+		}
+		mQueue.add(task);
+		mPending.incrementAndGet();
+		/* Shut down while this was being added, after the final drain may already have run */
+		if (mShutdown && mQueue.remove(task)) {
+			mPending.decrementAndGet();
+			runAfterShutdown(task);
+		}
+	}
+
+	/**
+	 * Number of tasks waiting to run
+	 */
+	public int getPending() {
+		return mPending.get();
+	}
+
+	/**
+	 * Stops the repeating task and runs everything still queued, must be called on the main thread
+	 */
+	protected void shutdown() {
+		mShutdown = true;
+		mTask.cancel();
+		runQueued(Long.MAX_VALUE);
+	}
+
+	private void runAfterShutdown(Runnable task) {
+		if (!Bukkit.isPrimaryThread()) {
+			throw new RejectedExecutionException("Main thread executor has been shut down");
+		}
+		task.run();
+	}
+
+	private void drain() {
+		int carriedOver = runQueued(mBudgetNanos);
+		if (carriedOver > 0) {
+			mLogger.finer(() -> "Main thread queue over budget, carrying over " + carriedOver + " tasks to the next tick");
+		}
+	}
+
+	/* Returns the number of tasks left in the queue. Always runs at least one task so the queue can't stall */
+	private int runQueued(long budgetNanos) {
+		long startTime = System.nanoTime();
+		Runnable task;
+		while ((task = mQueue.poll()) != null) {
+			mPending.decrementAndGet();
+			try {
+				task.run();
+			} catch (Throwable ex) {
+				mLogger.log(Level.SEVERE, "Uncaught exception in main thread task", ex);
+			}
+			if (System.nanoTime() - startTime >= budgetNanos) {
+				break;
+			}
+		}
+		return mPending.get();
+	}
+}
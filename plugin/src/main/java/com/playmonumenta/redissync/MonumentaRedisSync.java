@@ -2,17 +2,20 @@ package com.playmonumenta.redissync;
 
 import com.playmonumenta.redissync.adapters.VersionAdapter;
 import com.playmonumenta.redissync.commands.ChangeLogLevel;
+import com.playmonumenta.redissync.commands.MigratePlayerKeys;
 import com.playmonumenta.redissync.commands.PlayerHistory;
 import com.playmonumenta.redissync.commands.PlayerLoadFromPlayer;
 import com.playmonumenta.redissync.commands.PlayerRollback;
 import com.playmonumenta.redissync.commands.PlayerTransferHistory;
 import com.playmonumenta.redissync.commands.RboardCommand;
+import com.playmonumenta.redissync.commands.RedisStatsCommand;
 import com.playmonumenta.redissync.commands.RemoteDataCommand;
 import com.playmonumenta.redissync.commands.Stash;
 import com.playmonumenta.redissync.commands.TransferServer;
 import com.playmonumenta.redissync.commands.UpgradeAllPlayers;
 import com.playmonumenta.redissync.config.BukkitConfig;
 import java.io.File;
+import java.util.List;
 import java.util.Locale;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -26,6 +29,11 @@ import org.jetbrains.annotations.NotNull;
 public class MonumentaRedisSync extends JavaPlugin implements MonumentaRedisSyncInterface {
 	private static @Nullable MonumentaRedisSync INSTANCE = null;
 	private @Nullable RedisAPI mRedisAPI = null;
+	private @Nullable MainThreadExecutor mMainThreadExecutor = null;
+	private @Nullable SaveJournal mSaveJournal = null;
+	private @Nullable RemoteDataCache mRemoteDataCache = null;
+	private @Nullable RemoteDataInvalidations mRemoteDataInvalidations = null;
+	private @Nullable NameCacheLoader mNameCacheLoader = null;
 	private @Nullable VersionAdapter mVersionAdapter = null;
 	private @Nullable CustomLogger mLogger = null;
 
@@ -65,6 +73,8 @@ public class MonumentaRedisSync extends JavaPlugin implements MonumentaRedisSync
 		PlayerLoadFromPlayer.register();
 		PlayerTransferHistory.register(this);
 		UpgradeAllPlayers.register(this);
+		MigratePlayerKeys.register(this);
+		RedisStatsCommand.register(this);
 		ChangeLogLevel.register(this);
 		RboardCommand.register(this);
 		RemoteDataCommand.register(this);
@@ -86,6 +96,7 @@ public class MonumentaRedisSync extends JavaPlugin implements MonumentaRedisSync
 		if (getServer().getPluginManager().isPluginEnabled("MonumentaNetworkRelay")) {
 			try {
 				getServer().getPluginManager().registerEvents(new NetworkRelayIntegration(this.getLogger()), this);
+				mRemoteDataInvalidations = new RemoteDataInvalidations(this, getLogger()::warning);
 			} catch (Exception ex) {
 				getLogger().severe("Failed to enable MonumentaNetworkRelay integration: " + ex.getMessage());
 			}
@@ -93,7 +104,18 @@ public class MonumentaRedisSync extends JavaPlugin implements MonumentaRedisSync
 
 		loadConfig();
 		mRedisAPI = new RedisAPI(this, BukkitConfig.getRedisHost(), BukkitConfig.getRedisPort());
-		getServer().getPluginManager().registerEvents(new DataEventListener(this.getLogger(), mVersionAdapter), this);
+		mMainThreadExecutor = new MainThreadExecutor(this, BukkitConfig.getMainThreadQueueBudgetMs());
+		if (mRedisAPI.isPipelining()) {
+			getServer().getPluginManager().registerEvents(new PipelineFlushListener(mRedisAPI), this);
+		}
+		mSaveJournal = openSaveJournal();
+		if (BukkitConfig.getRemoteDataCache()) {
+			mRemoteDataCache = new RemoteDataCache();
+		}
+		getServer().getPluginManager().registerEvents(new DataEventListener(this.getLogger(), mVersionAdapter, mSaveJournal), this);
+		String nameCacheSnapshotFile = BukkitConfig.getNameCacheSnapshotFile();
+		mNameCacheLoader = new NameCacheLoader(getLogger(), nameCacheSnapshotFile.isEmpty() ? null : getDataFolder().toPath().resolve(nameCacheSnapshotFile));
+		mNameCacheLoader.load();
 		getServer().getPluginManager().registerEvents(new ScoreboardCleanupListener(this, this.getLogger(), mVersionAdapter), this);
 		getServer().getPluginManager().registerEvents(AccountTransferManager.getInstance(), this);
 		if (BukkitConfig.getTicksPerPlayerAutosave() > 0) {
@@ -105,12 +127,34 @@ public class MonumentaRedisSync extends JavaPlugin implements MonumentaRedisSync
 
 	@Override
 	public void onDisable() {
+		/* Run any callbacks still queued while everything they might use is still available */
+		if (mMainThreadExecutor != null) {
+			mMainThreadExecutor.shutdown();
+		}
+		mMainThreadExecutor = null;
 		INSTANCE = null;
+		if (mNameCacheLoader != null) {
+			mNameCacheLoader.close();
+		}
+		mNameCacheLoader = null;
 		AccountTransferManager.onDisable();
 		if (mRedisAPI != null) {
 			mRedisAPI.shutdown();
 		}
 		mRedisAPI = null;
+		/* After redis shutdown, so saves that committed while shutting down are acknowledged */
+		if (mSaveJournal != null) {
+			mSaveJournal.close();
+		}
+		mSaveJournal = null;
+		if (mRemoteDataCache != null) {
+			mRemoteDataCache.close();
+		}
+		mRemoteDataCache = null;
+		if (mRemoteDataInvalidations != null) {
+			mRemoteDataInvalidations.close();
+		}
+		mRemoteDataInvalidations = null;
 		getServer().getScheduler().cancelTasks(this);
 	}
 
@@ -130,6 +174,43 @@ public class MonumentaRedisSync extends JavaPlugin implements MonumentaRedisSync
 		return versionAdapter;
 	}
 
+	public MainThreadExecutor getMainThreadExecutor() {
+		MainThreadExecutor mainThreadExecutor = mMainThreadExecutor;
+		if (mainThreadExecutor == null) {
+			throw new RuntimeException("MonumentaRedisSync is not enabled yet");
+		}
+		return mainThreadExecutor;
+	}
+
+	/**
+	 * The local save journal, or null if it is disabled
+	 */
+	public @Nullable SaveJournal getSaveJournal() {
+		return mSaveJournal;
+	}
+
+	/* Opens the save journal if enabled, replaying any saves redis never acknowledged. Runs before any player can join */
+	private @Nullable SaveJournal openSaveJournal() {
+		if (BukkitConfig.getSaveJournalDir().isEmpty() || BukkitConfig.getSavingDisabled()) {
+			return null;
+		}
+
+		SaveJournal journal;
+		try {
+			journal = new SaveJournal(getLogger(), getDataFolder().toPath().resolve(BukkitConfig.getSaveJournalDir()),
+				BukkitConfig.getSaveJournalSegmentMb() * 1024 * 1024, BukkitConfig.getSaveJournalFsyncIntervalMs());
+		} catch (Exception ex) {
+			getLogger().log(Level.SEVERE, "Failed to open save journal, continuing without it", ex);
+			return null;
+		}
+
+		int replayed = journal.replay(MonumentaRedisSyncAPI.TIMEOUT_SECONDS);
+		if (replayed > 0) {
+			getLogger().warning("Replayed " + replayed + " journaled saves to redis");
+		}
+		return journal;
+	}
+
 	private BukkitConfig loadConfig() {
 		File configFile = new File(this.getDataFolder(), "config.yml");
 		/* TODO: Default file if not exist */
@@ -145,10 +226,39 @@ public class MonumentaRedisSync extends JavaPlugin implements MonumentaRedisSync
 		}
 		shardName = config.getString("shard_name", shardName);
 
+		boolean redisPipelining = config.getBoolean("redis_pipelining", false);
+		int redisPipelineFlushIntervalMs = config.getInt("redis_pipeline_flush_interval_ms", 5);
+		boolean redisCluster = config.getBoolean("redis_cluster", false);
+		boolean hashTagPlayerKeys = config.getBoolean("hash_tag_player_keys", false);
+		List<String> redisReplicaHosts = config.getStringList("redis_replica_hosts");
+		List<String> redisReplicaReads = config.getStringList("redis_replica_reads");
+		List<String> nearCachePrefixes = config.getStringList("near_cache_prefixes");
+		int nearCacheMaxKeys = config.getInt("near_cache_max_keys", 10000);
+		String metricsFile = config.getString("metrics_file", "");
+		int metricsIntervalSeconds = config.getInt("metrics_interval_seconds", 15);
+		int rboardCombineIntervalMs = config.getInt("rboard_combine_interval_ms", 0);
+		int rboardCombineMaxPending = config.getInt("rboard_combine_max_pending", 1000);
+		int leaderboardFlushIntervalMs = config.getInt("leaderboard_flush_interval_ms", 0);
+		List<String> leaderboardGtObjectives = config.getStringList("leaderboard_gt_objectives");
+		List<String> leaderboardLtObjectives = config.getStringList("leaderboard_lt_objectives");
+		int leaderboardCacheTtlMs = config.getInt("leaderboard_cache_ttl_ms", 0);
+		int leaderboardWindowRetention = config.getInt("leaderboard_window_retention", 2);
+		boolean leaderboardWindowAllTime = config.getBoolean("leaderboard_window_all_time", true);
+
 		int historyAmount = config.getInt("history_amount", 20);
 		int ticksPerPlayerAutosave = config.getInt("ticks_per_player_autosave", 6060);
 		boolean savingDisabled = config.getBoolean("saving_disabled", false);
 		boolean scoreboardCleanupEnabled = config.getBoolean("scoreboard_cleanup_enabled", true);
+		int mainThreadQueueBudgetMs = config.getInt("main_thread_queue_budget_ms", 5);
+		if (mainThreadQueueBudgetMs < 1) {
+			getLogger().warning("main_thread_queue_budget_ms must be at least 1, using the default of 5 instead of " + mainThreadQueueBudgetMs);
+			mainThreadQueueBudgetMs = 5;
+		}
+		String saveJournalDir = config.getString("save_journal_dir", "");
+		int saveJournalSegmentMb = config.getInt("save_journal_segment_mb", 64);
+		int saveJournalFsyncIntervalMs = config.getInt("save_journal_fsync_interval_ms", 10);
+		boolean remoteDataCache = config.getBoolean("remote_data_cache", false);
+		String nameCacheSnapshotFile = config.getString("name_cache_snapshot_file", "name_cache.bin");
 
 		String level = config.getString("log_level", "INFO").toLowerCase(Locale.ENGLISH);
 		switch (level) {
@@ -165,7 +275,7 @@ public class MonumentaRedisSync extends JavaPlugin implements MonumentaRedisSync
 				setLogLevel(Level.INFO);
 		}
 
-		 return new BukkitConfig(getLogger(), redisHost, redisPort, serverDomain, shardName, historyAmount, ticksPerPlayerAutosave, savingDisabled, scoreboardCleanupEnabled);
+		 return new BukkitConfig(getLogger(), redisHost, redisPort, serverDomain, shardName, redisPipelining, redisPipelineFlushIntervalMs, redisCluster, hashTagPlayerKeys, redisReplicaHosts, redisReplicaReads, nearCachePrefixes, nearCacheMaxKeys, metricsFile, metricsIntervalSeconds, rboardCombineIntervalMs, rboardCombineMaxPending, leaderboardFlushIntervalMs, leaderboardGtObjectives, leaderboardLtObjectives, leaderboardCacheTtlMs, leaderboardWindowRetention, leaderboardWindowAllTime, historyAmount, ticksPerPlayerAutosave, savingDisabled, scoreboardCleanupEnabled, mainThreadQueueBudgetMs, saveJournalDir, saveJournalSegmentMb, saveJournalFsyncIntervalMs, remoteDataCache, nameCacheSnapshotFile);
 	}
 
 	public void setLogLevel(Level level) {
@@ -9,25 +9,33 @@ import com.google.gson.JsonObject;
 import com.playmonumenta.redissync.adapters.VersionAdapter.SaveData;
 import com.playmonumenta.redissync.config.CommonConfig;
 import com.playmonumenta.redissync.event.PlayerServerTransferEvent;
-import com.playmonumenta.redissync.utils.Trie;
+import com.playmonumenta.redissync.utils.NameHistoryIndex;
+import com.playmonumenta.redissync.utils.NameIndex;
+import com.playmonumenta.redissync.utils.NameSnapshot;
+import com.playmonumenta.redissync.utils.NegativeCache;
 import dev.jorel.commandapi.arguments.ArgumentSuggestions;
 import dev.jorel.commandapi.wrappers.Rotation;
-import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.KeyValue;
 import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RestoreArgs;
+import io.lettuce.core.ScriptOutputType;
 import io.lettuce.core.TransactionResult;
 import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
@@ -113,28 +121,170 @@ public class MonumentaRedisSyncAPI {
 	}
 
 	public static final int TIMEOUT_SECONDS = 10;
-	public static final ArgumentSuggestions<CommandSender> SUGGESTIONS_ALL_CACHED_PLAYER_NAMES = ArgumentSuggestions.strings((info) ->
-		getAllCachedPlayerNames().toArray(String[]::new));
-
-	private static final Trie<UUID> mNameToUuidTrie = new Trie<>();
-	private static final Map<String, UUID> mNameToUuid = new ConcurrentHashMap<>();
-	private static final Map<UUID, String> mUuidToName = new ConcurrentHashMap<>();
+	/* Only offers the names matching what has been typed so far, as a view of the current snapshot where possible */
+	public static final ArgumentSuggestions<CommandSender> SUGGESTIONS_ALL_CACHED_PLAYER_NAMES = ArgumentSuggestions.stringCollection((info) ->
+		getNameIndex().withPrefix(info.currentArg()));
+
+	private static final NameIndex mNameIndex = new NameIndex();
+	private static final NameHistoryIndex mNameHistory = new NameHistoryIndex();
+	/* Lookups that found nothing in redis either, so typos and unknown players aren't looked up again right away */
+	private static final long NAME_NEGATIVE_CACHE_TTL_NANOS = TimeUnit.SECONDS.toNanos(30);
+	private static final int NAME_NEGATIVE_CACHE_MAX_SIZE = 10000;
+	private static final NegativeCache<String> mUnknownNames = new NegativeCache<>(NAME_NEGATIVE_CACHE_TTL_NANOS, NAME_NEGATIVE_CACHE_MAX_SIZE);
+	private static final NegativeCache<UUID> mUnknownUuids = new NegativeCache<>(NAME_NEGATIVE_CACHE_TTL_NANOS, NAME_NEGATIVE_CACHE_MAX_SIZE);
+	private static final int NAME_LOOKUP_CHUNK_SIZE = 500;
 
 	protected static void updateUuidToName(UUID uuid, String name) {
-		mUuidToName.put(uuid, name);
+		mNameIndex.putUuid(uuid, name);
+		mUnknownUuids.remove(uuid);
 	}
 
 	protected static void updateNameToUuid(String name, UUID uuid) {
-		mNameToUuid.put(name, uuid);
-		mNameToUuidTrie.put(name, uuid);
+		mNameIndex.putName(name, uuid);
+		mUnknownNames.remove(name);
+	}
+
+	protected static void updateNameHistory(UUID uuid, String history) {
+		mNameHistory.put(uuid, history);
+	}
+
+	protected static void recordNameHistory(UUID uuid, String name, long millis) {
+		mNameHistory.record(uuid, name, millis);
+	}
+
+	protected static NameHistoryIndex getNameHistoryIndex() {
+		return mNameHistory;
 	}
 
+	protected static NameIndex getNameIndex() {
+		return mNameIndex;
+	}
+
+	/**
+	 * Looks up the current name of a player. Served from the local name cache when possible, otherwise read from
+	 * redis (and cached). Completes with null if the player is unknown
+	 */
 	public static CompletableFuture<String> uuidToName(UUID uuid) {
-		return RedisAPI.getInstance().async().hget("uuid2name", uuid.toString()).toCompletableFuture();
+		String cached = mNameIndex.getName(uuid);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached);
+		}
+		if (mUnknownUuids.contains(uuid)) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return RedisAPI.getInstance().async().hget("uuid2name", uuid.toString()).toCompletableFuture().thenApply(name -> {
+			cacheUuidToName(uuid, name);
+			return name;
+		});
 	}
 
+	/**
+	 * Looks up which player has (or had) a name. Served from the local name cache when possible, otherwise read from
+	 * redis (and cached). Completes with null if the name is unknown
+	 */
 	public static CompletableFuture<UUID> nameToUUID(String name) {
-		return RedisAPI.getInstance().async().hget("name2uuid", name).thenApply((uuid) -> (uuid == null || uuid.isEmpty()) ? null : UUID.fromString(uuid)).toCompletableFuture();
+		UUID cached = mNameIndex.getUuid(name);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached);
+		}
+		if (mUnknownNames.contains(name)) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return RedisAPI.getInstance().async().hget("name2uuid", name).toCompletableFuture().thenApply(uuidStr -> cacheNameToUuid(name, uuidStr));
+	}
+
+	/**
+	 * Looks up the current names of many players at once. Names that aren't cached are read with pipelined HMGETs.
+	 * Players that are unknown are left out of the result
+	 */
+	public static CompletableFuture<Map<UUID, String>> uuidsToNames(Collection<UUID> uuids) {
+		Map<UUID, String> result = new HashMap<>();
+		List<String> missing = new ArrayList<>();
+		for (UUID uuid : uuids) {
+			String cached = mNameIndex.getName(uuid);
+			if (cached != null) {
+				result.put(uuid, cached);
+			} else if (!mUnknownUuids.contains(uuid)) {
+				missing.add(uuid.toString());
+			}
+		}
+		return hmgetChunked("uuid2name", missing).thenApply(values -> {
+			values.forEach((uuidStr, name) -> {
+				UUID uuid = UUID.fromString(uuidStr);
+				cacheUuidToName(uuid, name);
+				if (name != null) {
+					result.put(uuid, name);
+				}
+			});
+			return result;
+		});
+	}
+
+	/**
+	 * Looks up which players have (or had) many names at once. UUIDs that aren't cached are read with pipelined HMGETs.
+	 * Names that are unknown are left out of the result
+	 */
+	public static CompletableFuture<Map<String, UUID>> namesToUuids(Collection<String> names) {
+		Map<String, UUID> result = new HashMap<>();
+		List<String> missing = new ArrayList<>();
+		for (String name : names) {
+			UUID cached = mNameIndex.getUuid(name);
+			if (cached != null) {
+				result.put(name, cached);
+			} else if (!mUnknownNames.contains(name)) {
+				missing.add(name);
+			}
+		}
+		return hmgetChunked("name2uuid", missing).thenApply(values -> {
+			values.forEach((name, uuidStr) -> {
+				UUID uuid = cacheNameToUuid(name, uuidStr);
+				if (uuid != null) {
+					result.put(name, uuid);
+				}
+			});
+			return result;
+		});
+	}
+
+	private static void cacheUuidToName(UUID uuid, @Nullable String name) {
+		if (name == null) {
+			mUnknownUuids.add(uuid);
+		} else {
+			updateUuidToName(uuid, name);
+		}
+	}
+
+	private static @Nullable UUID cacheNameToUuid(String name, @Nullable String uuidStr) {
+		if (uuidStr == null || uuidStr.isEmpty()) {
+			mUnknownNames.add(name);
+			return null;
+		}
+		UUID uuid = UUID.fromString(uuidStr);
+		updateNameToUuid(name, uuid);
+		return uuid;
+	}
+
+	/* HMGETs fields of a hash in pipelined chunks. Returns every field, with null values for those that don't exist */
+	private static CompletableFuture<Map<String, String>> hmgetChunked(String key, List<String> fields) {
+		if (fields.isEmpty()) {
+			return CompletableFuture.completedFuture(new HashMap<>());
+		}
+		RedisAPI api = RedisAPI.getInstance();
+		List<CompletableFuture<List<KeyValue<String, String>>>> chunks = new ArrayList<>();
+		for (int start = 0; start < fields.size(); start += NAME_LOOKUP_CHUNK_SIZE) {
+			String[] chunk = fields.subList(start, Math.min(fields.size(), start + NAME_LOOKUP_CHUNK_SIZE)).toArray(new String[0]);
+			chunks.add(api.pipelinedForKey(key).hmget(key, chunk).toCompletableFuture());
+		}
+		api.flushPipeline();
+		return CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0])).thenApply(unused -> {
+			Map<String, String> values = new HashMap<>();
+			for (CompletableFuture<List<KeyValue<String, String>>> chunk : chunks) {
+				for (KeyValue<String, String> value : chunk.join()) {
+					values.put(value.getKey(), value.getValueOrElse(null));
+				}
+			}
+			return values;
+		});
 	}
 
 	public static CompletableFuture<Set<String>> getAllPlayerNames() {
@@ -148,19 +298,33 @@ public class MonumentaRedisSyncAPI {
 	}
 
 	public static @Nullable String cachedUuidToName(UUID uuid) {
-		return mUuidToName.get(uuid);
+		return mNameIndex.getName(uuid);
 	}
 
 	public static @Nullable UUID cachedNameToUuid(String name) {
-		return mNameToUuid.get(name);
+		return mNameIndex.getUuid(name);
+	}
+
+	/**
+	 * Returns an immutable sorted snapshot of the cached player names. Unlike {@link #getAllCachedPlayerNames()}
+	 * this does not copy anything, and {@link NameSnapshot#withPrefix} finds completions with a binary search.
+	 * The most recently updated names may not be in it yet, see {@link NameIndex#getSnapshot()}
+	 */
+	public static NameSnapshot getCachedPlayerNameSnapshot() {
+		return mNameIndex.getSnapshot();
 	}
 
+	/**
+	 * Returns a new mutable copy of every cached player name. Prefer {@link #getCachedPlayerNameSnapshot()}
+	 */
 	public static Set<String> getAllCachedPlayerNames() {
-		return new ConcurrentSkipListSet<>(mNameToUuid.keySet());
+		return new ConcurrentSkipListSet<>(mNameIndex.getNames());
 	}
 
 	public static Set<UUID> getAllCachedPlayerUuids() {
-		return new ConcurrentSkipListSet<>(mUuidToName.keySet());
+		Set<UUID> uuids = new ConcurrentSkipListSet<>();
+		mNameIndex.forEachUuid((uuid, name) -> uuids.add(uuid));
+		return uuids;
 	}
 
 	public static @Nullable String getCachedCurrentName(String oldName) {
@@ -171,8 +335,68 @@ public class MonumentaRedisSyncAPI {
 		return cachedUuidToName(uuid);
 	}
 
+	/**
+	 * Returns every name a player has used, oldest first. Served from the local name history index when possible,
+	 * otherwise read from redis (and cached). A player with no history in redis gets just their current name, if known.
+	 * Completes with an empty list if the player is unknown
+	 */
+	public static CompletableFuture<List<NameHistoryIndex.Entry>> getNameHistory(UUID uuid) {
+		if (mNameHistory.containsHistory(uuid)) {
+			return CompletableFuture.completedFuture(mNameHistory.getHistory(uuid));
+		}
+		return RedisAPI.getInstance().async().hget(NameCacheLoader.NAME_HISTORY_PATH, uuid.toString()).toCompletableFuture().thenApply(history -> {
+			if (history == null) {
+				return currentNameOnly(uuid);
+			}
+			mNameHistory.put(uuid, history);
+			return NameHistoryIndex.decode(history);
+		});
+	}
+
+	/**
+	 * Returns every cached name a player has used, oldest first, or an empty list if their history isn't cached
+	 */
+	public static List<NameHistoryIndex.Entry> getCachedNameHistory(UUID uuid) {
+		List<NameHistoryIndex.Entry> history = mNameHistory.getHistory(uuid);
+		return history.isEmpty() ? currentNameOnly(uuid) : history;
+	}
+
+	/* Players that haven't logged in since name histories were added have no history, only their current name */
+	private static List<NameHistoryIndex.Entry> currentNameOnly(UUID uuid) {
+		String name = cachedUuidToName(uuid);
+		return name == null ? List.of() : List.of(new NameHistoryIndex.Entry(name, 0));
+	}
+
+	/**
+	 * Returns every player known to have used a name (ignoring case), in the order they started using it
+	 */
+	public static List<UUID> getCachedNameOwners(String name) {
+		List<UUID> owners = mNameHistory.getOwners(name);
+		if (owners.isEmpty()) {
+			UUID uuid = getCachedCurrentOwner(name);
+			return uuid == null ? List.of() : List.of(uuid);
+		}
+		return owners;
+	}
+
+	/**
+	 * Returns the player currently using a name (ignoring case), or null if nobody is known to use it now.
+	 * Unlike {@link #cachedNameToUuid}, this is null for names their player has since changed away from
+	 */
+	public static @Nullable UUID getCachedCurrentOwner(String name) {
+		UUID owner = mNameHistory.getLatestOwner(name);
+		if (owner == null) {
+			owner = cachedNameToUuid(name);
+			if (owner == null) {
+				return null;
+			}
+		}
+		String currentName = cachedUuidToName(owner);
+		return name.equalsIgnoreCase(currentName) ? owner : null;
+	}
+
 	public static String getClosestPlayerName(String longestPossibleName) {
-		@Nullable String result = mNameToUuidTrie.closestKey(longestPossibleName);
+		@Nullable String result = mNameIndex.closestKey(longestPossibleName);
 		if (result == null) {
 			return "";
 		}
@@ -180,7 +404,14 @@ public class MonumentaRedisSyncAPI {
 	}
 
 	public static List<String> getSuggestedPlayerNames(String currentInput, int maxSuggestions) {
-		return mNameToUuidTrie.suggestions(currentInput, maxSuggestions);
+		return mNameIndex.suggestions(currentInput, maxSuggestions);
+	}
+
+	/**
+	 * Like {@link #getSuggestedPlayerNames}, but matching currentInput regardless of case
+	 */
+	public static List<String> getSuggestedPlayerNamesIgnoreCase(String currentInput, int maxSuggestions) {
+		return mNameIndex.suggestionsIgnoreCase(currentInput, maxSuggestions);
 	}
 
 	public static boolean isPlayerTransferring(Player player) {
@@ -232,7 +463,12 @@ public class MonumentaRedisSyncAPI {
 		/* Lock player during transfer and prevent data saving when they log out */
 		DataEventListener.setPlayerAsTransferring(player);
 
-		DataEventListener.waitForPlayerToSaveThenSync(player, () -> {
+		/* Also waits for anything else still queued for this player, i.e. a stash or rollback */
+		CompletableFuture<Void> saveFuture = DataEventListener.waitForPlayerToSave(player);
+		CompletableFuture<Void> committed = PlayerLanes.submit(player.getUniqueId(), () -> saveFuture);
+
+		/* A failed commit has already been logged, transfer anyway rather than leaving the player locked */
+		runOnMainThreadWhenComplete(mrs, committed, (unused, ex) -> {
 			/*
 			 * Use plugin messages to tell bungee to transfer the player.
 			 * This is nice because in the event of multiple bungeecord's,
@@ -249,42 +485,39 @@ public class MonumentaRedisSyncAPI {
 	}
 
 	public static void stashPut(Player player, @Nullable String name) throws Exception {
-		savePlayer(player);
-
-		DataEventListener.waitForPlayerToSaveThenAsync(player, () -> {
-			List<RedisFuture<?>> futures = new ArrayList<>();
+		CompletableFuture<Void> saveFuture = savePlayerAsync(player);
 
+		PlayerLanes.submit(player.getUniqueId(), () -> saveFuture.thenCompose(unused -> {
 			RedisAPI api = RedisAPI.getInstance();
+			List<CompletableFuture<?>> futures = new ArrayList<>();
 
 			String saveName = name;
 			if (saveName == null) {
 				saveName = player.getUniqueId().toString();
 			} else {
-				futures.add(api.async().sadd(getStashListPath(), saveName));
+				futures.add(api.async().sadd(getStashListPath(), saveName).toCompletableFuture());
 			}
-
-			try {
-				/* Read the most-recent player data save, and copy it to the stash */
-				RedisFuture<byte[]> dataFuture = api.asyncStringBytes().lindex(getRedisDataPath(player), 0);
-				RedisFuture<String> advanceFuture = api.async().lindex(getRedisAdvancementsPath(player), 0);
-				RedisFuture<String> scoreFuture = api.async().lindex(getRedisScoresPath(player), 0);
-				RedisFuture<String> pluginFuture = api.async().lindex(getRedisPluginDataPath(player), 0);
-				RedisFuture<String> historyFuture = api.async().lindex(getRedisHistoryPath(player), 0);
-
-				futures.add(api.asyncStringBytes().hset(getStashPath(), saveName + "-data", dataFuture.get()));
-				futures.add(api.async().hset(getStashPath(), saveName + "-scores", scoreFuture.get()));
-				futures.add(api.async().hset(getStashPath(), saveName + "-advancements", advanceFuture.get()));
-				futures.add(api.async().hset(getStashPath(), saveName + "-plugins", pluginFuture.get()));
-				futures.add(api.async().hset(getStashPath(), saveName + "-history", historyFuture.get()));
-
-				if (!LettuceFutures.awaitAll(TIMEOUT_SECONDS, TimeUnit.SECONDS, futures.toArray(new RedisFuture[0]))) {
-					MonumentaRedisSync.getInstance().getLogger().severe("Got timeout waiting to commit stash data for player '" + player.getName() + "'");
-					player.sendMessage(Component.text("Got timeout trying to commit stash data", NamedTextColor.RED));
-					return;
-				}
-			} catch (InterruptedException | ExecutionException ex) {
+			final String stashName = saveName;
+
+			/* Read the most-recent player data save, and copy it to the stash */
+			CompletableFuture<byte[]> dataFuture = api.asyncStringBytes().lindex(getRedisDataPath(player), 0).toCompletableFuture();
+			CompletableFuture<String> advanceFuture = api.async().lindex(getRedisAdvancementsPath(player), 0).toCompletableFuture();
+			CompletableFuture<String> scoreFuture = api.async().lindex(getRedisScoresPath(player), 0).toCompletableFuture();
+			CompletableFuture<String> pluginFuture = api.async().lindex(getRedisPluginDataPath(player), 0).toCompletableFuture();
+			CompletableFuture<String> historyFuture = api.async().lindex(getRedisHistoryPath(player), 0).toCompletableFuture();
+
+			return CompletableFuture.allOf(dataFuture, advanceFuture, scoreFuture, pluginFuture, historyFuture).thenCompose(loaded -> {
+				futures.add(api.asyncStringBytes().hset(getStashPath(), stashName + "-data", dataFuture.join()).toCompletableFuture());
+				futures.add(api.async().hset(getStashPath(), stashName + "-scores", scoreFuture.join()).toCompletableFuture());
+				futures.add(api.async().hset(getStashPath(), stashName + "-advancements", advanceFuture.join()).toCompletableFuture());
+				futures.add(api.async().hset(getStashPath(), stashName + "-plugins", pluginFuture.join()).toCompletableFuture());
+				futures.add(api.async().hset(getStashPath(), stashName + "-history", historyFuture.join()).toCompletableFuture());
+				return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+			});
+		})).orTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS).whenComplete((unused, ex) -> {
+			if (ex != null) {
 				MonumentaRedisSync.getInstance().getLogger().log(Level.SEVERE, "Got exception while committing stash data for player '" + player.getName() + "'", ex);
-				player.sendMessage(Component.text("Failed to save stash data: " + ex.getMessage(), NamedTextColor.RED));
+				player.sendMessage(Component.text("Failed to save stash data: " + describeFailure(ex), NamedTextColor.RED));
 				return;
 			}
 
@@ -299,15 +532,13 @@ public class MonumentaRedisSyncAPI {
 		 * Save player in case this was a mistake so they can get back
 		 * This also saves per-shard data like location
 		 */
-		savePlayer(player);
+		CompletableFuture<Void> saveFuture = savePlayerAsync(player);
 
 		/* Lock player during stash get */
 		DataEventListener.setPlayerAsTransferring(player);
 
-		/* Wait for save to complete */
-		DataEventListener.waitForPlayerToSaveThenAsync(player, () -> {
-			List<RedisFuture<?>> futures = new ArrayList<>();
-
+		/* Wait for save (and anything else already queued for this player) to complete */
+		PlayerLanes.submit(player.getUniqueId(), () -> saveFuture.thenCompose(unused -> {
 			RedisAPI api = RedisAPI.getInstance();
 
 			String saveName = name;
@@ -315,44 +546,33 @@ public class MonumentaRedisSyncAPI {
 				saveName = player.getUniqueId().toString();
 			}
 
-			try {
-				/* Read from the stash, and push it to the player's data */
-
-				RedisFuture<byte[]> dataFuture = api.asyncStringBytes().hget(getStashPath(), saveName + "-data");
-				RedisFuture<String> advanceFuture = api.async().hget(getStashPath(), saveName + "-advancements");
-				RedisFuture<String> scoreFuture = api.async().hget(getStashPath(), saveName + "-scores");
-				RedisFuture<String> pluginFuture = api.async().hget(getStashPath(), saveName + "-plugins");
-				RedisFuture<String> historyFuture = api.async().hget(getStashPath(), saveName + "-history");
-
-				/* Make sure there's actually data */
-				if (dataFuture.get() == null || advanceFuture.get() == null || scoreFuture.get() == null || pluginFuture.get() == null || historyFuture.get() == null) {
-					if (name == null) {
-						player.sendMessage(Component.text("You don't have any stash data", NamedTextColor.RED));
-					} else {
-						player.sendMessage(Component.text("No stash data found for '" + name + "'", NamedTextColor.RED));
-					}
-					return;
-				}
-
-				futures.add(api.asyncStringBytes().lpush(getRedisDataPath(player), dataFuture.get()));
-				futures.add(api.async().lpush(getRedisAdvancementsPath(player), advanceFuture.get()));
-				futures.add(api.async().lpush(getRedisScoresPath(player), scoreFuture.get()));
-				futures.add(api.async().lpush(getRedisPluginDataPath(player), pluginFuture.get()));
-				futures.add(api.async().lpush(getRedisHistoryPath(player), "stash@" + historyFuture.get()));
+			/* Read from the stash, and push it to the player's data */
+			return pushPlayerData(player,
+				api.asyncStringBytes().hget(getStashPath(), saveName + "-data").toCompletableFuture(),
+				api.async().hget(getStashPath(), saveName + "-advancements").toCompletableFuture(),
+				api.async().hget(getStashPath(), saveName + "-scores").toCompletableFuture(),
+				api.async().hget(getStashPath(), saveName + "-plugins").toCompletableFuture(),
+				api.async().hget(getStashPath(), saveName + "-history").toCompletableFuture(),
+				"stash@");
+		})).orTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS).whenComplete((found, ex) -> {
+			if (ex != null) {
+				MonumentaRedisSync.getInstance().getLogger().log(Level.SEVERE, "Got exception while loading stash data for player '" + player.getName() + "'", ex);
+				player.sendMessage(Component.text("Failed to load stash data: " + describeFailure(ex), NamedTextColor.RED));
+				return;
+			}
 
-				if (!LettuceFutures.awaitAll(TIMEOUT_SECONDS, TimeUnit.SECONDS, futures.toArray(new RedisFuture[0]))) {
-					MonumentaRedisSync.getInstance().getLogger().severe("Got timeout loading stash data for player '" + player.getName() + "'");
-					player.sendMessage(Component.text("Got timeout loading stash data", NamedTextColor.RED));
-					return;
+			/* Make sure there's actually data */
+			if (!found) {
+				if (name == null) {
+					player.sendMessage(Component.text("You don't have any stash data", NamedTextColor.RED));
+				} else {
+					player.sendMessage(Component.text("No stash data found for '" + name + "'", NamedTextColor.RED));
 				}
-			} catch (InterruptedException | ExecutionException ex) {
-				MonumentaRedisSync.getInstance().getLogger().log(Level.SEVERE, "Got exception while loading stash data for player '" + player.getName() + "'", ex);
-				player.sendMessage(Component.text("Failed to load stash data: " + ex.getMessage(), NamedTextColor.RED));
 				return;
 			}
 
 			/* Kick the player on the main thread to force rejoin */
-			Bukkit.getServer().getScheduler().runTask(mrs, () -> player.kick(Component.text("Stash data loaded successfully")));
+			mrs.getMainThreadExecutor().execute(() -> player.kick(Component.text("Stash data loaded successfully")));
 		});
 	}
 
@@ -368,31 +588,28 @@ public class MonumentaRedisSyncAPI {
 			saveName = player.getUniqueId().toString();
 		}
 
-		Bukkit.getScheduler().runTaskAsynchronously(mrs, () -> {
-			String history = api.async().hget(getStashPath(), saveName + "-history").toCompletableFuture().join();
-			Bukkit.getScheduler().runTask(mrs, () -> {
-				if (history == null) {
-					if (name == null) {
-						player.sendMessage(Component.text("You don't have any stash data", NamedTextColor.RED));
-					} else {
-						player.sendMessage(Component.text("No stash data found for '" + name + "'", NamedTextColor.RED));
-					}
-					return;
-				}
-
-				String[] split = history.split("\\|");
-				if (split.length != 3) {
-					player.sendMessage(Component.text("Got corrupted history with " + split.length + " entries: " + history, NamedTextColor.RED));
-					return;
-				}
-
+		api.async().hget(getStashPath(), saveName + "-history").thenAcceptAsync(history -> {
+			if (history == null) {
 				if (name == null) {
-					player.sendMessage(Component.text("Stash last saved on " + split[0] + " " + getTimeDifferenceSince(Long.parseLong(split[1])) + " ago", NamedTextColor.GOLD));
+					player.sendMessage(Component.text("You don't have any stash data", NamedTextColor.RED));
 				} else {
-					player.sendMessage(Component.text("Stash '" + name + "' last saved on " + split[0] + " by " + split[2] + " " + getTimeDifferenceSince(Long.parseLong(split[1])) + " ago", NamedTextColor.GOLD));
+					player.sendMessage(Component.text("No stash data found for '" + name + "'", NamedTextColor.RED));
 				}
-			});
-		});
+				return;
+			}
+
+			String[] split = history.split("\\|");
+			if (split.length != 3) {
+				player.sendMessage(Component.text("Got corrupted history with " + split.length + " entries: " + history, NamedTextColor.RED));
+				return;
+			}
+
+			if (name == null) {
+				player.sendMessage(Component.text("Stash last saved on " + split[0] + " " + getTimeDifferenceSince(Long.parseLong(split[1])) + " ago", NamedTextColor.GOLD));
+			} else {
+				player.sendMessage(Component.text("Stash '" + name + "' last saved on " + split[0] + " by " + split[2] + " " + getTimeDifferenceSince(Long.parseLong(split[1])) + " ago", NamedTextColor.GOLD));
+			}
+		}, mrs.getMainThreadExecutor());
 	}
 
 	public static void playerRollback(Player moderator, Player player, int index) throws Exception {
@@ -402,7 +619,7 @@ public class MonumentaRedisSyncAPI {
 		 * Save player in case this was a mistake so they can get back
 		 * This also saves per-shard data like location
 		 */
-		savePlayer(player);
+		CompletableFuture<Void> saveFuture = savePlayerAsync(player);
 
 		/* Now that data has saved, the index we want to roll back to is +1 older */
 		final int rollbackIndex = index + 1;
@@ -410,48 +627,35 @@ public class MonumentaRedisSyncAPI {
 		/* Lock player during rollback */
 		DataEventListener.setPlayerAsTransferring(player);
 
-		/* Wait for save to complete */
-		DataEventListener.waitForPlayerToSaveThenAsync(player, () -> {
-			List<RedisFuture<?>> futures = new ArrayList<>();
-
+		/* Wait for save (and anything else already queued for this player) to complete */
+		PlayerLanes.submit(player.getUniqueId(), () -> saveFuture.thenCompose(unused -> {
 			RedisAPI api = RedisAPI.getInstance();
 
-			try {
-				/* Read the history element and push it to the player's data */
-
-				RedisFuture<byte[]> dataFuture = api.asyncStringBytes().lindex(getRedisDataPath(player), rollbackIndex);
-				RedisFuture<String> advanceFuture = api.async().lindex(getRedisAdvancementsPath(player), rollbackIndex);
-				RedisFuture<String> scoreFuture = api.async().lindex(getRedisScoresPath(player), rollbackIndex);
-				RedisFuture<String> pluginFuture = api.async().lindex(getRedisPluginDataPath(player), rollbackIndex);
-				RedisFuture<String> historyFuture = api.async().lindex(getRedisHistoryPath(player), rollbackIndex);
-
-				/* Make sure there's actually data */
-				if (dataFuture.get() == null || advanceFuture.get() == null || scoreFuture.get() == null || pluginFuture.get() == null || historyFuture.get() == null) {
-					moderator.sendMessage(Component.text("Failed to retrieve player's rollback data", NamedTextColor.RED));
-					return;
-				}
-
-				futures.add(api.asyncStringBytes().lpush(getRedisDataPath(player), dataFuture.get()));
-				futures.add(api.async().lpush(getRedisAdvancementsPath(player), advanceFuture.get()));
-				futures.add(api.async().lpush(getRedisScoresPath(player), scoreFuture.get()));
-				futures.add(api.async().lpush(getRedisPluginDataPath(player), pluginFuture.get()));
-				futures.add(api.async().lpush(getRedisHistoryPath(player), "rollback@" + historyFuture.get()));
-
-				if (!LettuceFutures.awaitAll(TIMEOUT_SECONDS, TimeUnit.SECONDS, futures.toArray(new RedisFuture[0]))) {
-					MonumentaRedisSync.getInstance().getLogger().severe("Got timeout loading rollback data for player '" + player.getName() + "'");
-					moderator.sendMessage(Component.text("Got timeout loading rollback data", NamedTextColor.RED));
-					return;
-				}
-			} catch (InterruptedException | ExecutionException ex) {
+			/* Read the history element and push it to the player's data */
+			return pushPlayerData(player,
+				api.asyncStringBytes().lindex(getRedisDataPath(player), rollbackIndex).toCompletableFuture(),
+				api.async().lindex(getRedisAdvancementsPath(player), rollbackIndex).toCompletableFuture(),
+				api.async().lindex(getRedisScoresPath(player), rollbackIndex).toCompletableFuture(),
+				api.async().lindex(getRedisPluginDataPath(player), rollbackIndex).toCompletableFuture(),
+				api.async().lindex(getRedisHistoryPath(player), rollbackIndex).toCompletableFuture(),
+				"rollback@");
+		})).orTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS).whenComplete((found, ex) -> {
+			if (ex != null) {
 				MonumentaRedisSync.getInstance().getLogger().log(Level.SEVERE, "Got exception while loading rollback data for player '" + player.getName() + "'", ex);
-				moderator.sendMessage(Component.text("Failed to load rollback data: " + ex.getMessage(), NamedTextColor.RED));
+				moderator.sendMessage(Component.text("Failed to load rollback data: " + describeFailure(ex), NamedTextColor.RED));
+				return;
+			}
+
+			/* Make sure there's actually data */
+			if (!found) {
+				moderator.sendMessage(Component.text("Failed to retrieve player's rollback data", NamedTextColor.RED));
 				return;
 			}
 
 			moderator.sendMessage(Component.text("Player " + player.getName() + " rolled back successfully", NamedTextColor.GREEN));
 
 			/* Kick the player on the main thread to force rejoin */
-			Bukkit.getServer().getScheduler().runTask(mrs, () -> player.kick(Component.text("Your player data has been rolled back, and you can now re-join the server")));
+			mrs.getMainThreadExecutor().execute(() -> player.kick(Component.text("Your player data has been rolled back, and you can now re-join the server")));
 		});
 	}
 
@@ -462,54 +666,73 @@ public class MonumentaRedisSyncAPI {
 		 * Save player in case this was a mistake so they can get back
 		 * This also saves per-shard data like location
 		 */
-		savePlayer(loadTo);
+		CompletableFuture<Void> saveFuture = savePlayerAsync(loadTo);
 
 		/* Lock player during load */
 		DataEventListener.setPlayerAsTransferring(loadTo);
 
-		/* Wait for save to complete */
-		DataEventListener.waitForPlayerToSaveThenAsync(loadTo, () -> {
-			List<RedisFuture<?>> futures = new ArrayList<>();
-
+		/* Wait for save (and anything else already queued for this player) to complete */
+		PlayerLanes.submit(loadTo.getUniqueId(), () -> saveFuture.thenCompose(unused -> {
 			RedisAPI api = RedisAPI.getInstance();
 
-			try {
-				/* Read the history element and push it to the player's data */
-
-				RedisFuture<byte[]> dataFuture = api.asyncStringBytes().lindex(getRedisDataPath(loadFrom), index);
-				RedisFuture<String> advanceFuture = api.async().lindex(getRedisAdvancementsPath(loadFrom), index);
-				RedisFuture<String> scoreFuture = api.async().lindex(getRedisScoresPath(loadFrom), index);
-				RedisFuture<String> pluginFuture = api.async().lindex(getRedisPluginDataPath(loadFrom), index);
-				RedisFuture<String> historyFuture = api.async().lindex(getRedisHistoryPath(loadFrom), index);
-
-				/* Make sure there's actually data */
-				if (dataFuture.get() == null || advanceFuture.get() == null || scoreFuture.get() == null || pluginFuture.get() == null || historyFuture.get() == null) {
-					loadTo.sendMessage(Component.text("Failed to retrieve player's data to load", NamedTextColor.RED));
-					return;
-				}
-
-				futures.add(api.asyncStringBytes().lpush(getRedisDataPath(loadTo), dataFuture.get()));
-				futures.add(api.async().lpush(getRedisAdvancementsPath(loadTo), advanceFuture.get()));
-				futures.add(api.async().lpush(getRedisScoresPath(loadTo), scoreFuture.get()));
-				futures.add(api.async().lpush(getRedisPluginDataPath(loadTo), pluginFuture.get()));
-				futures.add(api.async().lpush(getRedisHistoryPath(loadTo), "loadfrom@" + loadFrom.getName() + "@" + historyFuture.get()));
-
-				if (!LettuceFutures.awaitAll(TIMEOUT_SECONDS, TimeUnit.SECONDS, futures.toArray(new RedisFuture[0]))) {
-					MonumentaRedisSync.getInstance().getLogger().severe("Got timeout loading data for player '" + loadFrom.getName() + "'");
-					loadTo.sendMessage(Component.text("Got timeout loading data", NamedTextColor.RED));
-					return;
-				}
-			} catch (InterruptedException | ExecutionException ex) {
+			/* Read the history element and push it to the player's data */
+			return pushPlayerData(loadTo,
+				api.asyncStringBytes().lindex(getRedisDataPath(loadFrom), index).toCompletableFuture(),
+				api.async().lindex(getRedisAdvancementsPath(loadFrom), index).toCompletableFuture(),
+				api.async().lindex(getRedisScoresPath(loadFrom), index).toCompletableFuture(),
+				api.async().lindex(getRedisPluginDataPath(loadFrom), index).toCompletableFuture(),
+				api.async().lindex(getRedisHistoryPath(loadFrom), index).toCompletableFuture(),
+				"loadfrom@" + loadFrom.getName() + "@");
+		})).orTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS).whenComplete((found, ex) -> {
+			if (ex != null) {
 				MonumentaRedisSync.getInstance().getLogger().log(Level.SEVERE, "Got exception while loading data for player '" + loadFrom.getName() + "'", ex);
-				loadTo.sendMessage(Component.text("Failed to load data: " + ex.getMessage(), NamedTextColor.RED));
+				loadTo.sendMessage(Component.text("Failed to load data: " + describeFailure(ex), NamedTextColor.RED));
+				return;
+			}
+
+			/* Make sure there's actually data */
+			if (!found) {
+				loadTo.sendMessage(Component.text("Failed to retrieve player's data to load", NamedTextColor.RED));
 				return;
 			}
 
 			/* Kick the player on the main thread to force rejoin */
-			Bukkit.getServer().getScheduler().runTask(mrs, () -> loadTo.kick(Component.text("Data loaded from player " + loadFrom.getName() + " at index " + index + " and you can now re-join the server")));
+			mrs.getMainThreadExecutor().execute(() -> loadTo.kick(Component.text("Data loaded from player " + loadFrom.getName() + " at index " + index + " and you can now re-join the server")));
+		});
+	}
+
+	/*
+	 * Once all five reads complete, pushes them as the newest save of the target player.
+	 * Completes with false (without writing anything) if any of them were missing.
+	 */
+	private static CompletableFuture<Boolean> pushPlayerData(Player target, CompletableFuture<byte[]> dataFuture,
+	                                                         CompletableFuture<String> advanceFuture, CompletableFuture<String> scoreFuture,
+	                                                         CompletableFuture<String> pluginFuture, CompletableFuture<String> historyFuture,
+	                                                         String historyPrefix) {
+		return CompletableFuture.allOf(dataFuture, advanceFuture, scoreFuture, pluginFuture, historyFuture).thenCompose(loaded -> {
+			if (dataFuture.join() == null || advanceFuture.join() == null || scoreFuture.join() == null || pluginFuture.join() == null || historyFuture.join() == null) {
+				return CompletableFuture.completedFuture(false);
+			}
+
+			RedisAPI api = RedisAPI.getInstance();
+			return CompletableFuture.allOf(
+				api.asyncStringBytes().lpush(getRedisDataPath(target), dataFuture.join()).toCompletableFuture(),
+				api.async().lpush(getRedisAdvancementsPath(target), advanceFuture.join()).toCompletableFuture(),
+				api.async().lpush(getRedisScoresPath(target), scoreFuture.join()).toCompletableFuture(),
+				api.async().lpush(getRedisPluginDataPath(target), pluginFuture.join()).toCompletableFuture(),
+				api.async().lpush(getRedisHistoryPath(target), historyPrefix + historyFuture.join()).toCompletableFuture()
+			).thenApply(pushed -> true);
 		});
 	}
 
+	private static String describeFailure(Throwable ex) {
+		Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+		if (cause instanceof TimeoutException) {
+			return "Got timeout";
+		}
+		return String.valueOf(cause.getMessage());
+	}
+
 	/** @deprecated - use RemoteDataAPI */
 	@Deprecated
 	public static CompletableFuture<String> getRemoteData(UUID uuid, String key) throws Exception {
@@ -599,7 +822,7 @@ public class MonumentaRedisSyncAPI {
 	}
 
 	public static String getRedisDataPath(UUID uuid) {
-		return String.format("%s:playerdata:%s:data", CommonConfig.getServerDomain(), uuid.toString());
+		return KeyRegistry.getDataPath(uuid);
 	}
 
 	public static String getRedisHistoryPath(Player player) {
@@ -607,7 +830,7 @@ public class MonumentaRedisSyncAPI {
 	}
 
 	public static String getRedisHistoryPath(UUID uuid) {
-		return String.format("%s:playerdata:%s:history", CommonConfig.getServerDomain(), uuid.toString());
+		return KeyRegistry.getHistoryPath(uuid);
 	}
 
 	public static String getRedisPerShardDataPath(Player player) {
@@ -615,7 +838,7 @@ public class MonumentaRedisSyncAPI {
 	}
 
 	public static String getRedisPerShardDataPath(UUID uuid) {
-		return String.format("%s:playerdata:%s:sharddata", CommonConfig.getServerDomain(), uuid.toString());
+		return KeyRegistry.getShardDataPath(uuid);
 	}
 
 	public static String getRedisPerShardDataWorldKey(World world) {
@@ -632,7 +855,7 @@ public class MonumentaRedisSyncAPI {
 	}
 
 	public static String getRedisPluginDataPath(UUID uuid) {
-		return String.format("%s:playerdata:%s:plugins", CommonConfig.getServerDomain(), uuid.toString());
+		return KeyRegistry.getPluginsPath(uuid);
 	}
 
 	public static String getRedisAdvancementsPath(Player player) {
@@ -640,7 +863,7 @@ public class MonumentaRedisSyncAPI {
 	}
 
 	public static String getRedisAdvancementsPath(UUID uuid) {
-		return String.format("%s:playerdata:%s:advancements", CommonConfig.getServerDomain(), uuid.toString());
+		return KeyRegistry.getAdvancementsPath(uuid);
 	}
 
 	public static String getRedisScoresPath(Player player) {
@@ -648,7 +871,7 @@ public class MonumentaRedisSyncAPI {
 	}
 
 	public static String getRedisScoresPath(UUID uuid) {
-		return String.format("%s:playerdata:%s:scores", CommonConfig.getServerDomain(), uuid.toString());
+		return KeyRegistry.getScoresPath(uuid);
 	}
 
 	public static String getStashPath() {
@@ -729,6 +952,22 @@ public class MonumentaRedisSyncAPI {
 		}
 	}
 
+	/**
+	 * Saves all of player's data like {@link #savePlayer(Player)}, returning a future that completes once the save
+	 * (and any other save still pending for this player) has been committed to Redis.
+	 * <p>
+	 * Must be called on the main thread. The returned future completes on a Redis thread, and completes
+	 * exceptionally if the save failed or did not commit within {@link #TIMEOUT_SECONDS}
+	 */
+	public static CompletableFuture<Void> savePlayerAsync(Player player) {
+		try {
+			savePlayer(player);
+		} catch (Exception ex) {
+			return CompletableFuture.failedFuture(ex);
+		}
+		return DataEventListener.waitForPlayerToSave(player);
+	}
+
 	/**
 	 * Gets player plugin data from the cache.
 	 * <p>
@@ -916,7 +1155,7 @@ public class MonumentaRedisSyncAPI {
 
 	/** Future returns non-null if successfully loaded data, null on error */
 	@Nullable
-	private static RedisPlayerData transformPlayerData(MonumentaRedisSync mrs, UUID uuid, TransactionResult result) {
+	private static RedisPlayerData transformPlayerData(MonumentaRedisSync mrs, UUID uuid, List<byte[]> result) {
 		if (result.isEmpty() || result.get(0) == null) {
 			mrs.getLogger().warning("Failed to retrieve player data; likely player didn't make it past the tutorial");
 			return null;
@@ -971,14 +1210,54 @@ public class MonumentaRedisSyncAPI {
 		}
 	}
 
+	/**
+	 * Loads the most recent save of an offline player.
+	 * <p>
+	 * If offline_data is listed in redis_replica_reads this may read slightly stale data from a replica.
+	 * Code that modifies and saves the data back should use {@link #getOfflinePlayerData(UUID, boolean)} with fromPrimary=true.
+	 */
 	public static CompletableFuture<RedisPlayerData> getOfflinePlayerData(UUID uuid) throws Exception {
+		return getOfflinePlayerData(uuid, false);
+	}
+
+	public static CompletableFuture<RedisPlayerData> getOfflinePlayerData(UUID uuid, boolean fromPrimary) throws Exception {
 		if (Bukkit.getPlayer(uuid) != null) {
 			throw new Exception("Player " + uuid + " is online");
 		}
 
 		MonumentaRedisSync mrs = MonumentaRedisSync.getInstance();
+		RedisAPI api = RedisAPI.getInstance();
+
+		/* Queued behind any pending save of this player, so the most recent save is read */
+		return PlayerLanes.submit(uuid, () -> readOfflinePlayerData(mrs, api, uuid, fromPrimary));
+	}
 
-		RedisAsyncCommands<String, byte[]> commands = RedisAPI.getInstance().asyncStringBytes();
+	/*
+	 * Reads the latest entry of each key in one script, so a save committed between them can't mix two saves. Sent with
+	 * EVAL_RO, which (unlike EVAL or MULTI) Lettuce routes to replicas; this needs Redis 7 or later. Redis converts the
+	 * false that LINDEX of a missing entry gives in Lua back into a nil reply
+	 */
+	private static final byte[] READ_LATEST_SCRIPT = (
+		"local result = {} "
+		+ "for i, key in ipairs(KEYS) do result[i] = redis.call('LINDEX', key, 0) end "
+		+ "return result"
+	).getBytes(StandardCharsets.UTF_8);
+
+	private static CompletableFuture<RedisPlayerData> readOfflinePlayerData(MonumentaRedisSync mrs, RedisAPI api, UUID uuid, boolean fromPrimary) {
+		if (!fromPrimary && api.isReplicaRead(RedisAPI.ReadSource.OFFLINE_DATA)) {
+			RedisClusterAsyncCommands<String, byte[]> commands = api.asyncStringBytesRead(RedisAPI.ReadSource.OFFLINE_DATA, getRedisDataPath(uuid));
+			String[] keys = {
+				getRedisDataPath(uuid),
+				getRedisAdvancementsPath(uuid),
+				getRedisScoresPath(uuid),
+				getRedisPluginDataPath(uuid),
+				getRedisHistoryPath(uuid),
+			};
+			return commands.<List<Object>>evalReadOnly(READ_LATEST_SCRIPT, ScriptOutputType.MULTI, keys).toCompletableFuture()
+				.thenApply(result -> transformPlayerData(mrs, uuid, result.stream().map(value -> (byte[]) value).collect(Collectors.toList())));
+		}
+
+		RedisAsyncCommands<String, byte[]> commands = api.asyncStringBytesForKey(getRedisDataPath(uuid));
 		commands.multi();
 
 		commands.lindex(getRedisDataPath(uuid), 0);
@@ -987,7 +1266,8 @@ public class MonumentaRedisSyncAPI {
 		commands.lindex(getRedisPluginDataPath(uuid), 0);
 		commands.lindex(getRedisHistoryPath(uuid), 0);
 
-		return commands.exec().thenApply((TransactionResult result) -> transformPlayerData(mrs, uuid, result)).toCompletableFuture();
+		return commands.exec().thenApply((TransactionResult result) -> transformPlayerData(mrs, uuid,
+			result.stream().map(value -> (byte[]) value).collect(Collectors.toList()))).toCompletableFuture();
 	}
 
 	/**
@@ -1015,18 +1295,19 @@ public class MonumentaRedisSyncAPI {
 			return future;
 		}
 
-		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().async();
+		String scoresPath = getRedisScoresPath(uuid);
+		RedisClusterAsyncCommands<String, String> commands = RedisAPI.getInstance().asyncRead(RedisAPI.ReadSource.SCORES, scoresPath);
 
-		commands.lindex(getRedisScoresPath(uuid), 0)
+		commands.lindex(scoresPath, 0)
 			.thenApply(
 				(scoreData) -> new Gson().fromJson(scoreData, JsonObject.class).entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, (entry) -> entry.getValue().getAsInt())))
-			.whenComplete((scoreMap, ex) -> Bukkit.getScheduler().runTask(mrs, () -> {
+			.whenCompleteAsync((scoreMap, ex) -> {
 				if (ex != null) {
 					future.completeExceptionally(ex);
 				} else {
 					future.complete(scoreMap);
 				}
-			}));
+			}, mrs.getMainThreadExecutor());
 
 		return future;
 	}
@@ -1045,17 +1326,108 @@ public class MonumentaRedisSyncAPI {
 	public static CompletableFuture<Boolean> saveOfflinePlayerData(RedisPlayerData data) throws Exception {
 		MonumentaRedisSync mrs = MonumentaRedisSync.getInstance();
 
-		RedisAsyncCommands<String, byte[]> commands = RedisAPI.getInstance().asyncStringBytes();
-		commands.multi();
-
 		SaveData splitData = mrs.getVersionAdapter().extractSaveData(data.getNbtTagCompoundData(), null);
-		commands.lpush(getRedisDataPath(data.getUniqueId()), splitData.getData());
-		commands.lpush(getRedisAdvancementsPath(data.getUniqueId()), data.getAdvancements().getBytes(StandardCharsets.UTF_8));
-		commands.lpush(getRedisScoresPath(data.getUniqueId()), data.getScores().getBytes(StandardCharsets.UTF_8));
-		commands.lpush(getRedisPluginDataPath(data.getUniqueId()), data.getPluginData().getBytes(StandardCharsets.UTF_8));
-		commands.lpush(getRedisHistoryPath(data.getUniqueId()), data.getHistory().getBytes(StandardCharsets.UTF_8));
 
-		return commands.exec().thenApply((TransactionResult result) -> transformPlayerSaveResult(mrs, result)).toCompletableFuture();
+		return PlayerLanes.submit(data.getUniqueId(), () -> {
+			RedisAsyncCommands<String, byte[]> commands = RedisAPI.getInstance().asyncStringBytesForKey(getRedisDataPath(data.getUniqueId()));
+			commands.multi();
+
+			commands.lpush(getRedisDataPath(data.getUniqueId()), splitData.getData());
+			commands.lpush(getRedisAdvancementsPath(data.getUniqueId()), data.getAdvancements().getBytes(StandardCharsets.UTF_8));
+			commands.lpush(getRedisScoresPath(data.getUniqueId()), data.getScores().getBytes(StandardCharsets.UTF_8));
+			commands.lpush(getRedisPluginDataPath(data.getUniqueId()), data.getPluginData().getBytes(StandardCharsets.UTF_8));
+			commands.lpush(getRedisHistoryPath(data.getUniqueId()), data.getHistory().getBytes(StandardCharsets.UTF_8));
+
+			return commands.exec().thenApply((TransactionResult result) -> transformPlayerSaveResult(mrs, result));
+		});
+	}
+
+	/* *******************************************************************************
+	 * Key layout migration
+	 */
+
+	private static final String[] PLAYER_KEY_SUFFIXES = {":data", ":history", ":sharddata", ":plugins", ":advancements", ":scores", ":remotedata"};
+
+	/**
+	 * Moves a player's keys from the legacy layout (domain:playerdata:uuid:...) to the hash tagged layout
+	 * (domain:playerdata:{uuid}:...) if hash_tag_player_keys or redis_cluster is enabled.
+	 * <p>
+	 * Without redis_cluster each key is moved atomically with RENAMENX. On a cluster the old and new names are in
+	 * different slots, so keys are copied with DUMP/RESTORE (keeping their expiry) and the legacy key is deleted afterwards.
+	 * If a key already exists under the new name it is left alone, and the legacy key is kept for manual inspection.
+	 * The player must not be saved by any shard still using the legacy layout while this runs.
+	 * <p>
+	 * Future returns the number of keys that were moved
+	 */
+	public static CompletableFuture<Integer> migratePlayerKeys(UUID uuid) {
+		if (!CommonConfig.getHashTagPlayerKeys()) {
+			return CompletableFuture.completedFuture(0);
+		}
+
+		return PlayerLanes.submit(uuid, () -> migrateLegacyKeys(uuid));
+	}
+
+	private static CompletableFuture<Integer> migrateLegacyKeys(UUID uuid) {
+		RedisAPI api = RedisAPI.getInstance();
+		String legacyPrefix = RedisAPI.getLegacyPlayerKeyPrefix(uuid);
+		String prefix = RedisAPI.getPlayerKeyPrefix(uuid);
+		String[] legacyKeys = new String[PLAYER_KEY_SUFFIXES.length];
+		for (int i = 0; i < PLAYER_KEY_SUFFIXES.length; i++) {
+			legacyKeys[i] = legacyPrefix + PLAYER_KEY_SUFFIXES[i];
+		}
+
+		/* Almost every player has nothing to migrate, so check all keys with one EXISTS first */
+		return api.async().exists(legacyKeys).toCompletableFuture().thenCompose(count -> {
+			if (count == 0) {
+				return CompletableFuture.completedFuture(0);
+			}
+
+			List<CompletableFuture<Boolean>> moves = new ArrayList<>(PLAYER_KEY_SUFFIXES.length);
+			for (int i = 0; i < PLAYER_KEY_SUFFIXES.length; i++) {
+				moves.add(migrateKey(api, legacyKeys[i], prefix + PLAYER_KEY_SUFFIXES[i]));
+			}
+			return CompletableFuture.allOf(moves.toArray(new CompletableFuture<?>[0]))
+				.thenApply(unused -> (int) moves.stream().filter(CompletableFuture::join).count());
+		});
+	}
+
+	private static CompletableFuture<Boolean> migrateKey(RedisAPI api, String legacyKey, String newKey) {
+		RedisClusterAsyncCommands<String, String> commands = api.async();
+		return commands.exists(newKey).toCompletableFuture().thenCompose(newExists -> {
+			if (newExists > 0) {
+				return CompletableFuture.completedFuture(false);
+			}
+			return commands.exists(legacyKey).toCompletableFuture().thenCompose(legacyExists -> {
+				if (legacyExists == 0) {
+					return CompletableFuture.completedFuture(false);
+				}
+				if (!api.isCluster()) {
+					/* Same node, so the key can be renamed in place, keeping its expiry */
+					return commands.renamenx(legacyKey, newKey).toCompletableFuture();
+				}
+
+				/* Read the value and its expiry together, on the node that owns the legacy key */
+				RedisAsyncCommands<String, String> legacyNode = api.asyncForKey(legacyKey);
+				legacyNode.multi();
+				legacyNode.dump(legacyKey);
+				legacyNode.pttl(legacyKey);
+				return legacyNode.exec().toCompletableFuture().thenCompose(result -> {
+					if (result.wasDiscarded() || result.get(0) == null) {
+						return CompletableFuture.completedFuture(false);
+					}
+					byte[] dump = result.get(0);
+					long ttl = result.<Long>get(1);
+					RestoreArgs args = new RestoreArgs();
+					if (ttl > 0) {
+						args.ttl(ttl);
+					}
+					/* Without REPLACE, this fails rather than overwriting a key created under the new name in the meantime */
+					return commands.restore(newKey, dump, args).toCompletableFuture()
+						.thenCompose(restored -> commands.del(legacyKey).toCompletableFuture())
+						.thenApply(deleted -> true);
+				});
+			});
+		});
 	}
 
 	/* *******************************************************************************
@@ -1137,8 +1509,20 @@ public class MonumentaRedisSyncAPI {
 	 * <p>
 	 * When the function is called, either data will be non-null and exception null,
 	 * or data will be null and the exception will be non-null
+	 * <p>
+	 * The callback is queued on {@link #getMainThreadExecutor()} rather than scheduled as its own task,
+	 * the plugin argument is only kept for compatibility
 	 */
 	public static <T> void runOnMainThreadWhenComplete(Plugin plugin, CompletableFuture<T> future, BiConsumer<T, Throwable> func) {
-		future.whenComplete((T result, Throwable ex) -> Bukkit.getScheduler().runTask(plugin, () -> func.accept(result, ex)));
+		future.whenCompleteAsync(func, getMainThreadExecutor());
+	}
+
+	/**
+	 * Executor that runs tasks on the main thread, from a queue drained once per tick within a time budget.
+	 * <p>
+	 * Much cheaper than scheduling a Bukkit task per callback, i.e. future.thenAcceptAsync(result -> ..., getMainThreadExecutor())
+	 */
+	public static Executor getMainThreadExecutor() {
+		return MonumentaRedisSync.getInstance().getMainThreadExecutor();
 	}
 }
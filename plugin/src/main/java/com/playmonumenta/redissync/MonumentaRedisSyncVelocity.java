@@ -6,6 +6,7 @@ import com.velocitypowered.api.event.PostOrder;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.proxy.ProxyInitializeEvent;
 import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
+import com.velocitypowered.api.plugin.Dependency;
 import com.velocitypowered.api.plugin.Plugin;
 import com.velocitypowered.api.plugin.annotation.DataDirectory;
 import com.velocitypowered.api.proxy.ProxyServer;
@@ -21,9 +22,10 @@ import org.spongepowered.configurate.objectmapping.meta.Setting;
 import org.spongepowered.configurate.yaml.NodeStyle;
 import org.spongepowered.configurate.yaml.YamlConfigurationLoader;
 
-@Plugin(id = "monumenta-redisapi", name = "Monumenta-RedisAPI", version = "", url = "", description = "", authors = {""})
+@Plugin(id = "monumenta-redisapi", name = "Monumenta-RedisAPI", version = "", url = "", description = "", authors = {""}, dependencies = {@Dependency(id = "monumenta-network-relay", optional = true)})
 public class MonumentaRedisSyncVelocity implements MonumentaRedisSyncInterface {
 	private @Nullable RedisAPI mRedisAPI = null;
+	private @Nullable RemoteDataInvalidations mRemoteDataInvalidations = null;
 	public final ProxyServer mServer;
 	public final Logger mLogger;
 
@@ -51,11 +53,19 @@ public class MonumentaRedisSyncVelocity implements MonumentaRedisSyncInterface {
 	@Subscribe
 	public void onEnable(ProxyInitializeEvent event) {
 		mServer.getEventManager().register(this, new VelocityListener(this));
+		/* So remote data written from the proxy is invalidated in the shards' remote data caches */
+		if (mServer.getPluginManager().isLoaded("monumenta-network-relay")) {
+			mRemoteDataInvalidations = new RemoteDataInvalidations(this, mLogger::warn);
+		}
 	}
 
 	// we use ProxyShutdownEvent because ListenerClosEvent might fire too early
 	@Subscribe(order = PostOrder.LATE)
 	public void onDisable(ProxyShutdownEvent event) {
+		if (mRemoteDataInvalidations != null) {
+			mRemoteDataInvalidations.close();
+		}
+		mRemoteDataInvalidations = null;
 		if (mRedisAPI != null) {
 			mRedisAPI.shutdown();
 		}
@@ -81,6 +91,24 @@ public class MonumentaRedisSyncVelocity implements MonumentaRedisSyncInterface {
 		int redisPort = mConfig.mRedisPort;
 		String serverDomain = mConfig.mServerDomain;
 		String shardName = mConfig.mShardName;
+		boolean redisPipelining = mConfig.mRedisPipelining;
+		int redisPipelineFlushIntervalMs = mConfig.mRedisPipelineFlushIntervalMs;
+		boolean redisCluster = mConfig.mRedisCluster;
+		boolean hashTagPlayerKeys = mConfig.mHashTagPlayerKeys;
+		List<String> redisReplicaHosts = mConfig.mRedisReplicaHosts;
+		List<String> redisReplicaReads = mConfig.mRedisReplicaReads;
+		List<String> nearCachePrefixes = mConfig.mNearCachePrefixes;
+		int nearCacheMaxKeys = mConfig.mNearCacheMaxKeys;
+		String metricsFile = mConfig.mMetricsFile;
+		int metricsIntervalSeconds = mConfig.mMetricsIntervalSeconds;
+		int rboardCombineIntervalMs = mConfig.mRboardCombineIntervalMs;
+		int rboardCombineMaxPending = mConfig.mRboardCombineMaxPending;
+		int leaderboardFlushIntervalMs = mConfig.mLeaderboardFlushIntervalMs;
+		List<String> leaderboardGtObjectives = mConfig.mLeaderboardGtObjectives;
+		List<String> leaderboardLtObjectives = mConfig.mLeaderboardLtObjectives;
+		int leaderboardCacheTtlMs = mConfig.mLeaderboardCacheTtlMs;
+		int leaderboardWindowRetention = mConfig.mLeaderboardWindowRetention;
+		boolean leaderboardWindowAllTime = mConfig.mLeaderboardWindowAllTime;
 		String defaultServer = mConfig.mDefaultServer;
 		List<String> excludedServers = mConfig.mExcludedServers;
 
@@ -90,6 +118,24 @@ public class MonumentaRedisSyncVelocity implements MonumentaRedisSyncInterface {
 			redisPort,
 			serverDomain,
 			shardName,
+			redisPipelining,
+			redisPipelineFlushIntervalMs,
+			redisCluster,
+			hashTagPlayerKeys,
+			redisReplicaHosts,
+			redisReplicaReads,
+			nearCachePrefixes,
+			nearCacheMaxKeys,
+			metricsFile,
+			metricsIntervalSeconds,
+			rboardCombineIntervalMs,
+			rboardCombineMaxPending,
+			leaderboardFlushIntervalMs,
+			leaderboardGtObjectives,
+			leaderboardLtObjectives,
+			leaderboardCacheTtlMs,
+			leaderboardWindowRetention,
+			leaderboardWindowAllTime,
 			defaultServer,
 			excludedServers
 		);
@@ -129,6 +175,60 @@ public class MonumentaRedisSyncVelocity implements MonumentaRedisSyncInterface {
 		@Setting(value = "shard_name")
 		public String mShardName = "bungee";
 
+		@Setting(value = "redis_pipelining")
+		public boolean mRedisPipelining = false;
+
+		@Setting(value = "redis_pipeline_flush_interval_ms")
+		public int mRedisPipelineFlushIntervalMs = 5;
+
+		@Setting(value = "redis_cluster")
+		public boolean mRedisCluster = false;
+
+		@Setting(value = "hash_tag_player_keys")
+		public boolean mHashTagPlayerKeys = false;
+
+		@Setting(value = "redis_replica_hosts")
+		public List<String> mRedisReplicaHosts = new ArrayList<>();
+
+		@Setting(value = "redis_replica_reads")
+		public List<String> mRedisReplicaReads = new ArrayList<>();
+
+		@Setting(value = "near_cache_prefixes")
+		public List<String> mNearCachePrefixes = new ArrayList<>();
+
+		@Setting(value = "near_cache_max_keys")
+		public int mNearCacheMaxKeys = 10000;
+
+		@Setting(value = "metrics_file")
+		public String mMetricsFile = "";
+
+		@Setting(value = "metrics_interval_seconds")
+		public int mMetricsIntervalSeconds = 15;
+
+		@Setting(value = "rboard_combine_interval_ms")
+		public int mRboardCombineIntervalMs = 0;
+
+		@Setting(value = "rboard_combine_max_pending")
+		public int mRboardCombineMaxPending = 1000;
+
+		@Setting(value = "leaderboard_flush_interval_ms")
+		public int mLeaderboardFlushIntervalMs = 0;
+
+		@Setting(value = "leaderboard_gt_objectives")
+		public List<String> mLeaderboardGtObjectives = new ArrayList<>();
+
+		@Setting(value = "leaderboard_lt_objectives")
+		public List<String> mLeaderboardLtObjectives = new ArrayList<>();
+
+		@Setting(value = "leaderboard_cache_ttl_ms")
+		public int mLeaderboardCacheTtlMs = 0;
+
+		@Setting(value = "leaderboard_window_retention")
+		public int mLeaderboardWindowRetention = 2;
+
+		@Setting(value = "leaderboard_window_all_time")
+		public boolean mLeaderboardWindowAllTime = true;
+
 		@Setting(value = "default_server")
 		public String mDefaultServer = "";
 
@@ -0,0 +1,350 @@
+package com.playmonumenta.redissync;
+
+import com.playmonumenta.redissync.utils.NameIndex;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.Range;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Fills the local uuid2name/name2uuid caches and name history index at startup without blocking Redis.
+ * <p>
+ * On shutdown, the caches are written to a local snapshot file. On startup, that snapshot is memory-mapped and loaded
+ * before any player can join, then only the players whose names changed since it was taken are read back from Redis,
+ * using the {@link #CHANGE_LOG_PATH} sorted set that every name change is recorded in. If there is no usable snapshot,
+ * or it is older than the change log is kept for, both hashes are read in full with HSCAN a page at a time instead.
+ * While running, the same catch-up is repeated periodically, so the snapshot written on shutdown is always recent.
+ */
+public class NameCacheLoader {
+	/* Sorted set of UUIDs whose name changed, scored by when, in epoch millis. Same slot as the history, for the script */
+	public static final String CHANGE_LOG_PATH = "{namehistory}:changes";
+	/* Hash of UUID to every name it has used, see NameHistoryIndex for the format */
+	public static final String NAME_HISTORY_PATH = "{namehistory}";
+	/* Hash of lowercase name to every UUID that has used it, comma separated. Same slot as the history, so one script updates both */
+	public static final String NAME_OWNERS_PATH = "{namehistory}:owners";
+	private static final String UUID_TO_NAME_PATH = "uuid2name";
+	private static final String NAME_TO_UUID_PATH = "name2uuid";
+	private static final long CHANGE_LOG_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(7);
+	/* Catch up from a little before the snapshot, in case the clocks of the writing servers are behind ours */
+	private static final long CLOCK_SKEW_MILLIS = TimeUnit.MINUTES.toMillis(1);
+	private static final int SNAPSHOT_MAGIC = 0x4E414D45;
+	/* 4: the change log moved to CHANGE_LOG_PATH, so older snapshots can't catch up from it */
+	private static final int SNAPSHOT_VERSION = 4;
+	private static final int CATCH_UP_CHUNK_SIZE = 500;
+	private static final long CATCH_UP_INTERVAL_MINUTES = 60;
+	/* KEYS = history, owners, change log; ARGV = uuid, name, millis. Records anything only if the name changed */
+	private static final RedisScript RECORD_NAME_SCRIPT = new RedisScript(
+		"local history = redis.call('HGET', KEYS[1], ARGV[1])\n"
+		+ "local entry = ARGV[2] .. ':' .. ARGV[3]\n"
+		+ "if history then\n"
+		+ "  local last = string.match(history, '([^,]*):[^,:]*$')\n"
+		+ "  if last == ARGV[2] then return 0 end\n"
+		+ "  history = history .. ',' .. entry\n"
+		+ "else\n"
+		+ "  history = entry\n"
+		+ "end\n"
+		+ "redis.call('HSET', KEYS[1], ARGV[1], history)\n"
+		+ "redis.call('ZADD', KEYS[3], ARGV[3], ARGV[1])\n"
+		+ "local name = string.lower(ARGV[2])\n"
+		+ "local owners = redis.call('HGET', KEYS[2], name)\n"
+		+ "if not owners then\n"
+		+ "  redis.call('HSET', KEYS[2], name, ARGV[1])\n"
+		+ "elseif not string.find(',' .. owners .. ',', ',' .. ARGV[1] .. ',', 1, true) then\n"
+		+ "  redis.call('HSET', KEYS[2], name, owners .. ',' .. ARGV[1])\n"
+		+ "end\n"
+		+ "return 1\n");
+
+	private final Logger mLogger;
+	private final @Nullable Path mSnapshotPath;
+	private final ScheduledExecutorService mCatchUp;
+	/* Everything that changed after this time might not be cached, -1 until the caches are complete */
+	private volatile long mSyncedSince = -1;
+
+	/**
+	 * @param snapshotPath Where to read and write the snapshot, or null to always read the hashes in full
+	 */
+	protected NameCacheLoader(Logger logger, @Nullable Path snapshotPath) {
+		mLogger = logger;
+		mSnapshotPath = snapshotPath;
+		mCatchUp = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "MonumentaRedisSync-NameCatchUp");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Records that a player logged in with a name. If it isn't the last name in their history, it is appended to it,
+	 * and the player is added to the change log so shards starting from a snapshot pick it up.
+	 * Queue this with the HSETs of uuid2name/name2uuid
+	 */
+	public static void recordChange(RedisClusterAsyncCommands<String, String> commands, UUID uuid, String name, long millis) {
+		recordChange(commands, uuid, name, millis, false);
+	}
+
+	/**
+	 * Same as {@link #recordChange(RedisClusterAsyncCommands, UUID, String, long)}, set transaction when queueing it inside MULTI
+	 */
+	public static void recordChange(RedisClusterAsyncCommands<String, String> commands, UUID uuid, String name, long millis, boolean transaction) {
+		String[] keys = {NAME_HISTORY_PATH, NAME_OWNERS_PATH, CHANGE_LOG_PATH};
+		if (transaction) {
+			RECORD_NAME_SCRIPT.evalInTransaction(commands, ScriptOutputType.INTEGER, keys, uuid.toString(), name, Long.toString(millis));
+		} else {
+			RECORD_NAME_SCRIPT.eval(commands, ScriptOutputType.INTEGER, keys, uuid.toString(), name, Long.toString(millis));
+		}
+	}
+
+	/**
+	 * Loads the snapshot (if any) synchronously, then catches up with Redis in the background.
+	 * Completes once the caches are complete
+	 */
+	public CompletableFuture<Void> load() {
+		long startMillis = System.currentTimeMillis();
+		long snapshotMillis = readSnapshot();
+
+		RedisAPI api = RedisAPI.getInstance();
+		/* Drop changes no snapshot can need any more */
+		api.asyncForKey(CHANGE_LOG_PATH).zremrangebyscore(CHANGE_LOG_PATH, Range.create(0L, startMillis - CHANGE_LOG_RETENTION_MILLIS));
+
+		CompletableFuture<Void> future;
+		if (snapshotMillis >= 0 && startMillis - snapshotMillis < CHANGE_LOG_RETENTION_MILLIS) {
+			future = catchUp(api, snapshotMillis - CLOCK_SKEW_MILLIS);
+		} else {
+			future = scanAll(api);
+		}
+		return future.whenComplete((unused, ex) -> {
+			if (ex != null) {
+				mLogger.log(Level.SEVERE, "Failed to load player name cache", ex);
+			} else {
+				mSyncedSince = startMillis;
+				mLogger.info("Player name cache loaded in " + (System.currentTimeMillis() - startMillis) + "ms");
+				mCatchUp.scheduleWithFixedDelay(this::periodicCatchUp, CATCH_UP_INTERVAL_MINUTES, CATCH_UP_INTERVAL_MINUTES, TimeUnit.MINUTES);
+			}
+		});
+	}
+
+	/* Picks up changes the relay may have missed, and moves the time a snapshot would be synced up to forward */
+	private void periodicCatchUp() {
+		long startMillis = System.currentTimeMillis();
+		try {
+			catchUp(RedisAPI.getInstance(), mSyncedSince - CLOCK_SKEW_MILLIS).get(CATCH_UP_INTERVAL_MINUTES, TimeUnit.MINUTES);
+			mSyncedSince = startMillis;
+		} catch (Exception ex) {
+			mLogger.log(Level.WARNING, "Failed to catch up on player name changes", ex);
+		}
+	}
+
+	/**
+	 * Stops catching up and writes the snapshot. Call on shutdown
+	 */
+	protected void close() {
+		mCatchUp.shutdownNow();
+		saveSnapshot();
+	}
+
+	/**
+	 * Writes the caches to the snapshot file, if they were completely loaded
+	 */
+	public void saveSnapshot() {
+		long syncedSince = mSyncedSince;
+		if (mSnapshotPath == null || syncedSince < 0) {
+			return;
+		}
+
+		Path tempPath = mSnapshotPath.resolveSibling(mSnapshotPath.getFileName() + ".tmp");
+		try {
+			Files.createDirectories(mSnapshotPath.toAbsolutePath().getParent());
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+				out.writeInt(SNAPSHOT_MAGIC);
+				out.writeInt(SNAPSHOT_VERSION);
+				out.writeLong(syncedSince);
+
+				/* Each entry is preceded by a 1 and each section ends with a 0, as the index may grow while it is written */
+				NameIndex index = MonumentaRedisSyncAPI.getNameIndex();
+				index.forEachUuid((uuid, name) -> {
+					try {
+						out.writeByte(1);
+						writeUuid(out, uuid);
+						writeString(out, name);
+					} catch (IOException ex) {
+						throw new UncheckedIOException(ex);
+					}
+				});
+				out.writeByte(0);
+
+				index.forEachName((name, uuid) -> {
+					try {
+						out.writeByte(1);
+						writeString(out, name);
+						writeUuid(out, uuid);
+					} catch (IOException ex) {
+						throw new UncheckedIOException(ex);
+					}
+				});
+				out.writeByte(0);
+
+				MonumentaRedisSyncAPI.getNameHistoryIndex().forEachHistory((uuid, history) -> {
+					try {
+						out.writeByte(1);
+						writeUuid(out, uuid);
+						writeString(out, history);
+					} catch (IOException ex) {
+						throw new UncheckedIOException(ex);
+					}
+				});
+				out.writeByte(0);
+			}
+			Files.move(tempPath, mSnapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (Exception ex) {
+			mLogger.log(Level.WARNING, "Failed to write player name cache snapshot", ex);
+		}
+	}
+
+	/* Returns the time the snapshot was synced up to, or -1 if there is no usable snapshot */
+	private long readSnapshot() {
+		if (mSnapshotPath == null || !Files.isRegularFile(mSnapshotPath)) {
+			return -1;
+		}
+
+		try (FileChannel channel = FileChannel.open(mSnapshotPath, StandardOpenOption.READ)) {
+			MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (in.getInt() != SNAPSHOT_MAGIC || in.getInt() != SNAPSHOT_VERSION) {
+				mLogger.warning("Ignoring player name cache snapshot with an unknown format");
+				return -1;
+			}
+			long syncedSince = in.getLong();
+
+			int uuidToNameCount = 0;
+			while (in.get() != 0) {
+				UUID uuid = readUuid(in);
+				MonumentaRedisSyncAPI.updateUuidToName(uuid, readString(in));
+				uuidToNameCount++;
+			}
+			while (in.get() != 0) {
+				String name = readString(in);
+				MonumentaRedisSyncAPI.updateNameToUuid(name, readUuid(in));
+			}
+			while (in.get() != 0) {
+				UUID uuid = readUuid(in);
+				MonumentaRedisSyncAPI.updateNameHistory(uuid, readString(in));
+			}
+
+			mLogger.info("Loaded " + uuidToNameCount + " player names from snapshot");
+			return syncedSince;
+		} catch (Exception ex) {
+			mLogger.log(Level.WARNING, "Failed to read player name cache snapshot, reading all names from redis", ex);
+			return -1;
+		}
+	}
+
+	/* Re-reads the current name and name history of every player in the change log since the given time */
+	private CompletableFuture<Void> catchUp(RedisAPI api, long sinceMillis) {
+		return api.asyncForKey(CHANGE_LOG_PATH).zrangebyscore(CHANGE_LOG_PATH, Range.from(Range.Boundary.including(sinceMillis), Range.Boundary.unbounded()))
+			.toCompletableFuture().thenCompose(changed -> {
+				mLogger.fine("Catching up on " + changed.size() + " player name changes");
+				List<CompletableFuture<Void>> chunks = new ArrayList<>();
+				for (int start = 0; start < changed.size(); start += CATCH_UP_CHUNK_SIZE) {
+					String[] uuids = changed.subList(start, Math.min(changed.size(), start + CATCH_UP_CHUNK_SIZE)).toArray(new String[0]);
+					chunks.add(api.asyncForKey(UUID_TO_NAME_PATH).hmget(UUID_TO_NAME_PATH, uuids).toCompletableFuture().thenAccept(values -> {
+						for (KeyValue<String, String> value : values) {
+							if (value.hasValue()) {
+								update(value.getKey(), value.getValue());
+							}
+						}
+					}));
+					chunks.add(api.asyncForKey(NAME_HISTORY_PATH).hmget(NAME_HISTORY_PATH, uuids).toCompletableFuture().thenAccept(values -> {
+						for (KeyValue<String, String> value : values) {
+							if (value.hasValue()) {
+								updateHistory(value.getKey(), value.getValue());
+							}
+						}
+					}));
+				}
+				return CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0]));
+			});
+	}
+
+	private CompletableFuture<Void> scanAll(RedisAPI api) {
+		CompletableFuture<Void> uuidToName = HashScan.all(api.asyncForKey(UUID_TO_NAME_PATH), UUID_TO_NAME_PATH, HashScan.DEFAULT_PAGE_SIZE,
+			page -> page.forEach((uuid, name) -> {
+				try {
+					MonumentaRedisSyncAPI.updateUuidToName(UUID.fromString(uuid), name);
+				} catch (IllegalArgumentException ex) {
+					/* Not a player */
+				}
+			}));
+		CompletableFuture<Void> nameToUuid = HashScan.all(api.asyncForKey(NAME_TO_UUID_PATH), NAME_TO_UUID_PATH, HashScan.DEFAULT_PAGE_SIZE,
+			page -> page.forEach((name, uuid) -> {
+				try {
+					MonumentaRedisSyncAPI.updateNameToUuid(name, UUID.fromString(uuid));
+				} catch (IllegalArgumentException ex) {
+					/* Not a player */
+				}
+			}));
+		CompletableFuture<Void> history = HashScan.all(api.asyncForKey(NAME_HISTORY_PATH), NAME_HISTORY_PATH, HashScan.DEFAULT_PAGE_SIZE,
+			page -> page.forEach(NameCacheLoader::updateHistory));
+		return CompletableFuture.allOf(uuidToName, nameToUuid, history);
+	}
+
+	private static void update(String uuidStr, String name) {
+		UUID uuid;
+		try {
+			uuid = UUID.fromString(uuidStr);
+		} catch (IllegalArgumentException ex) {
+			return;
+		}
+		MonumentaRedisSyncAPI.updateUuidToName(uuid, name);
+		MonumentaRedisSyncAPI.updateNameToUuid(name, uuid);
+	}
+
+	private static void updateHistory(String uuidStr, String history) {
+		try {
+			MonumentaRedisSyncAPI.updateNameHistory(UUID.fromString(uuidStr), history);
+		} catch (IllegalArgumentException ex) {
+			/* Not a player */
+		}
+	}
+
+	private static void writeUuid(DataOutputStream out, UUID uuid) throws IOException {
+		out.writeLong(uuid.getMostSignificantBits());
+		out.writeLong(uuid.getLeastSignificantBits());
+	}
+
+	private static UUID readUuid(ByteBuffer in) {
+		return new UUID(in.getLong(), in.getLong());
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,278 @@
+package com.playmonumenta.redissync;
+
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.codec.StringCodec;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * Client-side cache of hash fields, kept coherent with Redis using server-assisted client tracking (RESP3 CLIENT TRACKING).
+ * <p>
+ * Only keys starting with one of the configured prefixes are cached. Reads of those keys go through a dedicated
+ * tracking connection, so Redis remembers which keys this shard has cached and pushes an invalidation as soon as
+ * any client (on any shard) modifies one of them. While that connection is down the cache is bypassed.
+ * <p>
+ * That invalidation arrives asynchronously, so writes made by this shard go through {@link #write} instead, which
+ * drops the key straight away and bypasses the cache for it until the write has completed.
+ */
+public class NearCache {
+	private static final class Entry {
+		private final ConcurrentHashMap<String, Optional<String>> mFields = new ConcurrentHashMap<>();
+		/* True if every field of the hash is in mFields, i.e. it was loaded with HGETALL */
+		private volatile boolean mComplete = false;
+	}
+
+	private final StatefulRedisConnection<String, String> mConnection;
+	private final RedisAsyncCommands<String, String> mCommands;
+	private final List<String> mPrefixes;
+	private final int mMaxKeys;
+	private final ConcurrentHashMap<String, Entry> mEntries = new ConcurrentHashMap<>();
+	/* Number of writes from this shard in flight per key */
+	private final ConcurrentHashMap<String, Integer> mPendingWrites = new ConcurrentHashMap<>();
+	private volatile boolean mTracking = false;
+
+	private final LongAdder mHits = new LongAdder();
+	private final LongAdder mMisses = new LongAdder();
+	private final LongAdder mInvalidations = new LongAdder();
+	private final LongAdder mEvictions = new LongAdder();
+
+	protected NearCache(RedisClient client, List<String> prefixes, int maxKeys) {
+		mPrefixes = new ArrayList<>(prefixes);
+		mMaxKeys = Math.max(1, maxKeys);
+		mConnection = client.connect();
+		mCommands = mConnection.async();
+
+		mConnection.addListener(this::onPushMessage);
+		/* Tracking state is per connection, so it has to be enabled again (with an empty cache) after a reconnect */
+		client.addListener(new RedisConnectionStateListener() {
+			@Override
+			public void onRedisConnected(RedisChannelHandler<?, ?> connection, SocketAddress socketAddress) {
+				if (connection == mConnection) {
+					enableTracking();
+				}
+			}
+
+			@Override
+			public void onRedisDisconnected(RedisChannelHandler<?, ?> connection) {
+				if (connection == mConnection) {
+					mTracking = false;
+					mEntries.clear();
+				}
+			}
+		});
+
+		/* Enable tracking for the initial connection, which was established before the listener was added */
+		mConnection.sync().clientTracking(TrackingArgs.Builder.enabled());
+		mTracking = true;
+	}
+
+	protected void close() {
+		mTracking = false;
+		mEntries.clear();
+		mConnection.close();
+	}
+
+	/**
+	 * Whether reads of this key may be served from the cache
+	 */
+	public boolean isCacheable(String key) {
+		return mTracking && matchesPrefix(key) && !mPendingWrites.containsKey(key);
+	}
+
+	/**
+	 * Sends a write to a key with the given function, dropping the key from the cache before it is issued.
+	 * <p>
+	 * Until the write completes the key isn't cacheable, so reads of it go out on the normal connection behind the
+	 * write instead of reading an old value through the tracking connection
+	 */
+	public <T> CompletableFuture<T> write(String key, Supplier<CompletableFuture<T>> write) {
+		if (!matchesPrefix(key)) {
+			return write.get();
+		}
+
+		mPendingWrites.merge(key, 1, Integer::sum);
+		invalidate(key);
+		final CompletableFuture<T> future;
+		try {
+			future = write.get();
+		} catch (RuntimeException ex) {
+			finishWrite(key);
+			throw ex;
+		}
+		return future.whenComplete((result, ex) -> finishWrite(key));
+	}
+
+	/**
+	 * Equivalent of HMGET, returns a map of the requested fields in order, with null values for fields that do not exist
+	 */
+	public CompletableFuture<Map<String, String>> hmget(String key, String... fields) {
+		Entry entry = mEntries.get(key);
+		if (entry != null) {
+			Map<String, String> result = new LinkedHashMap<>();
+			List<String> missing = new ArrayList<>();
+			for (String field : fields) {
+				Optional<String> value = entry.mFields.get(field);
+				if (value != null) {
+					result.put(field, value.orElse(null));
+				} else if (entry.mComplete) {
+					result.put(field, null);
+				} else {
+					missing.add(field);
+				}
+			}
+			if (missing.isEmpty()) {
+				mHits.increment();
+				return CompletableFuture.completedFuture(result);
+			}
+		}
+
+		mMisses.increment();
+		Entry loading = getOrCreateEntry(key);
+		return mCommands.hmget(key, fields).toCompletableFuture().thenApply(values -> {
+			Map<String, String> result = new LinkedHashMap<>();
+			for (KeyValue<String, String> value : values) {
+				result.put(value.getKey(), value.getValueOrElse(null));
+			}
+			/* Only store the result if the key was not invalidated while this read was in flight */
+			if (mEntries.get(key) == loading) {
+				result.forEach((field, value) -> loading.mFields.put(field, Optional.ofNullable(value)));
+			}
+			return result;
+		});
+	}
+
+	/**
+	 * Equivalent of HGET
+	 */
+	public CompletableFuture<String> hget(String key, String field) {
+		return hmget(key, field).thenApply(result -> result.get(field));
+	}
+
+	/**
+	 * Equivalent of HGETALL
+	 */
+	public CompletableFuture<Map<String, String>> hgetall(String key) {
+		Entry entry = mEntries.get(key);
+		if (entry != null && entry.mComplete) {
+			mHits.increment();
+			Map<String, String> result = new LinkedHashMap<>();
+			entry.mFields.forEach((field, value) -> value.ifPresent(v -> result.put(field, v)));
+			return CompletableFuture.completedFuture(result);
+		}
+
+		mMisses.increment();
+		Entry loading = getOrCreateEntry(key);
+		return mCommands.hgetall(key).toCompletableFuture().thenApply(result -> {
+			if (mEntries.get(key) == loading) {
+				result.forEach((field, value) -> loading.mFields.put(field, Optional.of(value)));
+				loading.mComplete = true;
+			}
+			return result;
+		});
+	}
+
+	public void invalidate(String key) {
+		if (mEntries.remove(key) != null) {
+			mInvalidations.increment();
+		}
+	}
+
+	public void invalidateAll() {
+		mEntries.clear();
+	}
+
+	public long getHits() {
+		return mHits.sum();
+	}
+
+	public long getMisses() {
+		return mMisses.sum();
+	}
+
+	public long getInvalidations() {
+		return mInvalidations.sum();
+	}
+
+	public long getEvictions() {
+		return mEvictions.sum();
+	}
+
+	public int getSize() {
+		return mEntries.size();
+	}
+
+	private boolean matchesPrefix(String key) {
+		for (String prefix : mPrefixes) {
+			if (key.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void finishWrite(String key) {
+		mPendingWrites.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+		/* Anything read through the tracking connection while the write was in flight may be older than it */
+		invalidate(key);
+	}
+
+	private Entry getOrCreateEntry(String key) {
+		Entry entry = mEntries.computeIfAbsent(key, k -> new Entry());
+		if (mEntries.size() > mMaxKeys) {
+			/* Evict an arbitrary other key, the map is unordered so this is roughly random */
+			Iterator<String> iter = mEntries.keySet().iterator();
+			while (iter.hasNext() && mEntries.size() > mMaxKeys) {
+				if (!iter.next().equals(key)) {
+					iter.remove();
+					mEvictions.increment();
+				}
+			}
+		}
+		return entry;
+	}
+
+	private void enableTracking() {
+		mEntries.clear();
+		mCommands.clientTracking(TrackingArgs.Builder.enabled()).whenComplete((result, ex) -> {
+			mEntries.clear();
+			mTracking = ex == null;
+		});
+	}
+
+	private void onPushMessage(PushMessage message) {
+		if (!"invalidate".equals(message.getType())) {
+			return;
+		}
+
+		List<Object> content = message.getContent(StringCodec.UTF8::decodeKey);
+		@Nullable Object keys = content.size() > 1 ? content.get(1) : null;
+		if (keys instanceof List<?> keyList) {
+			for (Object key : keyList) {
+				if (key instanceof String keyStr) {
+					invalidate(keyStr);
+				}
+			}
+		} else {
+			/* A null key list means everything was invalidated, i.e. FLUSHALL */
+			mInvalidations.increment();
+			mEntries.clear();
+		}
+	}
+}
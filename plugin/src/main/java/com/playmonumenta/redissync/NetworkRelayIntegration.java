@@ -1,10 +1,14 @@
 package com.playmonumenta.redissync;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.playmonumenta.networkrelay.GatherHeartbeatDataEvent;
 import com.playmonumenta.networkrelay.NetworkRelayAPI;
 import com.playmonumenta.networkrelay.NetworkRelayMessageEvent;
 import com.playmonumenta.redissync.event.PlayerAccountTransferEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.logging.Logger;
@@ -109,6 +113,20 @@ public class NetworkRelayIntegration implements Listener {
 
 				remoteAccountTransferEvent(data);
 			}
+			case RemoteDataInvalidations.CHANNEL -> {
+				if (event.getSource().equals(mShardName)) {
+					// The writing shard already updated its own cache
+					return;
+				}
+
+				JsonObject data = event.getData();
+				if (data == null) {
+					mLogger.severe("Got " + RemoteDataInvalidations.CHANNEL + " channel with null data");
+					return;
+				}
+
+				remoteDataInvalidateEvent(data);
+			}
 			default -> {
 			}
 		}
@@ -165,8 +183,29 @@ public class NetworkRelayIntegration implements Listener {
 			return;
 		}
 
+		long now = System.currentTimeMillis();
 		MonumentaRedisSyncAPI.updateUuidToName(playerUuid, playerName);
 		MonumentaRedisSyncAPI.updateNameToUuid(playerName, playerUuid);
+		MonumentaRedisSyncAPI.recordNameHistory(playerUuid, playerName, now);
+	}
+
+	private void remoteDataInvalidateEvent(JsonObject data) {
+		RemoteDataCache cache = RemoteDataCache.getInstance();
+		if (cache == null) {
+			return;
+		}
+
+		try {
+			for (Map.Entry<String, JsonElement> player : data.getAsJsonObject("players").entrySet()) {
+				UUID playerUuid = UUID.fromString(player.getKey());
+				List<String> keys = new ArrayList<>();
+				player.getValue().getAsJsonArray().forEach(key -> keys.add(key.getAsString()));
+				mLogger.finest(() -> "Got relay remoteDataInvalidateEvent for " + playerUuid + ": " + keys);
+				cache.invalidate(playerUuid, keys);
+			}
+		} catch (Exception e) {
+			mLogger.severe("Got " + RemoteDataInvalidations.CHANNEL + " channel with invalid data");
+		}
 	}
 
 	private void remoteAccountTransferEvent(JsonObject data) {
@@ -0,0 +1,23 @@
+package com.playmonumenta.redissync;
+
+import com.destroystokyo.paper.event.server.ServerTickEndEvent;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+
+/**
+ * Flushes commands buffered by {@link RedisAPI#pipelined()} once at the end of every server tick,
+ * so everything issued on the main thread during a tick goes out in a single write.
+ */
+public class PipelineFlushListener implements Listener {
+	private final RedisAPI mRedisAPI;
+
+	protected PipelineFlushListener(RedisAPI redisAPI) {
+		mRedisAPI = redisAPI;
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = false)
+	public void serverTickEndEvent(ServerTickEndEvent event) {
+		mRedisAPI.flushPipeline();
+	}
+}
@@ -0,0 +1,124 @@
+package com.playmonumenta.redissync;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs player-scoped Redis operations one at a time per player, in the order they were submitted.
+ * <p>
+ * Each player has a lane: an operation starts only once the previous operation submitted for the same player
+ * has completed (successfully or not). Operations for different players never wait on each other.
+ * No thread is ever blocked - an operation is just chained onto the completion of the one before it.
+ * <p>
+ * Every operation gets a sequence number within its lane, and is checked to start right after its predecessor.
+ * Lanes are dropped once idle, so sequence numbers start over for the next operation after that.
+ */
+public class PlayerLanes {
+	/*
+	 * Callers of operations that take longer than this get a timeout, so one lost reply can't hang them forever.
+	 * The lane itself is held until the operation really finishes (Redis commands time out on their own eventually),
+	 * so the next operation never starts on top of one that is still running
+	 */
+	public static final int LANE_TIMEOUT_SECONDS = 30;
+
+	private static final class Lane {
+		/* Only accessed inside LANES.compute() and computeIfPresent() */
+		private long mSubmittedSequence = 0;
+		private CompletableFuture<?> mTail = CompletableFuture.completedFuture(null);
+		private volatile long mCompletedSequence = 0;
+	}
+
+	private static final class Ticket {
+		private final Lane mLane;
+		private final CompletableFuture<?> mPrevious;
+		private final long mSequence;
+
+		private Ticket(Lane lane, CompletableFuture<?> previous, long sequence) {
+			mLane = lane;
+			mPrevious = previous;
+			mSequence = sequence;
+		}
+	}
+
+	private static final ConcurrentHashMap<UUID, Lane> LANES = new ConcurrentHashMap<>();
+
+	/**
+	 * Queues an operation on this player's lane.
+	 * <p>
+	 * The task is called once all previously submitted operations for this player have completed, on whichever
+	 * thread completed the last of them (or immediately on this thread if the lane is idle).
+	 * It should issue its commands and return without blocking.
+	 */
+	public static <T> CompletableFuture<T> submit(UUID uuid, Supplier<? extends CompletionStage<T>> task) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		/* Completes when the operation has actually finished, which may be after result timed out */
+		CompletableFuture<Void> released = new CompletableFuture<>();
+		Ticket[] ticket = new Ticket[1];
+		LANES.compute(uuid, (key, existing) -> {
+			Lane lane = existing == null ? new Lane() : existing;
+			ticket[0] = new Ticket(lane, lane.mTail, ++lane.mSubmittedSequence);
+			lane.mTail = released;
+			return lane;
+		});
+
+		/* Chained outside of compute(), the task may well submit more work for the same player */
+		Ticket queued = ticket[0];
+		queued.mPrevious.whenComplete((unused, ex) -> run(uuid, queued.mLane, queued.mSequence, task, result, released));
+		return result;
+	}
+
+	/**
+	 * Returns a future that completes once everything currently queued for this player has completed
+	 */
+	public static CompletableFuture<Void> drain(UUID uuid) {
+		return submit(uuid, () -> CompletableFuture.completedFuture(null));
+	}
+
+	/**
+	 * Whether this player has no operations queued or running
+	 */
+	public static boolean isIdle(UUID uuid) {
+		return !LANES.containsKey(uuid);
+	}
+
+	/**
+	 * Number of players that currently have operations queued or running
+	 */
+	public static int getActiveLanes() {
+		return LANES.size();
+	}
+
+	private static <T> void run(UUID uuid, Lane lane, long sequence, Supplier<? extends CompletionStage<T>> task, CompletableFuture<T> result, CompletableFuture<Void> released) {
+		CompletableFuture<T> operation;
+		if (lane.mCompletedSequence != sequence - 1) {
+			operation = CompletableFuture.failedFuture(new IllegalStateException("Operation " + sequence + " for player " + uuid
+				+ " started after operation " + lane.mCompletedSequence + ", this is a bug"));
+		} else {
+			try {
+				operation = task.get().toCompletableFuture();
+			} catch (Exception ex) {
+				operation = CompletableFuture.failedFuture(ex);
+			}
+		}
+
+		/* copy() so the timeout only affects the caller, not the operation the lane is waiting for */
+		operation.copy().orTimeout(LANE_TIMEOUT_SECONDS, TimeUnit.SECONDS).whenComplete((value, ex) -> {
+			if (ex != null) {
+				result.completeExceptionally(ex);
+			} else {
+				result.complete(value);
+			}
+		});
+
+		operation.whenComplete((value, ex) -> {
+			lane.mCompletedSequence = sequence;
+			/* Drop the lane if nothing was queued behind this operation */
+			LANES.computeIfPresent(uuid, (key, existing) -> existing == lane && lane.mTail == released ? null : existing);
+			released.complete(null);
+		});
+	}
+}
@@ -1,20 +1,46 @@
 package com.playmonumenta.redissync;
 
-import com.playmonumenta.redissync.config.CommonConfig;
+import io.lettuce.core.ScriptOutputType;
 import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class RBoardAPI {
+	/* Missing keys count as 0 in all of these, the same as get() reports them */
+	private static final RedisScript COMPARE_AND_SET_SCRIPT = new RedisScript(
+		"local current = redis.call('HGET', KEYS[1], ARGV[1]) or '0'\n"
+		+ "if current ~= ARGV[2] then return 0 end\n"
+		+ "redis.call('HSET', KEYS[1], ARGV[1], ARGV[3])\n"
+		+ "return 1\n");
+	private static final RedisScript ADD_CLAMPED_SCRIPT = new RedisScript(
+		"local current = tonumber(redis.call('HGET', KEYS[1], ARGV[1]) or '0')\n"
+		+ "local target = math.min(math.max(current + tonumber(ARGV[2]), tonumber(ARGV[3])), tonumber(ARGV[4]))\n"
+		+ "return redis.call('HINCRBY', KEYS[1], ARGV[1], target - current)\n");
+	private static final RedisScript ADD_IF_BELOW_SCRIPT = new RedisScript(
+		"local current = tonumber(redis.call('HGET', KEYS[1], ARGV[1]) or '0')\n"
+		+ "if current + tonumber(ARGV[2]) > tonumber(ARGV[3]) then return false end\n"
+		+ "return redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2])\n");
+	/* ARGV = number of adds, then key/amount pairs, then the keys to get */
+	private static final RedisScript ADD_AND_GET_SCRIPT = new RedisScript(
+		"local adds = tonumber(ARGV[1])\n"
+		+ "for i = 0, adds - 1 do\n"
+		+ "  redis.call('HINCRBY', KEYS[1], ARGV[2 + i * 2], ARGV[3 + i * 2])\n"
+		+ "end\n"
+		+ "local result = {}\n"
+		+ "for i = 2 + adds * 2, #ARGV do\n"
+		+ "  result[#result + 1] = redis.call('HGET', KEYS[1], ARGV[i]) or '0'\n"
+		+ "end\n"
+		+ "return result\n");
 
 	public static String getRedisPath(String name) throws IllegalArgumentException {
-		if (!name.matches("^[-_0-9A-Za-z$]+$")) {
-			throw new IllegalArgumentException("Name '" + name + "' contains illegal characters, must match '^[-_$0-9A-Za-z$]+'");
-		}
-		return String.format("%s:rboard:%s", CommonConfig.getServerDomain(), name);
+		return KeyRegistry.getRBoardPath(name);
 	}
 
 	/* ******************* Set ******************* */
@@ -28,8 +54,10 @@ public class RBoardAPI {
 			return future;
 		}
 
-		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().async();
-		return commands.hset(redisPath, data).toCompletableFuture();
+		flushCombinedAdds(redisPath);
+
+		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().pipelinedForKey(redisPath);
+		return RedisStats.time(RedisStats.Api.RBOARD, write(redisPath, () -> commands.hset(redisPath, data).toCompletableFuture()));
 	}
 
 	public static CompletableFuture<Long> set(String name, String key, long amount) {
@@ -39,6 +67,12 @@ public class RBoardAPI {
 	}
 
 	/* ******************* Add ******************* */
+	/**
+	 * Adds to a key, completing with its new value.
+	 * <p>
+	 * If rboard_combine_interval_ms is set, the increment is combined with others to the same key and sent later;
+	 * the value is then the one after the whole combined increment, which may include adds made after this one
+	 */
 	public static CompletableFuture<Long> add(String name, String key, long amount) {
 		final String redisPath;
 		try {
@@ -49,8 +83,13 @@ public class RBoardAPI {
 			return future;
 		}
 
-		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().async();
-		return commands.hincrby(redisPath, key, amount).toCompletableFuture();
+		RBoardWriteCombiner combiner = RedisAPI.getInstance().getRBoardWriteCombiner();
+		if (combiner != null) {
+			return RedisStats.time(RedisStats.Api.RBOARD, write(redisPath, () -> combiner.add(redisPath, key, amount)));
+		}
+
+		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().pipelinedForKey(redisPath);
+		return RedisStats.time(RedisStats.Api.RBOARD, write(redisPath, () -> commands.hincrby(redisPath, key, amount).toCompletableFuture()));
 	}
 
 	/* ******************* Get ******************* */
@@ -64,18 +103,29 @@ public class RBoardAPI {
 			return future;
 		}
 
-		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().async();
-		commands.multi();
-		for (String key : keys) {
-			commands.hincrby(redisPath, key, 0);
+		flushCombinedAdds(redisPath);
+
+		/* Missing keys are reported as "0", without creating them */
+		NearCache nearCache = RedisAPI.getInstance().getNearCache();
+		if (nearCache != null && nearCache.isCacheable(redisPath)) {
+			return nearCache.hmget(redisPath, keys).thenApply(values -> {
+				Map<String, String> transformed = new LinkedHashMap<>();
+				values.forEach((key, value) -> transformed.put(key, value == null ? "0" : value));
+				return transformed;
+			});
 		}
+
+		/*
+		 * Same connection as every write to this board (in cluster mode, the connection to the board's node), and any
+		 * combined adds were just sent on it, so a get always sees this shard's earlier writes
+		 */
+		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().pipelinedForKey(redisPath);
 		CompletableFuture<Map<String, String>> retVal = commands.hmget(redisPath, keys).toCompletableFuture().thenApply(list -> {
 			Map<String, String> transformed = new LinkedHashMap<>();
-			list.forEach(item -> transformed.put(item.getKey(), item.getValue()));
+			list.forEach(item -> transformed.put(item.getKey(), item.getValueOrElse("0")));
 			return transformed;
 		});
-		commands.exec();
-		return retVal;
+		return RedisStats.time(RedisStats.Api.RBOARD, retVal);
 	}
 
 	public static CompletableFuture<Long> getAsLong(String name, String key, long def) {
@@ -89,8 +139,77 @@ public class RBoardAPI {
 		});
 	}
 
-	/* ******************* GetAndReset ******************* */
-	public static CompletableFuture<Map<String, String>> getAndReset(String name, String... keys) {
+	/* ******************* CompareAndSet ******************* */
+	/**
+	 * Sets a key to newValue only if it currently is expected (a missing key is "0"), completing with whether it was set
+	 */
+	public static CompletableFuture<Boolean> compareAndSet(String name, String key, long expected, long newValue) {
+		final String redisPath;
+		try {
+			redisPath = getRedisPath(name);
+		} catch (IllegalArgumentException ex) {
+			CompletableFuture<Boolean> future = new CompletableFuture<>();
+			future.completeExceptionally(ex);
+			return future;
+		}
+
+		flushCombinedAdds(redisPath);
+
+		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().pipelinedForKey(redisPath);
+		CompletableFuture<Long> result = write(redisPath, () -> COMPARE_AND_SET_SCRIPT.eval(commands, ScriptOutputType.INTEGER, new String[] {redisPath},
+			key, Long.toString(expected), Long.toString(newValue)));
+		return RedisStats.time(RedisStats.Api.RBOARD, result.thenApply(set -> set != null && set == 1));
+	}
+
+	/* ******************* AddClamped ******************* */
+	/**
+	 * Adds to a key, clamping the result to [min, max], completing with the new value
+	 */
+	public static CompletableFuture<Long> addClamped(String name, String key, long amount, long min, long max) {
+		final String redisPath;
+		try {
+			redisPath = getRedisPath(name);
+		} catch (IllegalArgumentException ex) {
+			CompletableFuture<Long> future = new CompletableFuture<>();
+			future.completeExceptionally(ex);
+			return future;
+		}
+
+		flushCombinedAdds(redisPath);
+
+		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().pipelinedForKey(redisPath);
+		return RedisStats.time(RedisStats.Api.RBOARD, write(redisPath, () -> ADD_CLAMPED_SCRIPT.eval(commands, ScriptOutputType.INTEGER, new String[] {redisPath},
+			key, Long.toString(amount), Long.toString(min), Long.toString(max))));
+	}
+
+	/* ******************* AddIfBelow ******************* */
+	/**
+	 * Adds to a key only if the result would not exceed cap.
+	 * Completes with the new value, or null if the add was refused (and nothing was changed)
+	 */
+	public static CompletableFuture<Long> addIfBelow(String name, String key, long amount, long cap) {
+		final String redisPath;
+		try {
+			redisPath = getRedisPath(name);
+		} catch (IllegalArgumentException ex) {
+			CompletableFuture<Long> future = new CompletableFuture<>();
+			future.completeExceptionally(ex);
+			return future;
+		}
+
+		flushCombinedAdds(redisPath);
+
+		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().pipelinedForKey(redisPath);
+		return RedisStats.time(RedisStats.Api.RBOARD, write(redisPath, () -> ADD_IF_BELOW_SCRIPT.eval(commands, ScriptOutputType.INTEGER, new String[] {redisPath},
+			key, Long.toString(amount), Long.toString(cap))));
+	}
+
+	/* ******************* AddAndGet ******************* */
+	/**
+	 * Applies several adds and then reads several keys, all as one atomic command.
+	 * Missing keys are reported as "0"
+	 */
+	public static CompletableFuture<Map<String, String>> addAndGet(String name, Map<String, Long> adds, String... keys) {
 		final String redisPath;
 		try {
 			redisPath = getRedisPath(name);
@@ -100,16 +219,54 @@ public class RBoardAPI {
 			return future;
 		}
 
-		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().async();
-		commands.multi();
-		CompletableFuture<Map<String, String>> retVal = commands.hmget(redisPath, keys).toCompletableFuture().thenApply(list -> {
+		flushCombinedAdds(redisPath);
+
+		List<String> args = new ArrayList<>(1 + adds.size() * 2 + keys.length);
+		args.add(Integer.toString(adds.size()));
+		adds.forEach((key, amount) -> {
+			args.add(key);
+			args.add(Long.toString(amount));
+		});
+		args.addAll(List.of(keys));
+
+		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().pipelinedForKey(redisPath);
+		CompletableFuture<List<String>> result = write(redisPath, () -> ADD_AND_GET_SCRIPT.eval(commands, ScriptOutputType.MULTI, new String[] {redisPath},
+			args.toArray(new String[0])));
+		return RedisStats.time(RedisStats.Api.RBOARD, result.thenApply(values -> {
 			Map<String, String> transformed = new LinkedHashMap<>();
-			list.forEach(item -> transformed.put(item.getKey(), item.getValue()));
+			for (int i = 0; i < keys.length; i++) {
+				transformed.put(keys[i], values.get(i));
+			}
 			return transformed;
+		}));
+	}
+
+	/* ******************* GetAndReset ******************* */
+	public static CompletableFuture<Map<String, String>> getAndReset(String name, String... keys) {
+		final String redisPath;
+		try {
+			redisPath = getRedisPath(name);
+		} catch (IllegalArgumentException ex) {
+			CompletableFuture<Map<String, String>> future = new CompletableFuture<>();
+			future.completeExceptionally(ex);
+			return future;
+		}
+
+		flushCombinedAdds(redisPath);
+
+		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().pipelinedForKey(redisPath);
+		CompletableFuture<Map<String, String>> retVal = write(redisPath, () -> {
+			commands.multi();
+			CompletableFuture<Map<String, String>> values = commands.hmget(redisPath, keys).toCompletableFuture().thenApply(list -> {
+				Map<String, String> transformed = new LinkedHashMap<>();
+				list.forEach(item -> transformed.put(item.getKey(), item.getValueOrElse("0")));
+				return transformed;
+			});
+			commands.hdel(redisPath, keys).toCompletableFuture();
+			commands.exec();
+			return values;
 		});
-		commands.hdel(redisPath, keys).toCompletableFuture();
-		commands.exec();
-		return retVal;
+		return RedisStats.time(RedisStats.Api.RBOARD, retVal);
 	}
 
 	/* ******************* GetKeys ******************* */
@@ -123,8 +280,10 @@ public class RBoardAPI {
 			return future;
 		}
 
-		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().async();
-		return commands.hkeys(redisPath).toCompletableFuture();
+		flushCombinedAdds(redisPath);
+
+		RedisClusterAsyncCommands<String, String> commands = RedisAPI.getInstance().asyncRead(RedisAPI.ReadSource.RBOARD, redisPath);
+		return RedisStats.time(RedisStats.Api.RBOARD, commands.hkeys(redisPath).toCompletableFuture());
 	}
 
 	/* ******************* GetAll ******************* */
@@ -138,8 +297,55 @@ public class RBoardAPI {
 			return future;
 		}
 
-		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().async();
-		return commands.hgetall(redisPath).toCompletableFuture();
+		flushCombinedAdds(redisPath);
+
+		NearCache nearCache = RedisAPI.getInstance().getNearCache();
+		if (nearCache != null && nearCache.isCacheable(redisPath)) {
+			return nearCache.hgetall(redisPath);
+		}
+
+		RedisClusterAsyncCommands<String, String> commands = RedisAPI.getInstance().asyncRead(RedisAPI.ReadSource.RBOARD, redisPath);
+		return RedisStats.time(RedisStats.Api.RBOARD, commands.hgetall(redisPath).toCompletableFuture());
+	}
+
+	/* ******************* Scan ******************* */
+	/**
+	 * Reads a whole rboard a page at a time with HSCAN, calling onPage with each page on a Redis thread.
+	 * Use this instead of getAll() for boards that may have many keys
+	 */
+	public static CompletableFuture<Void> scanAll(String name, int pageSize, Consumer<Map<String, String>> onPage) {
+		final String redisPath;
+		try {
+			redisPath = getRedisPath(name);
+		} catch (IllegalArgumentException ex) {
+			CompletableFuture<Void> future = new CompletableFuture<>();
+			future.completeExceptionally(ex);
+			return future;
+		}
+
+		flushCombinedAdds(redisPath);
+
+		RedisClusterAsyncCommands<String, String> commands = RedisAPI.getInstance().asyncRead(RedisAPI.ReadSource.RBOARD, redisPath);
+		return RedisStats.time(RedisStats.Api.RBOARD, HashScan.all(commands, redisPath, pageSize, onPage));
+	}
+
+	/**
+	 * Reads one page of an rboard, starting at cursor ({@link HashScan#START} for the first page)
+	 */
+	public static CompletableFuture<HashScan.Page> getAllPage(String name, String cursor, int pageSize) {
+		final String redisPath;
+		try {
+			redisPath = getRedisPath(name);
+		} catch (IllegalArgumentException ex) {
+			CompletableFuture<HashScan.Page> future = new CompletableFuture<>();
+			future.completeExceptionally(ex);
+			return future;
+		}
+
+		flushCombinedAdds(redisPath);
+
+		RedisClusterAsyncCommands<String, String> commands = RedisAPI.getInstance().asyncRead(RedisAPI.ReadSource.RBOARD, redisPath);
+		return RedisStats.time(RedisStats.Api.RBOARD, HashScan.page(commands, redisPath, cursor, pageSize));
 	}
 
 	/* ******************* Reset ******************* */
@@ -153,8 +359,10 @@ public class RBoardAPI {
 			return future;
 		}
 
-		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().async();
-		return commands.hdel(redisPath, keys).toCompletableFuture();
+		flushCombinedAdds(redisPath);
+
+		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().pipelinedForKey(redisPath);
+		return RedisStats.time(RedisStats.Api.RBOARD, write(redisPath, () -> commands.hdel(redisPath, keys).toCompletableFuture()));
 	}
 
 	/* ******************* ResetAll ******************* */
@@ -168,7 +376,23 @@ public class RBoardAPI {
 			return future;
 		}
 
-		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().async();
-		return commands.del(redisPath).toCompletableFuture();
+		flushCombinedAdds(redisPath);
+
+		RedisAsyncCommands<String, String> commands = RedisAPI.getInstance().pipelinedForKey(redisPath);
+		return RedisStats.time(RedisStats.Api.RBOARD, write(redisPath, () -> commands.del(redisPath).toCompletableFuture()));
+	}
+
+	/* Sends this board's combined adds ahead of the caller's command, so it doesn't overtake adds made before it */
+	private static void flushCombinedAdds(String redisPath) {
+		RBoardWriteCombiner combiner = RedisAPI.getInstance().getRBoardWriteCombiner();
+		if (combiner != null) {
+			combiner.flush(redisPath);
+		}
+	}
+
+	/* Drops the board from this shard's near cache before a write is issued, see NearCache#write */
+	private static <T> CompletableFuture<T> write(String redisPath, Supplier<CompletableFuture<T>> write) {
+		NearCache nearCache = RedisAPI.getInstance().getNearCache();
+		return nearCache == null ? write.get() : nearCache.write(redisPath, write);
 	}
 }
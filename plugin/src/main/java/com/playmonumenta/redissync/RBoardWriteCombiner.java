@@ -0,0 +1,121 @@
+package com.playmonumenta.redissync;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * Combines {@link RBoardAPI#add} increments locally and sends them as one pipelined batch of HINCRBY commands.
+ * <p>
+ * Increments to the same (board, key) are summed while they wait, so a key that is incremented many times between
+ * flushes costs one command. A flush happens every configured interval, or early once enough distinct keys are pending.
+ * Every add to a key that went out in the same flush completes with the value after the combined increment.
+ * <p>
+ * Any other operation on a board must call {@link #flush(String)} first, so it is ordered after the adds made before it.
+ */
+public class RBoardWriteCombiner extends BatchWriter {
+	private static final class Pending {
+		/* Only accessed inside mPending.compute(), and by the flush that removed it */
+		private long mDelta = 0;
+		private final List<CompletableFuture<Long>> mWaiters = new ArrayList<>();
+	}
+
+	private final ConcurrentHashMap<BoardKey<String>, Pending> mPending = new ConcurrentHashMap<>();
+	private final AtomicInteger mPendingCount = new AtomicInteger();
+	private final AtomicBoolean mEarlyFlushQueued = new AtomicBoolean(false);
+	private final int mMaxPending;
+
+	protected RBoardWriteCombiner(int intervalMs, int maxPending) {
+		super("RBoard write combining", "rboard_combine", "MonumentaRedisSync-RBoardCombine");
+		mMaxPending = Math.max(1, maxPending);
+		start(intervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Queues an increment, returning a future that completes with the key's value once the batch it is in has been applied
+	 */
+	public CompletableFuture<Long> add(String redisPath, String key, long amount) {
+		CompletableFuture<Long> future = new CompletableFuture<>();
+		mPending.compute(new BoardKey<>(redisPath, key), (field, pending) -> {
+			if (pending == null) {
+				pending = new Pending();
+				mPendingCount.incrementAndGet();
+			}
+			pending.mDelta += amount;
+			pending.mWaiters.add(future);
+			return pending;
+		});
+		recordQueued();
+
+		if (isClosed()) {
+			/* Nothing would ever send it */
+			flush(redisPath);
+		} else if (mPendingCount.get() >= mMaxPending && mEarlyFlushQueued.compareAndSet(false, true)) {
+			flushSoon();
+		}
+		return future;
+	}
+
+	@Override
+	public void flush() {
+		mEarlyFlushQueued.set(false);
+		flushMatching(null);
+	}
+
+	/**
+	 * Sends the adds pending for one board now, ahead of any command the caller issues next on that board's connection.
+	 * Returns once they have been issued, not once they have been applied
+	 */
+	public void flush(String redisPath) {
+		flushMatching(redisPath);
+	}
+
+	/* Synchronized so a caller's flush(path) can't return while the flush thread still holds that path's adds unsent */
+	private synchronized void flushMatching(@Nullable String redisPath) {
+		RedisAPI api = RedisAPI.getInstance();
+		List<CompletableFuture<Long>> batch = new ArrayList<>();
+		for (BoardKey<String> field : mPending.keySet()) {
+			if (redisPath != null && !redisPath.equals(field.mBoard)) {
+				continue;
+			}
+			Pending pending = mPending.remove(field);
+			if (pending == null) {
+				continue;
+			}
+			mPendingCount.decrementAndGet();
+
+			CompletableFuture<Long> result;
+			try {
+				result = api.pipelinedForKey(field.mBoard).hincrby(field.mBoard, field.mKey, pending.mDelta).toCompletableFuture();
+			} catch (Exception ex) {
+				result = CompletableFuture.failedFuture(ex);
+			}
+			result.whenComplete((value, ex) -> {
+				for (CompletableFuture<Long> waiter : pending.mWaiters) {
+					if (ex != null) {
+						waiter.completeExceptionally(ex);
+					} else {
+						waiter.complete(value);
+					}
+				}
+			});
+			batch.add(result);
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+
+		api.flushPipeline();
+		recordFlush(RedisStats.Api.RBOARD_FLUSH, batch, batch.size());
+	}
+
+	@Override
+	public int getPending() {
+		return mPendingCount.get();
+	}
+}
@@ -1,30 +1,60 @@
 package com.playmonumenta.redissync;
 
 import com.google.common.util.concurrent.Uninterruptibles;
+import com.playmonumenta.redissync.config.CommonConfig;
+import io.lettuce.core.ReadFrom;
 import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisException;
 import io.lettuce.core.RedisFuture;
 import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulConnection;
 import io.lettuce.core.api.StatefulRedisConnection;
 import io.lettuce.core.api.async.RedisAsyncCommands;
-import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.SlotHash;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+import io.lettuce.core.cluster.models.partitions.RedisClusterNode;
 import io.lettuce.core.codec.RedisCodec;
 import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.codec.ToByteBufEncoder;
+import io.lettuce.core.event.connection.ConnectionActivatedEvent;
+import io.lettuce.core.masterreplica.MasterReplica;
+import io.lettuce.core.masterreplica.StatefulRedisMasterReplicaConnection;
 import io.lettuce.core.resource.ClientResources;
 import io.lettuce.core.resource.NettyCustomizer;
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 
 public class RedisAPI {
-	private static final class StringByteCodec implements RedisCodec<String, byte[]> {
+	private static final class StringByteCodec implements RedisCodec<String, byte[]>, ToByteBufEncoder<String, byte[]> {
 		private static final StringByteCodec INSTANCE = new StringByteCodec();
 		private static final byte[] EMPTY = new byte[0];
 		private final Charset mCharset = StandardCharsets.UTF_8;
@@ -53,6 +83,29 @@ public class RedisAPI {
 			return ByteBuffer.wrap(value);
 		}
 
+		@Override
+		public void encodeKey(final String key, final ByteBuf target) {
+			/* Written straight into the outgoing buffer, without the intermediate ByteBuffer from encodeKey(String) */
+			ByteBufUtil.writeUtf8(target, key);
+		}
+
+		@Override
+		public void encodeValue(final byte[] value, final ByteBuf target) {
+			if (value != null) {
+				target.writeBytes(value);
+			}
+		}
+
+		@Override
+		public int estimateSize(final Object keyOrValue) {
+			if (keyOrValue instanceof byte[] bytes) {
+				return bytes.length;
+			} else if (keyOrValue instanceof String str) {
+				return ByteBufUtil.utf8MaxBytes(str);
+			}
+			return 0;
+		}
+
 		private static byte[] getBytes(final ByteBuffer buffer) {
 			final byte[] b = new byte[buffer.remaining()];
 			buffer.get(b);
@@ -60,17 +113,139 @@ public class RedisAPI {
 		}
 	}
 
+	/**
+	 * Codec for large binary values (i.e. player data) that avoids intermediate copies.
+	 * <p>
+	 * Values are written straight from the caller's buffer into the outgoing netty buffer, and decoded with a single
+	 * copy out of the (pooled, reused) netty buffer into a heap ByteBuffer that callers can read in place.
+	 */
+	private static final class StringByteBufferCodec implements RedisCodec<String, ByteBuffer>, ToByteBufEncoder<String, ByteBuffer> {
+		private static final StringByteBufferCodec INSTANCE = new StringByteBufferCodec();
+
+		@Override
+		public String decodeKey(final ByteBuffer bytes) {
+			return StandardCharsets.UTF_8.decode(bytes).toString();
+		}
+
+		@Override
+		public ByteBuffer decodeValue(final ByteBuffer bytes) {
+			/* The buffer passed in is only valid during this call, this is the one copy */
+			ByteBuffer copy = ByteBuffer.allocate(bytes.remaining());
+			copy.put(bytes);
+			copy.flip();
+			return copy;
+		}
+
+		@Override
+		public ByteBuffer encodeKey(final String key) {
+			return StandardCharsets.UTF_8.encode(key);
+		}
+
+		@Override
+		public ByteBuffer encodeValue(final ByteBuffer value) {
+			return value == null ? ByteBuffer.allocate(0) : value.duplicate();
+		}
+
+		@Override
+		public void encodeKey(final String key, final ByteBuf target) {
+			ByteBufUtil.writeUtf8(target, key);
+		}
+
+		@Override
+		public void encodeValue(final ByteBuffer value, final ByteBuf target) {
+			if (value != null) {
+				/* duplicate() so the caller's position is left untouched */
+				target.writeBytes(value.duplicate());
+			}
+		}
+
+		@Override
+		public int estimateSize(final Object keyOrValue) {
+			if (keyOrValue instanceof ByteBuffer buffer) {
+				return buffer.remaining();
+			} else if (keyOrValue instanceof String str) {
+				return ByteBufUtil.utf8MaxBytes(str);
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * Read-only APIs that may be served by a replica, enabled per API with the redis_replica_reads config option
+	 */
+	public enum ReadSource {
+		LEADERBOARD("leaderboard"),
+		HISTORY("history"),
+		OFFLINE_DATA("offline_data"),
+		SCORES("scores"),
+		TRANSFER_LOG("transfer_log"),
+		RBOARD("rboard");
+
+		private final String mConfigName;
+
+		ReadSource(String configName) {
+			mConfigName = configName;
+		}
+
+		public String getConfigName() {
+			return mConfigName;
+		}
+
+		public static ReadSource fromConfigName(String configName) {
+			for (ReadSource source : values()) {
+				if (source.mConfigName.equalsIgnoreCase(configName)) {
+					return source;
+				}
+			}
+			throw new IllegalArgumentException("Unknown redis_replica_reads entry '" + configName + "', expected one of "
+				+ Arrays.stream(values()).map(ReadSource::getConfigName).collect(Collectors.joining(", ")));
+		}
+	}
+
 	public static final RedisCodec<String, String> STRING_STRING_CODEC = StringCodec.UTF8;
 	public static final RedisCodec<String, byte[]> STRING_BYTE_CODEC = StringByteCodec.INSTANCE;
+	public static final RedisCodec<String, ByteBuffer> STRING_BYTE_BUFFER_CODEC = StringByteBufferCodec.INSTANCE;
 
 	@SuppressWarnings("NullAway") // Required to avoid many null checks, this class will always be instantiated if this plugin is loaded
 	private static RedisAPI INSTANCE = null;
 
 	private final MonumentaRedisSyncInterface mServer;
+	/* In cluster mode this client has no default URI, and is only used to connect directly to individual nodes */
 	private final RedisClient mRedisClient;
+	private final @Nullable RedisClusterClient mRedisClusterClient;
 	private final ClientResources mClientResources;
-	private final StatefulRedisConnection<String, String> mConnection;
-	private final StatefulRedisConnection<String, byte[]> mStringByteConnection;
+	private final StatefulConnection<String, String> mConnection;
+	private final StatefulConnection<String, byte[]> mStringByteConnection;
+	/*
+	 * Only the commands that work on both a single server and a cluster. In standalone mode these are all
+	 * RedisAsyncCommands/RedisCommands, the xxxForKey() methods hand those out for transactions
+	 */
+	private final RedisClusterAsyncCommands<String, String> mAsync;
+	private final RedisClusterAsyncCommands<String, byte[]> mAsyncStringBytes;
+	private final StatefulConnection<String, ByteBuffer> mByteBufferConnection;
+	private final RedisClusterAsyncCommands<String, ByteBuffer> mAsyncByteBuffers;
+	private final RedisClusterCommands<String, String> mSync;
+	private final RedisClusterCommands<String, byte[]> mSyncStringBytes;
+	/* Dedicated connections with auto-flush disabled, only present if pipelining is enabled in the config */
+	private final @Nullable StatefulConnection<String, String> mPipelinedConnection;
+	private final @Nullable StatefulConnection<String, byte[]> mPipelinedStringByteConnection;
+	private final RedisClusterAsyncCommands<String, String> mPipelined;
+	private final RedisClusterAsyncCommands<String, byte[]> mPipelinedStringBytes;
+	private final @Nullable StatefulConnection<String, ByteBuffer> mPipelinedByteBufferConnection;
+	private final RedisClusterAsyncCommands<String, ByteBuffer> mPipelinedByteBuffers;
+	private final @Nullable ScheduledExecutorService mPipelineFlusher;
+	/* Connections that prefer reading from replicas, only present if any redis_replica_reads are configured */
+	private final @Nullable StatefulConnection<String, String> mReplicaConnection;
+	private final @Nullable StatefulConnection<String, byte[]> mReplicaStringByteConnection;
+	private final RedisClusterAsyncCommands<String, String> mReplicaAsync;
+	private final RedisClusterAsyncCommands<String, byte[]> mReplicaAsyncStringBytes;
+	private final Set<ReadSource> mReplicaReadSources = EnumSet.noneOf(ReadSource.class);
+	private final @Nullable NearCache mNearCache;
+	private final @Nullable RBoardWriteCombiner mRBoardWriteCombiner;
+	private final @Nullable LeaderboardWriteBuffer mLeaderboardWriteBuffer;
+	/* Cluster mode only - node connections are taken from these, for transactions against a single slot */
+	private final @Nullable StatefulRedisClusterConnection<String, String> mClusterConnection;
+	private final @Nullable StatefulRedisClusterConnection<String, byte[]> mClusterStringByteConnection;
 	private final ConcurrentHashMap<Long, StatefulRedisConnection<String, String>> mThreadStringStringConnections
 		= new ConcurrentHashMap<>();
 	private final ConcurrentHashMap<Long, StatefulRedisConnection<String, byte[]>> mThreadStringByteConnections
@@ -85,22 +260,241 @@ public class RedisAPI {
 				public void afterBootstrapInitialized(Bootstrap bootstrap) {
 					bootstrap.option(ChannelOption.ALLOCATOR, new PooledByteBufAllocator(false));
 				}
+
+				@Override
+				public void afterChannelInitialized(Channel channel) {
+					channel.pipeline().addFirst("monumentaRedisStats", RedisStats.getByteCountingHandler());
+				}
 			}).build();
-		mRedisClient = RedisClient.create(mClientResources, RedisURI.Builder.redis(hostname, port).build());
-		mConnection = mRedisClient.connect();
-		mStringByteConnection = mRedisClient.connect(StringByteCodec.INSTANCE);
+		/* A (re)connected server may have lost its script cache */
+		mClientResources.eventBus().get()
+			.filter(event -> event instanceof ConnectionActivatedEvent)
+			.subscribe(event -> RedisScript.connectionActivated());
+		RedisURI redisURI = RedisURI.Builder.redis(hostname, port).build();
+		for (String readSource : CommonConfig.getRedisReplicaReads()) {
+			mReplicaReadSources.add(ReadSource.fromConfigName(readSource));
+		}
 
-		Thread thread = Thread.currentThread();
-		long threadId = thread.getId();
-		mThreadStringStringConnections.put(threadId, mConnection);
-		mThreadStringByteConnections.put(threadId, mStringByteConnection);
+		if (CommonConfig.getRedisCluster()) {
+			mRedisClient = RedisClient.create(mClientResources);
+			mRedisClient.addListener(RedisStats.getCommandListener());
+			RedisClusterClient clusterClient = RedisClusterClient.create(mClientResources, redisURI);
+			clusterClient.addListener(RedisStats.getCommandListener());
+			clusterClient.setOptions(ClusterClientOptions.builder()
+				.topologyRefreshOptions(ClusterTopologyRefreshOptions.builder()
+					.enableAllAdaptiveRefreshTriggers()
+					.build())
+				.build());
+			mRedisClusterClient = clusterClient;
+
+			StatefulRedisClusterConnection<String, String> connection = clusterClient.connect();
+			StatefulRedisClusterConnection<String, byte[]> stringByteConnection = clusterClient.connect(StringByteCodec.INSTANCE);
+			mConnection = connection;
+			mStringByteConnection = stringByteConnection;
+			mClusterConnection = connection;
+			mClusterStringByteConnection = stringByteConnection;
+			mAsync = connection.async();
+			mAsyncStringBytes = stringByteConnection.async();
+			mSync = connection.sync();
+			mSyncStringBytes = stringByteConnection.sync();
+			StatefulRedisClusterConnection<String, ByteBuffer> byteBufferConnection = clusterClient.connect(StringByteBufferCodec.INSTANCE);
+			mByteBufferConnection = byteBufferConnection;
+			mAsyncByteBuffers = byteBufferConnection.async();
+
+			if (CommonConfig.getRedisPipelining()) {
+				StatefulRedisClusterConnection<String, String> pipelinedConnection = clusterClient.connect();
+				StatefulRedisClusterConnection<String, byte[]> pipelinedStringByteConnection = clusterClient.connect(StringByteCodec.INSTANCE);
+				mPipelinedConnection = pipelinedConnection;
+				mPipelinedStringByteConnection = pipelinedStringByteConnection;
+				mPipelined = pipelinedConnection.async();
+				mPipelinedStringBytes = pipelinedStringByteConnection.async();
+				StatefulRedisClusterConnection<String, ByteBuffer> pipelinedByteBufferConnection = clusterClient.connect(StringByteBufferCodec.INSTANCE);
+				mPipelinedByteBufferConnection = pipelinedByteBufferConnection;
+				mPipelinedByteBuffers = pipelinedByteBufferConnection.async();
+			} else {
+				mPipelinedConnection = null;
+				mPipelinedStringByteConnection = null;
+				mPipelined = mAsync;
+				mPipelinedStringBytes = mAsyncStringBytes;
+				mPipelinedByteBufferConnection = null;
+				mPipelinedByteBuffers = mAsyncByteBuffers;
+			}
+
+			if (!mReplicaReadSources.isEmpty()) {
+				StatefulRedisClusterConnection<String, String> replicaConnection = clusterClient.connect();
+				StatefulRedisClusterConnection<String, byte[]> replicaStringByteConnection = clusterClient.connect(StringByteCodec.INSTANCE);
+				replicaConnection.setReadFrom(ReadFrom.REPLICA_PREFERRED);
+				replicaStringByteConnection.setReadFrom(ReadFrom.REPLICA_PREFERRED);
+				mReplicaConnection = replicaConnection;
+				mReplicaStringByteConnection = replicaStringByteConnection;
+				mReplicaAsync = replicaConnection.async();
+				mReplicaAsyncStringBytes = replicaStringByteConnection.async();
+			} else {
+				mReplicaConnection = null;
+				mReplicaStringByteConnection = null;
+				mReplicaAsync = mAsync;
+				mReplicaAsyncStringBytes = mAsyncStringBytes;
+			}
+		} else {
+			mRedisClient = RedisClient.create(mClientResources, redisURI);
+			mRedisClient.addListener(RedisStats.getCommandListener());
+			mRedisClusterClient = null;
+			mClusterConnection = null;
+			mClusterStringByteConnection = null;
+
+			StatefulRedisConnection<String, String> connection = mRedisClient.connect();
+			StatefulRedisConnection<String, byte[]> stringByteConnection = mRedisClient.connect(StringByteCodec.INSTANCE);
+			mConnection = connection;
+			mStringByteConnection = stringByteConnection;
+			mAsync = connection.async();
+			mAsyncStringBytes = stringByteConnection.async();
+			mSync = connection.sync();
+			mSyncStringBytes = stringByteConnection.sync();
+			StatefulRedisConnection<String, ByteBuffer> byteBufferConnection = mRedisClient.connect(StringByteBufferCodec.INSTANCE);
+			mByteBufferConnection = byteBufferConnection;
+			mAsyncByteBuffers = byteBufferConnection.async();
+
+			if (CommonConfig.getRedisPipelining()) {
+				StatefulRedisConnection<String, String> pipelinedConnection = mRedisClient.connect();
+				StatefulRedisConnection<String, byte[]> pipelinedStringByteConnection = mRedisClient.connect(StringByteCodec.INSTANCE);
+				mPipelinedConnection = pipelinedConnection;
+				mPipelinedStringByteConnection = pipelinedStringByteConnection;
+				mPipelined = pipelinedConnection.async();
+				mPipelinedStringBytes = pipelinedStringByteConnection.async();
+				StatefulRedisConnection<String, ByteBuffer> pipelinedByteBufferConnection = mRedisClient.connect(StringByteBufferCodec.INSTANCE);
+				mPipelinedByteBufferConnection = pipelinedByteBufferConnection;
+				mPipelinedByteBuffers = pipelinedByteBufferConnection.async();
+			} else {
+				mPipelinedConnection = null;
+				mPipelinedStringByteConnection = null;
+				mPipelined = mAsync;
+				mPipelinedStringBytes = mAsyncStringBytes;
+				mPipelinedByteBufferConnection = null;
+				mPipelinedByteBuffers = mAsyncByteBuffers;
+			}
+
+			if (!mReplicaReadSources.isEmpty()) {
+				/* With no replicas listed, the topology is discovered from the primary's INFO replication */
+				List<RedisURI> replicaURIs = new ArrayList<>();
+				replicaURIs.add(redisURI);
+				for (String replicaHost : CommonConfig.getRedisReplicaHosts()) {
+					replicaURIs.add(RedisURI.create("redis://" + replicaHost));
+				}
+				StatefulRedisMasterReplicaConnection<String, String> replicaConnection;
+				StatefulRedisMasterReplicaConnection<String, byte[]> replicaStringByteConnection;
+				if (replicaURIs.size() == 1) {
+					replicaConnection = MasterReplica.connect(mRedisClient, StringCodec.UTF8, redisURI);
+					replicaStringByteConnection = MasterReplica.connect(mRedisClient, StringByteCodec.INSTANCE, redisURI);
+				} else {
+					replicaConnection = MasterReplica.connect(mRedisClient, StringCodec.UTF8, replicaURIs);
+					replicaStringByteConnection = MasterReplica.connect(mRedisClient, StringByteCodec.INSTANCE, replicaURIs);
+				}
+				replicaConnection.setReadFrom(ReadFrom.REPLICA_PREFERRED);
+				replicaStringByteConnection.setReadFrom(ReadFrom.REPLICA_PREFERRED);
+				mReplicaConnection = replicaConnection;
+				mReplicaStringByteConnection = replicaStringByteConnection;
+				mReplicaAsync = replicaConnection.async();
+				mReplicaAsyncStringBytes = replicaStringByteConnection.async();
+			} else {
+				mReplicaConnection = null;
+				mReplicaStringByteConnection = null;
+				mReplicaAsync = mAsync;
+				mReplicaAsyncStringBytes = mAsyncStringBytes;
+			}
+
+			Thread thread = Thread.currentThread();
+			long threadId = thread.getId();
+			mThreadStringStringConnections.put(threadId, connection);
+			mThreadStringByteConnections.put(threadId, stringByteConnection);
+		}
+
+		/* Not supported on a cluster, where each node would need its own tracking connection */
+		List<String> nearCachePrefixes = CommonConfig.getNearCachePrefixes();
+		if (!nearCachePrefixes.isEmpty() && mRedisClusterClient == null) {
+			mNearCache = new NearCache(mRedisClient, nearCachePrefixes.stream()
+				.map(prefix -> CommonConfig.getServerDomain() + ":" + prefix)
+				.collect(Collectors.toList()), CommonConfig.getNearCacheMaxKeys());
+		} else {
+			mNearCache = null;
+		}
+
+		if (mPipelinedConnection != null && mPipelinedStringByteConnection != null && mPipelinedByteBufferConnection != null) {
+			mPipelinedConnection.setAutoFlushCommands(false);
+			mPipelinedStringByteConnection.setAutoFlushCommands(false);
+			mPipelinedByteBufferConnection.setAutoFlushCommands(false);
+
+			/*
+			 * Commands issued from the main thread are flushed at the end of every tick,
+			 * this catches everything issued from async threads (and between ticks)
+			 */
+			ScheduledExecutorService pipelineFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread flushThread = new Thread(runnable, "MonumentaRedisSync-PipelineFlush");
+				flushThread.setDaemon(true);
+				return flushThread;
+			});
+			long intervalMs = Math.max(1, CommonConfig.getRedisPipelineFlushIntervalMs());
+			pipelineFlusher.scheduleAtFixedRate(this::flushPipeline, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+			mPipelineFlusher = pipelineFlusher;
+		} else {
+			mPipelineFlusher = null;
+		}
+
+		if (CommonConfig.getRboardCombineIntervalMs() > 0) {
+			mRBoardWriteCombiner = new RBoardWriteCombiner(CommonConfig.getRboardCombineIntervalMs(), CommonConfig.getRboardCombineMaxPending());
+		} else {
+			mRBoardWriteCombiner = null;
+		}
+		if (CommonConfig.getLeaderboardFlushIntervalMs() > 0) {
+			mLeaderboardWriteBuffer = new LeaderboardWriteBuffer(CommonConfig.getLeaderboardFlushIntervalMs());
+		} else {
+			mLeaderboardWriteBuffer = null;
+		}
+
+		String metricsFile = CommonConfig.getMetricsFile();
+		if (!metricsFile.isEmpty()) {
+			RedisStats.startFileExport(Paths.get(metricsFile), CommonConfig.getMetricsIntervalSeconds());
+		}
 
 		INSTANCE = this;
 	}
 
 	protected void shutdown() {
+		RedisStats.stopFileExport();
+		/* Before the pipeline is flushed for the last time, so buffered writes still go out */
+		if (mRBoardWriteCombiner != null) {
+			mRBoardWriteCombiner.close();
+		}
+		if (mLeaderboardWriteBuffer != null) {
+			mLeaderboardWriteBuffer.close();
+		}
+		if (mPipelineFlusher != null) {
+			mPipelineFlusher.shutdown();
+		}
+		flushPipeline();
+		if (mPipelinedConnection != null) {
+			mPipelinedConnection.close();
+		}
+		if (mPipelinedStringByteConnection != null) {
+			mPipelinedStringByteConnection.close();
+		}
+		if (mPipelinedByteBufferConnection != null) {
+			mPipelinedByteBufferConnection.close();
+		}
+		if (mReplicaConnection != null) {
+			mReplicaConnection.close();
+		}
+		if (mReplicaStringByteConnection != null) {
+			mReplicaStringByteConnection.close();
+		}
+		if (mNearCache != null) {
+			mNearCache.close();
+		}
 		mConnection.close();
 		mStringByteConnection.close();
+		mByteBufferConnection.close();
+		if (mRedisClusterClient != null) {
+			mRedisClusterClient.shutdown();
+		}
 		mRedisClient.shutdown();
 		mClientResources.shutdown();
 	}
@@ -112,14 +506,33 @@ public class RedisAPI {
 	/**
 	 * Opens a new autoClosable connection regardless of open connections
 	 * Your code is responsible for closing this when it is done, ideally using a try with resources block
+	 * <p>
+	 * Only available without redis_cluster, where there is no single server to connect to.
+	 * Use {@link #openConnectionForKey(RedisCodec, String)} or {@link #openClusterConnection(RedisCodec)} instead
 	 * @return A new connection that you are responsible for closing
 	 */
+	@Deprecated
 	public <K, V> StatefulRedisConnection<K, V> openConnection(RedisCodec<K, V> codec) {
+		requireStandalone("openConnection");
 		Thread thread = Thread.currentThread();
 		MonumentaRedisSync.getInstance().getLogger().info("Creating a new autocloseable connection on thread " + thread.getId());
 		return mRedisClient.connect(codec);
 	}
 
+	/**
+	 * Opens a new connection to the server that holds the given key, which is the only server without redis_cluster.
+	 * Your code is responsible for closing this when it is done, ideally using a try with resources block.
+	 * <p>
+	 * On a cluster this connection does not follow the key if its slot moves, so keep it short-lived
+	 * @return A new connection that you are responsible for closing
+	 */
+	public <K, V> StatefulRedisConnection<K, V> openConnectionForKey(RedisCodec<K, V> codec, String key) {
+		if (mRedisClusterClient == null) {
+			return mRedisClient.connect(codec);
+		}
+		return mRedisClient.connect(codec, getMasterNode(key).getUri());
+	}
+
 	/**
 	 * Asynchronously waits for all specified task futures to complete, then closes the specified connection
 	 * @param connection         A connection to be closed when all tasks are complete
@@ -156,10 +569,12 @@ public class RedisAPI {
 	 * Provides a connection that closes automagically when the executing thread terminates.
 	 * If the current thread already has an open connection, that is returned instead.
 	 * The main thread may be used as well, and is closed when the plugin is disabled.
+	 * Only available without redis_cluster, see {@link #openConnectionForKey(RedisCodec, String)}
 	 * @return A connection associated with the current thread
 	 */
 	@Deprecated
 	public StatefulRedisConnection<String, String> getMagicallyClosingStringStringConnection() {
+		requireStandalone("getMagicallyClosingStringStringConnection");
 		Thread thread = Thread.currentThread();
 		long threadId = thread.getId();
 		MonumentaRedisSync.getInstance().getLogger().info("Magically closing connection request from thread " + thread.getId());
@@ -180,10 +595,12 @@ public class RedisAPI {
 	 * Provides a connection that closes automagically when the executing thread terminates.
 	 * If the current thread already has an open connection, that is returned instead.
 	 * The main thread may be used as well, and is closed when the plugin is disabled.
+	 * Only available without redis_cluster, see {@link #openConnectionForKey(RedisCodec, String)}
 	 * @return A connection associated with the current thread
 	 */
 	@Deprecated
 	public StatefulRedisConnection<String, byte[]> getMagicallyClosingStringByteConnection() {
+		requireStandalone("getMagicallyClosingStringByteConnection");
 		Thread thread = Thread.currentThread();
 		long threadId = thread.getId();
 		return mThreadStringByteConnections.computeIfAbsent(threadId, k -> {
@@ -197,25 +614,257 @@ public class RedisAPI {
 		});
 	}
 
+	/**
+	 * Opens a new Redis Cluster connection, only available if redis_cluster is enabled.
+	 * Your code is responsible for closing this when it is done, ideally using a try with resources block
+	 * @return A new connection that you are responsible for closing
+	 */
+	public <K, V> StatefulRedisClusterConnection<K, V> openClusterConnection(RedisCodec<K, V> codec) {
+		RedisClusterClient clusterClient = mRedisClusterClient;
+		if (clusterClient == null) {
+			throw new IllegalStateException("openClusterConnection requires redis_cluster to be enabled");
+		}
+		return clusterClient.connect(codec);
+	}
+
+	/**
+	 * Commands that work both with and without redis_cluster, routed by key on a cluster.
+	 * Transactions (MULTI/EXEC, WATCH) need every key in one slot, use {@link #asyncForKey(String)} for those
+	 */
 	@Deprecated
-	public RedisCommands<String, String> sync() {
-		return mConnection.sync();
+	public RedisClusterCommands<String, String> sync() {
+		return mSync;
 	}
 
-	public RedisAsyncCommands<String, String> async() {
-		return mConnection.async();
+	/**
+	 * Commands that work both with and without redis_cluster, routed by key on a cluster.
+	 * Transactions (MULTI/EXEC, WATCH) need every key in one slot, use {@link #asyncForKey(String)} for those
+	 */
+	public RedisClusterAsyncCommands<String, String> async() {
+		return mAsync;
 	}
 
 	@Deprecated
-	public RedisCommands<String, byte[]> syncStringBytes() {
-		return mStringByteConnection.sync();
+	public RedisClusterCommands<String, byte[]> syncStringBytes() {
+		return mSyncStringBytes;
+	}
+
+	public RedisClusterAsyncCommands<String, byte[]> asyncStringBytes() {
+		return mAsyncStringBytes;
+	}
+
+	/**
+	 * String/ByteBuffer commands for large binary values, see {@link #STRING_BYTE_BUFFER_CODEC}.
+	 * <p>
+	 * Buffers passed to these commands must not be modified until the command completes.
+	 * Buffers returned are heap buffers owned by the caller.
+	 */
+	public RedisClusterAsyncCommands<String, ByteBuffer> asyncByteBuffers() {
+		return mAsyncByteBuffers;
+	}
+
+	/**
+	 * Returns commands that are buffered and written to Redis together when the pipeline is flushed,
+	 * instead of one socket write per command.
+	 * <p>
+	 * The pipeline is flushed at the end of every server tick and on a short timer for commands issued from
+	 * async threads. If pipelining is disabled in the config, this is the same as {@link #async()}.
+	 * <p>
+	 * Call {@link #flushPipeline()} before blocking on the result of a command issued here.
+	 */
+	public RedisClusterAsyncCommands<String, String> pipelined() {
+		return mPipelined;
+	}
+
+	/**
+	 * String/byte[] variant of {@link #pipelined()}
+	 */
+	public RedisClusterAsyncCommands<String, byte[]> pipelinedStringBytes() {
+		return mPipelinedStringBytes;
+	}
+
+	/**
+	 * String/ByteBuffer variant of {@link #pipelined()}, see {@link #asyncByteBuffers()}
+	 */
+	public RedisClusterAsyncCommands<String, ByteBuffer> pipelinedByteBuffers() {
+		return mPipelinedByteBuffers;
+	}
+
+	/**
+	 * Returns commands for a read-only query made by the given API on the given key.
+	 * <p>
+	 * If that API is listed in redis_replica_reads, these commands read from a replica when one is available,
+	 * which may return slightly stale data. Otherwise this is {@link #pipelinedForKey(String)}, the same connection
+	 * this shard's writes to that key go out on, so the read can't overtake them.
+	 * Anything that must see the latest write (i.e. loading a player right after they saved) should use {@link #async()}.
+	 */
+	public RedisClusterAsyncCommands<String, String> asyncRead(ReadSource source, String key) {
+		return mReplicaReadSources.contains(source) ? mReplicaAsync : pipelinedForKey(key);
+	}
+
+	/**
+	 * String/byte[] variant of {@link #asyncRead(ReadSource, String)}
+	 */
+	public RedisClusterAsyncCommands<String, byte[]> asyncStringBytesRead(ReadSource source, String key) {
+		return mReplicaReadSources.contains(source) ? mReplicaAsyncStringBytes : pipelinedStringBytesForKey(key);
+	}
+
+	/**
+	 * Whether reads for the given API may be served by a replica
+	 */
+	public boolean isReplicaRead(ReadSource source) {
+		return mReplicaReadSources.contains(source);
 	}
 
-	public RedisAsyncCommands<String, byte[]> asyncStringBytes() {
-		return mStringByteConnection.async();
+	/**
+	 * Returns commands for the node that owns the given key, suitable for MULTI/EXEC transactions.
+	 * <p>
+	 * Every key used inside the transaction must hash to the same slot as this key, which is the case for
+	 * all of a player's keys (see {@link #getPlayerKeyPrefix(UUID)}). Without redis_cluster this is {@link #async()}.
+	 * On a cluster the node is looked up on every call, so callers follow the slot when the topology changes
+	 */
+	@SuppressWarnings("unchecked")
+	public RedisAsyncCommands<String, String> asyncForKey(String key) {
+		StatefulRedisClusterConnection<String, String> cluster = mClusterConnection;
+		if (cluster == null) {
+			return (RedisAsyncCommands<String, String>) mAsync;
+		}
+		return cluster.getConnection(getMasterNode(key).getNodeId()).async();
+	}
+
+	/**
+	 * String/byte[] variant of {@link #asyncForKey(String)}
+	 */
+	@SuppressWarnings("unchecked")
+	public RedisAsyncCommands<String, byte[]> asyncStringBytesForKey(String key) {
+		StatefulRedisClusterConnection<String, byte[]> cluster = mClusterStringByteConnection;
+		if (cluster == null) {
+			return (RedisAsyncCommands<String, byte[]>) mAsyncStringBytes;
+		}
+		return cluster.getConnection(getMasterNode(key).getNodeId()).async();
+	}
+
+	/**
+	 * Pipelined variant of {@link #asyncForKey(String)}. In cluster mode the per-node connections are not
+	 * pipelined, so this is the same as {@link #asyncForKey(String)}.
+	 */
+	@SuppressWarnings("unchecked")
+	public RedisAsyncCommands<String, String> pipelinedForKey(String key) {
+		if (mRedisClusterClient == null) {
+			return (RedisAsyncCommands<String, String>) mPipelined;
+		}
+		return asyncForKey(key);
+	}
+
+	/**
+	 * String/byte[] variant of {@link #pipelinedForKey(String)}
+	 */
+	@SuppressWarnings("unchecked")
+	public RedisAsyncCommands<String, byte[]> pipelinedStringBytesForKey(String key) {
+		if (mRedisClusterClient == null) {
+			return (RedisAsyncCommands<String, byte[]>) mPipelinedStringBytes;
+		}
+		return asyncStringBytesForKey(key);
+	}
+
+	/**
+	 * Writes all commands buffered by {@link #pipelined()} to Redis. Safe to call from any thread.
+	 */
+	public void flushPipeline() {
+		if (mPipelinedConnection != null) {
+			mPipelinedConnection.flushCommands();
+		}
+		if (mPipelinedStringByteConnection != null) {
+			mPipelinedStringByteConnection.flushCommands();
+		}
+		if (mPipelinedByteBufferConnection != null) {
+			mPipelinedByteBufferConnection.flushCommands();
+		}
+	}
+
+	public boolean isPipelining() {
+		return mPipelinedConnection != null;
+	}
+
+	/**
+	 * Returns the near cache for hashes matching near_cache_prefixes, or null if it is not enabled.
+	 * Check {@link NearCache#isCacheable(String)} before reading a key through it.
+	 */
+	public @Nullable NearCache getNearCache() {
+		return mNearCache;
+	}
+
+	/**
+	 * Returns the rboard write combiner, or null if rboard increments are sent one at a time
+	 */
+	public @Nullable RBoardWriteCombiner getRBoardWriteCombiner() {
+		return mRBoardWriteCombiner;
+	}
+
+	/**
+	 * Returns the leaderboard write buffer, or null if leaderboard updates are sent one at a time
+	 */
+	public @Nullable LeaderboardWriteBuffer getLeaderboardWriteBuffer() {
+		return mLeaderboardWriteBuffer;
+	}
+
+	/**
+	 * Returns the write combiners and buffers that are enabled
+	 */
+	public List<BatchWriter> getBatchWriters() {
+		List<BatchWriter> writers = new ArrayList<>();
+		if (mRBoardWriteCombiner != null) {
+			writers.add(mRBoardWriteCombiner);
+		}
+		if (mLeaderboardWriteBuffer != null) {
+			writers.add(mLeaderboardWriteBuffer);
+		}
+		return writers;
+	}
+
+	public boolean isCluster() {
+		return mRedisClusterClient != null;
 	}
 
 	public boolean isReady() {
-		return mConnection.isOpen() && mStringByteConnection.isOpen();
+		return mConnection.isOpen() && mStringByteConnection.isOpen() && mByteBufferConnection.isOpen();
+	}
+
+	/**
+	 * Returns the prefix shared by all of a player's keys, i.e. domain:playerdata:uuid
+	 * <p>
+	 * If hash_tag_player_keys (or redis_cluster) is enabled, the UUID is wrapped in a {} hash tag so that every key
+	 * belonging to a player is stored in the same cluster slot, i.e. domain:playerdata:{uuid}
+	 */
+	public static String getPlayerKeyPrefix(UUID uuid) {
+		if (CommonConfig.getHashTagPlayerKeys()) {
+			return CommonConfig.getServerDomain() + ":playerdata:{" + uuid + "}";
+		}
+		return getLegacyPlayerKeyPrefix(uuid);
+	}
+
+	/**
+	 * Returns the player key prefix used before hash tags were introduced, only needed to migrate old keys
+	 */
+	public static String getLegacyPlayerKeyPrefix(UUID uuid) {
+		return CommonConfig.getServerDomain() + ":playerdata:" + uuid;
+	}
+
+	private RedisClusterNode getMasterNode(String key) {
+		RedisClusterClient clusterClient = mRedisClusterClient;
+		if (clusterClient == null) {
+			throw new IllegalStateException("Not connected to a Redis Cluster");
+		}
+		RedisClusterNode node = clusterClient.getPartitions().getMasterBySlot(SlotHash.getSlot(key));
+		if (node == null) {
+			throw new RedisException("No master node known for key " + key);
+		}
+		return node;
+	}
+
+	private void requireStandalone(String method) {
+		if (mRedisClusterClient != null) {
+			throw new IllegalStateException(method + " is not available with redis_cluster enabled, use openConnectionForKey() or asyncForKey()");
+		}
 	}
 }
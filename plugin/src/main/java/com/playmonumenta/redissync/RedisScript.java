@@ -0,0 +1,89 @@
+package com.playmonumenta.redissync;
+
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A Lua script run with EVALSHA, so only its SHA1 is sent on every call.
+ * <p>
+ * The first call on each connection, and the first after any connection (re)connects, is sent as EVAL, which caches
+ * the script on the server. Retrying after a NOSCRIPT reply would run the script after commands pipelined behind it,
+ * so that is only left as a fallback for a server whose script cache was flushed while connected.
+ */
+public class RedisScript {
+	private static final Set<RedisScript> SCRIPTS = ConcurrentHashMap.newKeySet();
+
+	private final String mSource;
+	private final String mSha;
+	/* Connections this script is known to be cached behind since they last connected */
+	private final Set<RedisClusterAsyncCommands<String, String>> mLoadedOn = ConcurrentHashMap.newKeySet();
+
+	public RedisScript(String source) {
+		mSource = source;
+		mSha = sha1Hex(source);
+		SCRIPTS.add(this);
+	}
+
+	/**
+	 * Forgets where every script is cached, so each is sent with EVAL again. Called whenever a connection (re)connects,
+	 * since the server may have restarted or failed over
+	 */
+	protected static void connectionActivated() {
+		for (RedisScript script : SCRIPTS) {
+			script.mLoadedOn.clear();
+		}
+	}
+
+	public <T> CompletableFuture<T> eval(RedisClusterAsyncCommands<String, String> commands, ScriptOutputType type, String[] keys, String... args) {
+		if (!mLoadedOn.contains(commands)) {
+			CompletableFuture<T> eval = commands.<T>eval(mSource, type, keys, args).toCompletableFuture();
+			return eval.whenComplete((result, ex) -> {
+				if (ex == null) {
+					mLoadedOn.add(commands);
+				}
+			});
+		}
+
+		CompletableFuture<T> evalSha = commands.<T>evalsha(mSha, type, keys, args).toCompletableFuture();
+		return evalSha.exceptionallyCompose(ex -> {
+			Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+			if (cause instanceof RedisNoScriptException) {
+				mLoadedOn.remove(commands);
+				CompletableFuture<T> evalFull = commands.<T>eval(mSource, type, keys, args).toCompletableFuture();
+				/* Might be on the pipelined connection, and nothing else would flush this retry */
+				RedisAPI.getInstance().flushPipeline();
+				return evalFull;
+			}
+			return CompletableFuture.failedFuture(cause);
+		});
+	}
+
+	/**
+	 * Always sends the whole script with EVAL. Use this between MULTI and EXEC, where a NOSCRIPT reply would only show
+	 * up at EXEC, after the transaction already ran without it
+	 */
+	public <T> CompletableFuture<T> evalInTransaction(RedisClusterAsyncCommands<String, String> commands, ScriptOutputType type, String[] keys, String... args) {
+		return commands.<T>eval(mSource, type, keys, args).toCompletableFuture();
+	}
+
+	private static String sha1Hex(String source) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("SHA-1 is not available", ex);
+		}
+	}
+}
@@ -0,0 +1,274 @@
+package com.playmonumenta.redissync;
+
+import com.playmonumenta.redissync.config.CommonConfig;
+import com.playmonumenta.redissync.utils.LatencyHistogram;
+import io.lettuce.core.event.command.CommandFailedEvent;
+import io.lettuce.core.event.command.CommandListener;
+import io.lettuce.core.event.command.CommandSucceededEvent;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+
+/**
+ * Latency histograms and throughput counters for everything sent to Redis.
+ * <p>
+ * Command latencies are recorded per Redis command type by a Lettuce command listener, API latencies are recorded
+ * per high level operation (i.e. a whole player save) with {@link #time(Api, CompletableFuture)}.
+ * Bytes in/out are counted on the netty channels of every connection.
+ */
+public class RedisStats {
+	public enum Api {
+		SAVE("save"),
+		LOAD("load"),
+		RBOARD("rboard"),
+		RBOARD_FLUSH("rboard_flush"),
+		LEADERBOARD("leaderboard"),
+		LEADERBOARD_FLUSH("leaderboard_flush"),
+		REMOTEDATA("remotedata");
+
+		private final String mName;
+
+		Api(String name) {
+			mName = name;
+		}
+
+		public String getName() {
+			return mName;
+		}
+	}
+
+	@ChannelHandler.Sharable
+	private static final class ByteCountingHandler extends ChannelDuplexHandler {
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+			BYTES_RECEIVED.add(readableBytes(msg));
+			super.channelRead(ctx, msg);
+		}
+
+		@Override
+		public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+			BYTES_SENT.add(readableBytes(msg));
+			super.write(ctx, msg, promise);
+		}
+
+		private static long readableBytes(Object msg) {
+			if (msg instanceof ByteBuf buf) {
+				return buf.readableBytes();
+			} else if (msg instanceof ByteBufHolder holder) {
+				return holder.content().readableBytes();
+			}
+			return 0;
+		}
+	}
+
+	private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+	private static final ConcurrentHashMap<String, LatencyHistogram> COMMAND_LATENCIES = new ConcurrentHashMap<>();
+	private static final ConcurrentHashMap<Api, LatencyHistogram> API_LATENCIES = new ConcurrentHashMap<>();
+	private static final LongAdder COMMANDS_FAILED = new LongAdder();
+	private static final LongAdder BYTES_SENT = new LongAdder();
+	private static final LongAdder BYTES_RECEIVED = new LongAdder();
+	private static final ByteCountingHandler BYTE_COUNTING_HANDLER = new ByteCountingHandler();
+	private static final CommandListener COMMAND_LISTENER = new CommandListener() {
+		@Override
+		public void commandSucceeded(CommandSucceededEvent event) {
+			COMMAND_LATENCIES.computeIfAbsent(event.getCommand().getType().name(), k -> new LatencyHistogram())
+				.record(event.getDuration(TimeUnit.NANOSECONDS));
+		}
+
+		@Override
+		public void commandFailed(CommandFailedEvent event) {
+			COMMANDS_FAILED.increment();
+		}
+	};
+
+	private static @Nullable ScheduledExecutorService EXPORTER = null;
+
+	protected static CommandListener getCommandListener() {
+		return COMMAND_LISTENER;
+	}
+
+	protected static ChannelHandler getByteCountingHandler() {
+		return BYTE_COUNTING_HANDLER;
+	}
+
+	/**
+	 * Records how long the given operation takes to complete, and returns the same future
+	 */
+	public static <T> CompletableFuture<T> time(Api api, CompletableFuture<T> future) {
+		long start = System.nanoTime();
+		future.whenComplete((result, ex) -> record(api, System.nanoTime() - start));
+		return future;
+	}
+
+	public static void record(Api api, long nanos) {
+		API_LATENCIES.computeIfAbsent(api, k -> new LatencyHistogram()).record(nanos);
+	}
+
+	public static long getBytesSent() {
+		return BYTES_SENT.sum();
+	}
+
+	public static long getBytesReceived() {
+		return BYTES_RECEIVED.sum();
+	}
+
+	public static long getCommandsFailed() {
+		return COMMANDS_FAILED.sum();
+	}
+
+	public static Map<String, LatencyHistogram> getCommandLatencies() {
+		return new TreeMap<>(COMMAND_LATENCIES);
+	}
+
+	public static Map<String, LatencyHistogram> getApiLatencies() {
+		Map<String, LatencyHistogram> result = new TreeMap<>();
+		API_LATENCIES.forEach((api, histogram) -> result.put(api.getName(), histogram));
+		return result;
+	}
+
+	/**
+	 * Returns a human readable summary, one line per entry
+	 */
+	public static List<String> getSummary() {
+		List<String> lines = new ArrayList<>();
+		lines.add("Bytes sent: " + getBytesSent() + "  received: " + getBytesReceived() + "  failed commands: " + getCommandsFailed());
+		lines.add("API latencies (count / p50 / p99 / max ms):");
+		getApiLatencies().forEach((name, histogram) -> lines.add("  " + name + ": " + summarize(histogram)));
+		lines.add("Command latencies (count / p50 / p99 / max ms):");
+		getCommandLatencies().forEach((name, histogram) -> lines.add("  " + name + ": " + summarize(histogram)));
+		NearCache nearCache = RedisAPI.getInstance().getNearCache();
+		if (nearCache != null) {
+			lines.add("Near cache: size " + nearCache.getSize() + "  hits " + nearCache.getHits() + "  misses " + nearCache.getMisses()
+				+ "  invalidations " + nearCache.getInvalidations() + "  evictions " + nearCache.getEvictions());
+		}
+		RemoteDataCache remoteDataCache = RemoteDataCache.getInstance();
+		if (remoteDataCache != null) {
+			lines.add("Remote data cache: players " + remoteDataCache.getSize() + "  hits " + remoteDataCache.getHits() + "  misses " + remoteDataCache.getMisses()
+				+ "  invalidations " + remoteDataCache.getInvalidations());
+		}
+		for (BatchWriter writer : RedisAPI.getInstance().getBatchWriters()) {
+			lines.add(writer.getStatsLine());
+		}
+		return lines;
+	}
+
+	/**
+	 * Returns all metrics in the Prometheus text exposition format
+	 */
+	public static String toPrometheusText() {
+		String shard = escapeLabel(CommonConfig.getShardName());
+		StringBuilder out = new StringBuilder();
+
+		out.append("# TYPE monumenta_redis_bytes_sent_total counter\n");
+		out.append("monumenta_redis_bytes_sent_total{shard=\"").append(shard).append("\"} ").append(getBytesSent()).append('\n');
+		out.append("# TYPE monumenta_redis_bytes_received_total counter\n");
+		out.append("monumenta_redis_bytes_received_total{shard=\"").append(shard).append("\"} ").append(getBytesReceived()).append('\n');
+		out.append("# TYPE monumenta_redis_commands_failed_total counter\n");
+		out.append("monumenta_redis_commands_failed_total{shard=\"").append(shard).append("\"} ").append(getCommandsFailed()).append('\n');
+
+		appendSummary(out, "monumenta_redis_api_duration_seconds", "api", shard, getApiLatencies());
+		appendSummary(out, "monumenta_redis_command_duration_seconds", "command", shard, getCommandLatencies());
+
+		NearCache nearCache = RedisAPI.getInstance().getNearCache();
+		if (nearCache != null) {
+			appendCounter(out, "monumenta_redis_near_cache_hits_total", shard, nearCache.getHits());
+			appendCounter(out, "monumenta_redis_near_cache_misses_total", shard, nearCache.getMisses());
+			appendCounter(out, "monumenta_redis_near_cache_invalidations_total", shard, nearCache.getInvalidations());
+			appendCounter(out, "monumenta_redis_near_cache_evictions_total", shard, nearCache.getEvictions());
+		}
+
+		RemoteDataCache remoteDataCache = RemoteDataCache.getInstance();
+		if (remoteDataCache != null) {
+			appendCounter(out, "monumenta_redis_remote_data_cache_hits_total", shard, remoteDataCache.getHits());
+			appendCounter(out, "monumenta_redis_remote_data_cache_misses_total", shard, remoteDataCache.getMisses());
+			appendCounter(out, "monumenta_redis_remote_data_cache_invalidations_total", shard, remoteDataCache.getInvalidations());
+		}
+
+		for (BatchWriter writer : RedisAPI.getInstance().getBatchWriters()) {
+			writer.appendMetrics(out, shard);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Periodically writes {@link #toPrometheusText()} to the given file, for the node exporter textfile collector.
+	 * The file is replaced atomically so it is never read half written.
+	 */
+	protected static synchronized void startFileExport(Path path, int intervalSeconds) {
+		stopFileExport();
+		ScheduledExecutorService exporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "MonumentaRedisSync-MetricsExport");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long interval = Math.max(1, intervalSeconds);
+		exporter.scheduleAtFixedRate(() -> {
+			try {
+				Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+				Files.writeString(tempPath, toPrometheusText(), StandardCharsets.UTF_8);
+				Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException ex) {
+				// Try again next interval; failing to write metrics must not affect anything else
+			}
+		}, interval, interval, TimeUnit.SECONDS);
+		EXPORTER = exporter;
+	}
+
+	protected static synchronized void stopFileExport() {
+		if (EXPORTER != null) {
+			EXPORTER.shutdown();
+			EXPORTER = null;
+		}
+	}
+
+	private static String summarize(LatencyHistogram histogram) {
+		return String.format(Locale.ROOT, "%d / %.2f / %.2f / %.2f", histogram.getCount(),
+			histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(99) / 1e6, histogram.getMaxNanos() / 1e6);
+	}
+
+	private static void appendSummary(StringBuilder out, String metric, String labelName, String shard, Map<String, LatencyHistogram> histograms) {
+		if (histograms.isEmpty()) {
+			return;
+		}
+		out.append("# TYPE ").append(metric).append(" summary\n");
+		histograms.forEach((name, histogram) -> {
+			String labels = "shard=\"" + shard + "\"," + labelName + "=\"" + escapeLabel(name) + "\"";
+			for (double quantile : QUANTILES) {
+				out.append(metric).append('{').append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+					.append(histogram.getValueAtPercentile(quantile * 100) / 1e9).append('\n');
+			}
+			out.append(metric).append("_sum{").append(labels).append("} ").append(histogram.getSumNanos() / 1e9).append('\n');
+			out.append(metric).append("_count{").append(labels).append("} ").append(histogram.getCount()).append('\n');
+		});
+	}
+
+	protected static void appendCounter(StringBuilder out, String metric, String shard, long value) {
+		out.append("# TYPE ").append(metric).append(" counter\n");
+		out.append(metric).append("{shard=\"").append(shard).append("\"} ").append(value).append('\n');
+	}
+
+	private static String escapeLabel(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
@@ -1,14 +1,24 @@
 package com.playmonumenta.redissync;
 
-import com.playmonumenta.redissync.config.CommonConfig;
 import io.lettuce.core.KeyValue;
 import io.lettuce.core.Value;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class RemoteDataAPI {
+	/* Bulk operations flush the pipeline after every this many players, so Redis can start on them while the rest are queued */
+	private static final int BULK_CHUNK_SIZE = 100;
+
 	/**
 	 * Gets a specific remote data entry for a player.
 	 * <p>
@@ -25,7 +35,21 @@ public class RemoteDataAPI {
 			return future;
 		}
 
-		return api.async().hget(getRedisPath(uuid), key).toCompletableFuture();
+		String redisPath = getRedisPath(uuid);
+		RemoteDataCache cache = RemoteDataCache.getInstance();
+		if (cache != null) {
+			CompletableFuture<Map<String, String>> cached = cache.hmget(uuid, new String[] {key}, missing -> hmget(api, redisPath, missing));
+			if (cached != null) {
+				return cached.thenApply(result -> result.get(key));
+			}
+		}
+
+		NearCache nearCache = api.getNearCache();
+		if (nearCache != null && nearCache.isCacheable(redisPath)) {
+			return nearCache.hget(redisPath, key);
+		}
+
+		return RedisStats.time(RedisStats.Api.REMOTEDATA, api.pipelinedForKey(redisPath).hget(redisPath, key).toCompletableFuture());
 	}
 
 	/**
@@ -44,7 +68,21 @@ public class RemoteDataAPI {
 			return future;
 		}
 
-		return api.async().hmget(getRedisPath(uuid), keys).toCompletableFuture().thenApply((listResult) -> listResult.stream().filter(Value::hasValue).collect(Collectors.toMap(KeyValue::getKey, Value::getValue)));
+		String redisPath = getRedisPath(uuid);
+		RemoteDataCache cache = RemoteDataCache.getInstance();
+		if (cache != null) {
+			CompletableFuture<Map<String, String>> cached = cache.hmget(uuid, keys, missing -> hmget(api, redisPath, missing));
+			if (cached != null) {
+				return cached.thenApply((mapResult) -> mapResult.entrySet().stream().filter(entry -> entry.getValue() != null).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+			}
+		}
+
+		NearCache nearCache = api.getNearCache();
+		if (nearCache != null && nearCache.isCacheable(redisPath)) {
+			return nearCache.hmget(redisPath, keys).thenApply((mapResult) -> mapResult.entrySet().stream().filter(entry -> entry.getValue() != null).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+		}
+
+		return RedisStats.time(RedisStats.Api.REMOTEDATA, api.pipelinedForKey(redisPath).hmget(redisPath, keys).toCompletableFuture().thenApply((listResult) -> listResult.stream().filter(Value::hasValue).collect(Collectors.toMap(KeyValue::getKey, Value::getValue))));
 	}
 
 	/**
@@ -63,7 +101,8 @@ public class RemoteDataAPI {
 			return future;
 		}
 
-		return api.async().hset(getRedisPath(uuid), key, value).toCompletableFuture();
+		String redisPath = getRedisPath(uuid);
+		return RedisStats.time(RedisStats.Api.REMOTEDATA, writeAndBroadcast(api, uuid, key, () -> api.pipelinedForKey(redisPath).hset(redisPath, key, value).toCompletableFuture(), result -> value));
 	}
 
 	/**
@@ -84,7 +123,8 @@ public class RemoteDataAPI {
 			return future;
 		}
 
-		return api.async().hincrby(getRedisPath(uuid), key, incBy).toCompletableFuture();
+		String redisPath = getRedisPath(uuid);
+		return RedisStats.time(RedisStats.Api.REMOTEDATA, writeAndBroadcast(api, uuid, key, () -> api.pipelinedForKey(redisPath).hincrby(redisPath, key, incBy).toCompletableFuture(), Object::toString));
 	}
 
 	/**
@@ -103,7 +143,8 @@ public class RemoteDataAPI {
 			return future;
 		}
 
-		return api.async().hdel(getRedisPath(uuid), key).thenApply((val) -> val == 1).toCompletableFuture();
+		String redisPath = getRedisPath(uuid);
+		return RedisStats.time(RedisStats.Api.REMOTEDATA, writeAndBroadcast(api, uuid, key, () -> api.pipelinedForKey(redisPath).hdel(redisPath, key).thenApply((val) -> val == 1).toCompletableFuture(), result -> null));
 	}
 
 	/**
@@ -122,10 +163,165 @@ public class RemoteDataAPI {
 			return future;
 		}
 
-		return api.async().hgetall(getRedisPath(uuid)).toCompletableFuture();
+		String redisPath = getRedisPath(uuid);
+		RemoteDataCache cache = RemoteDataCache.getInstance();
+		if (cache != null) {
+			Map<String, String> cached = cache.hgetall(uuid);
+			if (cached != null) {
+				return CompletableFuture.completedFuture(cached);
+			}
+		}
+
+		NearCache nearCache = api.getNearCache();
+		if (nearCache != null && nearCache.isCacheable(redisPath)) {
+			return nearCache.hgetall(redisPath);
+		}
+
+		return RedisStats.time(RedisStats.Api.REMOTEDATA, api.pipelinedForKey(redisPath).hgetall(redisPath).toCompletableFuture());
+	}
+
+	/**
+	 * Gets the same remote data entries for many players at once, i.e. for a guild roster or friend list.
+	 * <p>
+	 * One HMGET per player is pipelined in chunks, and the whole result is returned as a single future.
+	 * Players with none of the requested entries map to an empty map.
+	 * <p>
+	 * Will dispatch the task immediately async, making this suitable for use on main or async thread.
+	 * WARNING: These complete async, if you need to run a sync task on completion you need to schedule it yourself (or wrap with runOnMainThreadWhenComplete)
+	 *
+	 * @return Map of each player to their present keys:values
+	 */
+	public static CompletableFuture<Map<UUID, Map<String, String>>> getForMany(Collection<UUID> uuids, String... keys) {
+		RedisAPI api = RedisAPI.getInstance();
+		if (api == null) {
+			CompletableFuture<Map<UUID, Map<String, String>>> future = new CompletableFuture<>();
+			future.completeExceptionally(new Exception("MonumentaRedisSync is not loaded!"));
+			return future;
+		}
+
+		RemoteDataCache cache = RemoteDataCache.getInstance();
+		return RedisStats.time(RedisStats.Api.REMOTEDATA, forMany(api, uuids, uuid -> {
+			String redisPath = getRedisPath(uuid);
+			CompletableFuture<Map<String, String>> values = cache == null ? null : cache.hmget(uuid, keys, missing -> hmget(api, redisPath, missing));
+			if (values == null) {
+				values = api.pipelinedForKey(redisPath).hmget(redisPath, keys).toCompletableFuture()
+					.thenApply((listResult) -> listResult.stream().filter(Value::hasValue).collect(Collectors.toMap(KeyValue::getKey, Value::getValue)));
+			} else {
+				values = values.thenApply((mapResult) -> mapResult.entrySet().stream().filter(entry -> entry.getValue() != null).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+			}
+			return values;
+		}));
+	}
+
+	/**
+	 * Atomically increments the same remote data entry for many players at once.
+	 * <p>
+	 * One HINCRBY per player is pipelined in chunks, and the whole result is returned as a single future.
+	 * Note that this will interpret the hash values as integers (default 0 if not existing)
+	 * <p>
+	 * Will dispatch the task immediately async, making this suitable for use on main or async thread.
+	 * WARNING: These complete async, if you need to run a sync task on completion you need to schedule it yourself (or wrap with runOnMainThreadWhenComplete)
+	 *
+	 * @return Map of each player to their resulting value
+	 */
+	public static CompletableFuture<Map<UUID, Long>> incrementForMany(Collection<UUID> uuids, String key, int incBy) {
+		RedisAPI api = RedisAPI.getInstance();
+		if (api == null) {
+			CompletableFuture<Map<UUID, Long>> future = new CompletableFuture<>();
+			future.completeExceptionally(new Exception("MonumentaRedisSync is not loaded!"));
+			return future;
+		}
+
+		/* Every player that was incremented goes out in one invalidation message, rather than one per player */
+		Map<UUID, Collection<String>> changed = new ConcurrentHashMap<>();
+		List<String> keys = List.of(key);
+		CompletableFuture<Map<UUID, Long>> result = forMany(api, uuids, uuid -> {
+			String redisPath = getRedisPath(uuid);
+			return write(api, uuid, key, () -> api.pipelinedForKey(redisPath).hincrby(redisPath, key, incBy).toCompletableFuture(), Object::toString)
+				.whenComplete((value, ex) -> changed.put(uuid, keys));
+		});
+		return RedisStats.time(RedisStats.Api.REMOTEDATA, result.whenComplete((values, ex) -> RemoteDataInvalidations.broadcast(changed)));
+	}
+
+	/* Sends one operation per player, flushing the pipeline after each chunk, and collects the results into one map */
+	private static <T> CompletableFuture<Map<UUID, T>> forMany(RedisAPI api, Collection<UUID> uuids, Function<UUID, CompletableFuture<T>> operation) {
+		Map<UUID, CompletableFuture<T>> futures = new LinkedHashMap<>();
+		int queued = 0;
+		for (UUID uuid : uuids) {
+			if (futures.containsKey(uuid)) {
+				continue;
+			}
+			futures.put(uuid, operation.apply(uuid));
+			queued++;
+			if (queued % BULK_CHUNK_SIZE == 0) {
+				api.flushPipeline();
+			}
+		}
+		api.flushPipeline();
+
+		return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).thenApply(unused -> {
+			Map<UUID, T> result = new LinkedHashMap<>();
+			futures.forEach((uuid, future) -> result.put(uuid, future.join()));
+			return result;
+		});
+	}
+
+	/**
+	 * Reads all remote data for a player a page at a time with HSCAN, calling onPage with each page on a Redis thread.
+	 * Use this instead of getAll() for players that may have a lot of remote data
+	 */
+	public static CompletableFuture<Void> scanAll(UUID uuid, int pageSize, Consumer<Map<String, String>> onPage) {
+		RedisAPI api = RedisAPI.getInstance();
+		if (api == null) {
+			CompletableFuture<Void> future = new CompletableFuture<>();
+			future.completeExceptionally(new Exception("MonumentaRedisSync is not loaded!"));
+			return future;
+		}
+
+		String redisPath = getRedisPath(uuid);
+		return RedisStats.time(RedisStats.Api.REMOTEDATA, HashScan.all(api.asyncForKey(redisPath), redisPath, pageSize, onPage));
+	}
+
+	/**
+	 * Reads one page of a player's remote data, starting at cursor ({@link HashScan#START} for the first page)
+	 */
+	public static CompletableFuture<HashScan.Page> getAllPage(UUID uuid, String cursor, int pageSize) {
+		RedisAPI api = RedisAPI.getInstance();
+		if (api == null) {
+			CompletableFuture<HashScan.Page> future = new CompletableFuture<>();
+			future.completeExceptionally(new Exception("MonumentaRedisSync is not loaded!"));
+			return future;
+		}
+
+		String redisPath = getRedisPath(uuid);
+		return RedisStats.time(RedisStats.Api.REMOTEDATA, HashScan.page(api.asyncForKey(redisPath), redisPath, cursor, pageSize));
+	}
+
+	/* Sends a write, then tells every shard the field changed. Also when it failed, as it may still have been applied */
+	private static <T> CompletableFuture<T> writeAndBroadcast(RedisAPI api, UUID uuid, String key, Supplier<CompletableFuture<T>> write, Function<T, String> valueAfter) {
+		return write(api, uuid, key, write, valueAfter).whenComplete((result, ex) -> RemoteDataInvalidations.broadcast(Map.of(uuid, List.of(key))));
+	}
+
+	/* Sends a write through this shard's remote data cache, and drops the player's remote data from the near cache before it is issued, see NearCache#write */
+	private static <T> CompletableFuture<T> write(RedisAPI api, UUID uuid, String key, Supplier<CompletableFuture<T>> write, Function<T, String> valueAfter) {
+		String redisPath = getRedisPath(uuid);
+		NearCache nearCache = api.getNearCache();
+		Supplier<CompletableFuture<T>> send = nearCache == null ? write : () -> nearCache.write(redisPath, write);
+		RemoteDataCache cache = RemoteDataCache.getInstance();
+		return cache == null ? send.get() : cache.write(uuid, key, send, valueAfter);
+	}
+
+	/* Reads fields the remote data cache doesn't have yet, with null values for fields that do not exist. Not through the near cache, see RemoteDataCache */
+	private static CompletableFuture<Map<String, String>> hmget(RedisAPI api, String redisPath, List<String> fields) {
+		String[] array = fields.toArray(new String[0]);
+		return RedisStats.time(RedisStats.Api.REMOTEDATA, api.pipelinedForKey(redisPath).hmget(redisPath, array).toCompletableFuture().thenApply((listResult) -> {
+			Map<String, String> result = new HashMap<>();
+			listResult.forEach(value -> result.put(value.getKey(), value.getValueOrElse(null)));
+			return result;
+		}));
 	}
 
 	public static String getRedisPath(UUID uuid) {
-		return String.format("%s:playerdata:%s:remotedata", CommonConfig.getServerDomain(), uuid.toString());
+		return KeyRegistry.getRemoteDataPath(uuid);
 	}
 }
@@ -0,0 +1,228 @@
+package com.playmonumenta.redissync;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * In-memory copy of the remote data of players online on this shard.
+ * <p>
+ * A player's remote data is loaded along with their playerdata and dropped shortly after they leave. While a write
+ * made through {@link RemoteDataAPI} on this shard is in flight, the field it writes is read from Redis (on the same
+ * connection, so after the write); once it succeeds the field's new value is cached. Every RemoteDataAPI write, on any
+ * shard or the proxy, is announced with {@link RemoteDataInvalidations}, and other shards invalidate that field.
+ * Invalidated fields are read from Redis and cached again the next time they are read. Writes that don't go through
+ * RemoteDataAPI are not seen until the player changes shard.
+ * <p>
+ * Misses are read from Redis directly rather than through the {@link NearCache}, so a player's remote data is only
+ * ever cached in one layer: here while they are online on this shard, in the near cache otherwise.
+ */
+public class RemoteDataCache {
+	private static final class Entry {
+		private final ConcurrentHashMap<String, Optional<String>> mFields = new ConcurrentHashMap<>();
+		/* True if every field of the hash is in mFields, i.e. it was loaded with HGETALL, apart from mStale */
+		private volatile boolean mComplete = false;
+		/* Fields whose cached value (or absence) can't be trusted until they are read again */
+		private final Set<String> mStale = ConcurrentHashMap.newKeySet();
+		/* Number of writes in flight per field */
+		private final ConcurrentHashMap<String, Integer> mWriting = new ConcurrentHashMap<>();
+		/* Changed by every invalidation, so reads that were in flight across one don't cache what they read */
+		private final AtomicLong mVersion = new AtomicLong();
+
+		private boolean isUncached(String field) {
+			return mWriting.containsKey(field) || mStale.contains(field);
+		}
+	}
+
+	private static @Nullable RemoteDataCache INSTANCE = null;
+
+	private final ConcurrentHashMap<UUID, Entry> mEntries = new ConcurrentHashMap<>();
+
+	private final LongAdder mHits = new LongAdder();
+	private final LongAdder mMisses = new LongAdder();
+	private final LongAdder mInvalidations = new LongAdder();
+
+	protected RemoteDataCache() {
+		INSTANCE = this;
+	}
+
+	/**
+	 * Returns the cache, or null if it is disabled (or this is the proxy)
+	 */
+	public static @Nullable RemoteDataCache getInstance() {
+		return INSTANCE;
+	}
+
+	protected void close() {
+		mEntries.clear();
+		INSTANCE = null;
+	}
+
+	/**
+	 * Starts caching a player's remote data. Pass the returned token to {@link #finishLoad} with the data once it is read
+	 */
+	public Object startLoad(UUID uuid) {
+		Entry entry = new Entry();
+		mEntries.put(uuid, entry);
+		return entry;
+	}
+
+	/**
+	 * Fills in a player's remote data, unless it was invalidated since {@link #startLoad}
+	 */
+	public void finishLoad(UUID uuid, Object token, @Nullable Map<String, String> data) {
+		if (mEntries.get(uuid) != token) {
+			return;
+		}
+		Entry entry = (Entry) token;
+		if (data != null) {
+			data.forEach((field, value) -> entry.mFields.put(field, Optional.of(value)));
+		}
+		entry.mComplete = true;
+	}
+
+	public void remove(UUID uuid) {
+		mEntries.remove(uuid);
+	}
+
+	public boolean isCached(UUID uuid) {
+		return mEntries.containsKey(uuid);
+	}
+
+	/**
+	 * Equivalent of HMGET if the player is cached, returning a map of the requested fields with null values for fields
+	 * that do not exist. Reads any fields that aren't cached yet from Redis with the given loader and caches them.
+	 * Returns null if the player isn't cached at all
+	 */
+	public @Nullable CompletableFuture<Map<String, String>> hmget(UUID uuid, String[] fields, Function<List<String>, CompletableFuture<Map<String, String>>> loader) {
+		Entry entry = mEntries.get(uuid);
+		if (entry == null) {
+			return null;
+		}
+
+		Map<String, String> result = new LinkedHashMap<>();
+		List<String> missing = new ArrayList<>();
+		long version = entry.mVersion.get();
+		for (String field : fields) {
+			Optional<String> value = entry.mFields.get(field);
+			if (entry.isUncached(field)) {
+				missing.add(field);
+			} else if (value != null) {
+				result.put(field, value.orElse(null));
+			} else if (entry.mComplete) {
+				result.put(field, null);
+			} else {
+				missing.add(field);
+			}
+		}
+		if (missing.isEmpty()) {
+			mHits.increment();
+			return CompletableFuture.completedFuture(result);
+		}
+
+		mMisses.increment();
+		return loader.apply(missing).thenApply(loaded -> {
+			/* Only store the result if the player was not invalidated while this read was in flight */
+			boolean store = mEntries.get(uuid) == entry && entry.mVersion.get() == version;
+			for (String field : missing) {
+				String value = loaded.get(field);
+				result.put(field, value);
+				if (store && !entry.mWriting.containsKey(field)) {
+					entry.mFields.put(field, Optional.ofNullable(value));
+					entry.mStale.remove(field);
+				}
+			}
+			return result;
+		});
+	}
+
+	/**
+	 * Equivalent of HGETALL if all of the player's remote data is cached, otherwise null
+	 */
+	public @Nullable Map<String, String> hgetall(UUID uuid) {
+		Entry entry = mEntries.get(uuid);
+		if (entry == null || !entry.mComplete || !entry.mStale.isEmpty() || !entry.mWriting.isEmpty()) {
+			return null;
+		}
+		mHits.increment();
+		Map<String, String> result = new LinkedHashMap<>();
+		entry.mFields.forEach((field, value) -> value.ifPresent(v -> result.put(field, v)));
+		return result;
+	}
+
+	/**
+	 * Sends a write with the given function. Until it completes the field is read from Redis; once it succeeds the
+	 * field's new value (valueAfter of the write's result, null if the field was deleted) is cached. The caller tells
+	 * the other shards with {@link RemoteDataInvalidations}
+	 */
+	public <T> CompletableFuture<T> write(UUID uuid, String field, Supplier<CompletableFuture<T>> write, Function<T, String> valueAfter) {
+		Entry entry = mEntries.get(uuid);
+		long version = 0;
+		if (entry != null) {
+			/* Before the write is issued, so a read made after this call can't be answered with the old value */
+			entry.mWriting.merge(field, 1, Integer::sum);
+			version = entry.mVersion.incrementAndGet();
+		}
+		long versionAtWrite = version;
+
+		CompletableFuture<T> future;
+		try {
+			future = write.get();
+		} catch (RuntimeException ex) {
+			future = CompletableFuture.failedFuture(ex);
+		}
+		return future.whenComplete((result, ex) -> {
+			if (entry == null) {
+				return;
+			}
+			if (ex == null && entry.mVersion.get() == versionAtWrite) {
+				entry.mFields.put(field, Optional.ofNullable(valueAfter.apply(result)));
+				entry.mStale.remove(field);
+			} else {
+				/* Unknown whether it was applied, or something else may have changed the field since */
+				entry.mStale.add(field);
+			}
+			entry.mWriting.computeIfPresent(field, (k, count) -> count <= 1 ? null : count - 1);
+		});
+	}
+
+	/**
+	 * Drops the given fields of a player after another shard changed them
+	 */
+	public void invalidate(UUID uuid, Collection<String> fields) {
+		Entry entry = mEntries.get(uuid);
+		if (entry == null) {
+			return;
+		}
+		entry.mStale.addAll(fields);
+		entry.mVersion.incrementAndGet();
+		mInvalidations.increment();
+	}
+
+	public long getHits() {
+		return mHits.sum();
+	}
+
+	public long getMisses() {
+		return mMisses.sum();
+	}
+
+	public long getInvalidations() {
+		return mInvalidations.sum();
+	}
+
+	public int getSize() {
+		return mEntries.size();
+	}
+}
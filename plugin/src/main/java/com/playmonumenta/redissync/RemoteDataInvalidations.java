@@ -0,0 +1,94 @@
+package com.playmonumenta.redissync;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.playmonumenta.networkrelay.NetworkRelayAPI;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+
+/**
+ * Tells every shard's {@link RemoteDataCache} which remote data fields were written, over MonumentaNetworkRelay.
+ * <p>
+ * Every write made through {@link RemoteDataAPI} is sent here whether or not this server caches remote data itself,
+ * so it works on the proxy and on shards with the cache disabled. Everything queued before the async task runs goes
+ * out as one message to every shard; shards that don't have the player cached ignore it.
+ */
+public class RemoteDataInvalidations {
+	protected static final String CHANNEL = "com.playmonumenta.redissync.remoteDataInvalidate";
+
+	private static @Nullable RemoteDataInvalidations INSTANCE = null;
+
+	private final MonumentaRedisSyncInterface mServer;
+	private final Consumer<String> mWarn;
+	/* Invalidations waiting to be sent in the next batch, player -> changed keys */
+	private final ConcurrentHashMap<UUID, Set<String>> mPending = new ConcurrentHashMap<>();
+	private final AtomicBoolean mQueued = new AtomicBoolean(false);
+
+	/**
+	 * Only create this if MonumentaNetworkRelay is installed
+	 *
+	 * @param warn Logs a warning on the current platform
+	 */
+	protected RemoteDataInvalidations(MonumentaRedisSyncInterface server, Consumer<String> warn) {
+		mServer = server;
+		mWarn = warn;
+		INSTANCE = this;
+	}
+
+	protected void close() {
+		INSTANCE = null;
+	}
+
+	/**
+	 * Queues telling every shard that these keys of these players' remote data changed. Does nothing without
+	 * MonumentaNetworkRelay
+	 */
+	public static void broadcast(Map<UUID, Collection<String>> changed) {
+		RemoteDataInvalidations instance = INSTANCE;
+		if (instance == null || changed.isEmpty()) {
+			return;
+		}
+
+		changed.forEach((uuid, keys) -> instance.mPending.merge(uuid, new HashSet<>(keys), (queued, added) -> {
+			Set<String> merged = new HashSet<>(queued);
+			merged.addAll(added);
+			return merged;
+		}));
+		if (instance.mQueued.compareAndSet(false, true)) {
+			instance.mServer.runAsync(instance::send);
+		}
+	}
+
+	private void send() {
+		mQueued.set(false);
+
+		JsonObject players = new JsonObject();
+		for (UUID uuid : mPending.keySet()) {
+			Set<String> keys = mPending.remove(uuid);
+			if (keys == null) {
+				continue;
+			}
+			JsonArray keysArray = new JsonArray();
+			keys.forEach(keysArray::add);
+			players.add(uuid.toString(), keysArray);
+		}
+		if (players.size() == 0) {
+			return;
+		}
+
+		try {
+			JsonObject eventData = new JsonObject();
+			eventData.add("players", players);
+			NetworkRelayAPI.sendBroadcastMessage(CHANNEL, eventData);
+		} catch (Exception e) {
+			mWarn.accept("Failed to broadcast remote data invalidation for " + players.size() + " players");
+		}
+	}
+}
@@ -0,0 +1,600 @@
+package com.playmonumenta.redissync;
+
+import io.lettuce.core.TransactionResult;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import javax.annotation.Nullable;
+
+/**
+ * Local write-ahead journal of player saves.
+ * <p>
+ * Every save is appended to a memory-mapped segment file before it is sent to Redis, and marked as acknowledged
+ * once Redis has committed it. A background thread fsyncs written segments every few milliseconds, so many saves
+ * share one fsync (group commit). Segments are deleted once every save in them (and every older segment) has been
+ * acknowledged.
+ * <p>
+ * On startup, saves that were never acknowledged are replayed to Redis, unless the player's history shows that
+ * the save was already applied, or that a newer save exists (i.e. the player has since played on another shard).
+ * A save that fails to replay on {@value #MAX_REPLAY_ATTEMPTS} startups is moved to the dead-letter directory and
+ * acknowledged, so it can't hold every later segment on disk forever.
+ */
+public class SaveJournal {
+	/**
+	 * A player save, as the list of Redis writes it consists of
+	 */
+	public static final class Entry {
+		private static final byte OP_LPUSH = 1;
+		private static final byte OP_HSET = 2;
+
+		private static final class Op {
+			private final byte mType;
+			private final String mKey;
+			private final @Nullable String mField;
+			private final ByteBuffer mValue;
+			private final int mTrim;
+
+			private Op(byte type, String key, @Nullable String field, ByteBuffer value, int trim) {
+				mType = type;
+				mKey = key;
+				mField = field;
+				mValue = value;
+				mTrim = trim;
+			}
+		}
+
+		private final UUID mUUID;
+		private final long mTimestamp;
+		private @Nullable String mHistory = null;
+		private final List<Op> mOps = new ArrayList<>();
+
+		public Entry(UUID uuid, long timestamp) {
+			mUUID = uuid;
+			mTimestamp = timestamp;
+		}
+
+		/**
+		 * LPUSH value followed by LTRIM 0 trim
+		 */
+		public Entry lpush(String key, ByteBuffer value, int trim) {
+			mOps.add(new Op(OP_LPUSH, key, null, value.duplicate(), trim));
+			return this;
+		}
+
+		public Entry lpush(String key, String value, int trim) {
+			return lpush(key, StandardCharsets.UTF_8.encode(value), trim);
+		}
+
+		public Entry hset(String key, String field, String value) {
+			mOps.add(new Op(OP_HSET, key, field, StandardCharsets.UTF_8.encode(value), 0));
+			return this;
+		}
+
+		/**
+		 * The history entry this save pushes, used on replay to tell whether it was already applied
+		 */
+		public Entry history(String history) {
+			mHistory = history;
+			return this;
+		}
+
+		private int encodedSize() {
+			int size = 8 + 8 + 8 + 1 + 4;
+			if (mHistory != null) {
+				size += 4 + utf8Length(mHistory);
+			}
+			for (Op op : mOps) {
+				size += 1 + 4 + utf8Length(op.mKey) + 4 + op.mValue.remaining() + 4;
+				if (op.mField != null) {
+					size += 4 + utf8Length(op.mField);
+				}
+			}
+			return size;
+		}
+
+		private void encode(ByteBuffer out) {
+			out.putLong(mUUID.getMostSignificantBits());
+			out.putLong(mUUID.getLeastSignificantBits());
+			out.putLong(mTimestamp);
+			out.put((byte) (mHistory == null ? 0 : 1));
+			if (mHistory != null) {
+				putString(out, mHistory);
+			}
+			out.putInt(mOps.size());
+			for (Op op : mOps) {
+				out.put(op.mType);
+				putString(out, op.mKey);
+				if (op.mField != null) {
+					putString(out, op.mField);
+				}
+				out.putInt(op.mValue.remaining());
+				out.put(op.mValue.duplicate());
+				out.putInt(op.mTrim);
+			}
+		}
+
+		private static Entry decode(ByteBuffer in) {
+			Entry entry = new Entry(new UUID(in.getLong(), in.getLong()), in.getLong());
+			if (in.get() != 0) {
+				entry.mHistory = getString(in);
+			}
+			int count = in.getInt();
+			for (int i = 0; i < count; i++) {
+				byte type = in.get();
+				String key = getString(in);
+				String field = type == OP_HSET ? getString(in) : null;
+				byte[] value = new byte[in.getInt()];
+				in.get(value);
+				entry.mOps.add(new Op(type, key, field, ByteBuffer.wrap(value), in.getInt()));
+			}
+			return entry;
+		}
+	}
+
+	/* Same length as getBytes(UTF_8), which replaces unpaired surrogates with '?', without encoding the string */
+	private static int utf8Length(String value) {
+		int length = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				length += 1;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				length += 1;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	/* Encodes the string straight into out, so the journal never holds a second copy of it */
+	private static void putString(ByteBuffer out, String value) {
+		out.putInt(utf8Length(value));
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				out.put((byte) c);
+			} else if (c < 0x800) {
+				out.put((byte) (0xC0 | (c >> 6)));
+				out.put((byte) (0x80 | (c & 0x3F)));
+			} else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				out.put((byte) (0xF0 | (codePoint >> 18)));
+				out.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+				out.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+				out.put((byte) (0x80 | (codePoint & 0x3F)));
+			} else if (Character.isSurrogate(c)) {
+				out.put((byte) '?');
+			} else {
+				out.put((byte) (0xE0 | (c >> 12)));
+				out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+				out.put((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+	}
+
+	private static String getString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static final class Segment {
+		private final Path mPath;
+		private final MappedByteBuffer mBuffer;
+		/* Saves in this segment that have not been acknowledged yet */
+		private int mUnacked = 0;
+
+		private Segment(Path path, MappedByteBuffer buffer) {
+			mPath = path;
+			mBuffer = buffer;
+		}
+	}
+
+	private static final byte RECORD_SAVE = 1;
+	private static final byte RECORD_ACK = 2;
+	/* A replay of this sequence failed */
+	private static final byte RECORD_REPLAY_FAILED = 3;
+	public static final int MAX_REPLAY_ATTEMPTS = 5;
+	private static final String DEAD_LETTER_DIRECTORY = "dead-letter";
+	/* Record = int length, then length bytes of (type, sequence, payload), then CRC32 of those bytes */
+	private static final String SEGMENT_PREFIX = "journal-";
+	private static final String SEGMENT_SUFFIX = ".seg";
+
+	private final Logger mLogger;
+	private final Path mDirectory;
+	private final int mSegmentBytes;
+	private final ScheduledExecutorService mFlusher;
+
+	/* All guarded by this */
+	private final ArrayDeque<Segment> mSegments = new ArrayDeque<>();
+	private final Map<Long, Segment> mUnacked = new HashMap<>();
+	private final Set<Segment> mDirtySegments = new LinkedHashSet<>();
+	private Segment mCurrent;
+	private long mLastSequence;
+	/* Segments are numbered separately from records, acknowledgements of old saves can fill a segment with no new saves */
+	private long mLastSegmentIndex;
+
+	/* Saves found in the journal on startup that were never acknowledged, in sequence order */
+	private final TreeMap<Long, Entry> mRecovered = new TreeMap<>();
+	/* Number of failed replays of each recovered save, from previous startups */
+	private final Map<Long, Integer> mReplayFailures = new HashMap<>();
+
+	/* Acknowledgements are written by the flusher thread, not the Redis thread that completes the save */
+	private final ConcurrentLinkedQueue<Long> mPendingAcks = new ConcurrentLinkedQueue<>();
+
+	protected SaveJournal(Logger logger, Path directory, int segmentBytes, int fsyncIntervalMs) throws IOException {
+		mLogger = logger;
+		mDirectory = directory;
+		mSegmentBytes = Math.max(64 * 1024, segmentBytes);
+		Files.createDirectories(directory);
+
+		List<Path> existing;
+		try (Stream<Path> files = Files.list(directory)) {
+			existing = files.filter(path -> {
+				String name = path.getFileName().toString();
+				return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+			}).sorted().collect(Collectors.toList());
+		}
+
+		long lastSequence = 0;
+		long lastSegmentIndex = 0;
+		for (Path path : existing) {
+			String name = path.getFileName().toString();
+			try {
+				lastSegmentIndex = Math.max(lastSegmentIndex, Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+			} catch (NumberFormatException ex) {
+				mLogger.warning("Ignoring save journal file with an unexpected name: " + name);
+				continue;
+			}
+			Segment segment;
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				segment = new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+			}
+			long segmentSequence = scan(segment);
+			if (segmentSequence == 0) {
+				/* Nothing was ever written to it */
+				Files.deleteIfExists(path);
+				continue;
+			}
+			lastSequence = Math.max(lastSequence, segmentSequence);
+			mSegments.addLast(segment);
+		}
+		mLastSequence = lastSequence;
+		mLastSegmentIndex = lastSegmentIndex;
+		mCurrent = createSegment(mSegmentBytes);
+		deleteAcknowledgedSegments();
+
+		if (!mRecovered.isEmpty()) {
+			mLogger.warning("Save journal contains " + mRecovered.size() + " saves that were never acknowledged by redis");
+		}
+
+		mFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "MonumentaRedisSync-SaveJournal");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long interval = Math.max(1, fsyncIntervalMs);
+		mFlusher.scheduleWithFixedDelay(this::sync, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Writes a save to the journal, returning its sequence number. Must be called before the save is sent to Redis
+	 */
+	public synchronized long append(Entry entry) {
+		long sequence = ++mLastSequence;
+		writeRecord(RECORD_SAVE, sequence, entry);
+		mCurrent.mUnacked++;
+		mUnacked.put(sequence, mCurrent);
+		return sequence;
+	}
+
+	/**
+	 * Marks a save as committed to Redis, so it will not be replayed.
+	 * <p>
+	 * Only queues the acknowledgement, it is written (and fully acknowledged segments deleted) on the flusher thread
+	 */
+	public void acknowledge(long sequence) {
+		mPendingAcks.add(sequence);
+	}
+
+	/**
+	 * Replays every save recovered on startup that was never acknowledged. Blocks until done, call before players can join
+	 *
+	 * @return the number of saves that were written to Redis
+	 */
+	public int replay(int timeoutSeconds) {
+		int replayed = 0;
+		for (Map.Entry<Long, Entry> recovered : new ArrayList<>(mRecovered.entrySet())) {
+			long sequence = recovered.getKey();
+			Entry entry = recovered.getValue();
+			try {
+				if (replayEntry(entry, timeoutSeconds)) {
+					replayed++;
+				}
+				mRecovered.remove(sequence);
+				acknowledgeNow(sequence);
+			} catch (Exception ex) {
+				int failures = mReplayFailures.merge(sequence, 1, Integer::sum);
+				if (failures >= MAX_REPLAY_ATTEMPTS) {
+					mLogger.log(Level.SEVERE, "Failed to replay journaled save " + sequence + " for player " + entry.mUUID + " " + failures
+						+ " times, moving it to " + DEAD_LETTER_DIRECTORY, ex);
+					deadLetter(sequence, entry);
+				} else {
+					mLogger.log(Level.SEVERE, "Failed to replay journaled save " + sequence + " for player " + entry.mUUID + ", will retry on next startup", ex);
+					synchronized (this) {
+						writeRecord(RECORD_REPLAY_FAILED, sequence, null);
+					}
+				}
+			}
+		}
+		return replayed;
+	}
+
+	protected void close() {
+		mFlusher.shutdown();
+		sync();
+	}
+
+	/* Keeps a save that can't be replayed for manual recovery, and stops it from holding up segment deletion */
+	private void deadLetter(long sequence, Entry entry) {
+		try {
+			Path directory = mDirectory.resolve(DEAD_LETTER_DIRECTORY);
+			Files.createDirectories(directory);
+			ByteBuffer payload = ByteBuffer.allocate(entry.encodedSize());
+			entry.encode(payload);
+			Files.write(directory.resolve(String.format("%020d-%s.bin", sequence, entry.mUUID)), payload.array());
+		} catch (IOException ex) {
+			/* Keep it in the journal rather than lose it */
+			mLogger.log(Level.SEVERE, "Failed to write journaled save " + sequence + " to " + DEAD_LETTER_DIRECTORY + ", keeping it in the journal", ex);
+			return;
+		}
+		mRecovered.remove(sequence);
+		mReplayFailures.remove(sequence);
+		acknowledgeNow(sequence);
+	}
+
+	private synchronized void acknowledgeNow(long sequence) {
+		Segment segment = mUnacked.remove(sequence);
+		if (segment == null) {
+			return;
+		}
+		segment.mUnacked--;
+		writeRecord(RECORD_ACK, sequence, null);
+		deleteAcknowledgedSegments();
+	}
+
+	private boolean replayEntry(Entry entry, int timeoutSeconds) throws Exception {
+		RedisAPI api = RedisAPI.getInstance();
+		String historyPath = KeyRegistry.getHistoryPath(entry.mUUID);
+		List<String> history = api.asyncForKey(historyPath).lrange(historyPath, 0, -1).get(timeoutSeconds, TimeUnit.SECONDS);
+
+		if (entry.mHistory != null && history.contains(entry.mHistory)) {
+			mLogger.info("Journaled save for player " + entry.mUUID + " at " + entry.mTimestamp + " was already applied");
+			return false;
+		}
+		if (!history.isEmpty() && getHistoryTimestamp(history.get(0)) > entry.mTimestamp) {
+			mLogger.warning("Not replaying journaled save for player " + entry.mUUID + " at " + entry.mTimestamp + ", a newer save exists: " + history.get(0));
+			return false;
+		}
+		/*
+		 * Saves without a history entry (advancements) are applied if every list already starts with the pushed value.
+		 * Pushing them again would shift that list's entries against the other lists' rollback indices
+		 */
+		if (entry.mHistory == null && isAtHeadOfLists(api, entry, timeoutSeconds)) {
+			mLogger.info("Journaled save for player " + entry.mUUID + " at " + entry.mTimestamp + " was already applied");
+			return false;
+		}
+
+		mLogger.warning("Replaying journaled save for player " + entry.mUUID + " at " + entry.mTimestamp);
+		if (entry.mOps.isEmpty()) {
+			return false;
+		}
+		RedisAsyncCommands<String, byte[]> commands = api.asyncStringBytesForKey(entry.mOps.get(0).mKey);
+		commands.multi();
+		for (Entry.Op op : entry.mOps) {
+			byte[] value = new byte[op.mValue.remaining()];
+			op.mValue.duplicate().get(value);
+			if (op.mType == Entry.OP_HSET && op.mField != null) {
+				commands.hset(op.mKey, op.mField, value);
+			} else {
+				commands.lpush(op.mKey, value);
+				commands.ltrim(op.mKey, 0, op.mTrim);
+			}
+		}
+		TransactionResult result = commands.exec().get(timeoutSeconds, TimeUnit.SECONDS);
+		if (result.wasDiscarded()) {
+			throw new Exception("Transaction was discarded");
+		}
+		return true;
+	}
+
+	private static boolean isAtHeadOfLists(RedisAPI api, Entry entry, int timeoutSeconds) throws Exception {
+		boolean anyLists = false;
+		for (Entry.Op op : entry.mOps) {
+			if (op.mType != Entry.OP_LPUSH) {
+				continue;
+			}
+			anyLists = true;
+			byte[] head = api.asyncStringBytesForKey(op.mKey).lindex(op.mKey, 0).get(timeoutSeconds, TimeUnit.SECONDS);
+			if (head == null || !ByteBuffer.wrap(head).equals(op.mValue)) {
+				return false;
+			}
+		}
+		return anyLists;
+	}
+
+	private static long getHistoryTimestamp(String history) {
+		/* shard|timestamp|name, possibly prefixed with i.e. rollback@ */
+		String[] split = history.split("\\|");
+		if (split.length < 2) {
+			return 0;
+		}
+		try {
+			return Long.parseLong(split[1]);
+		} catch (NumberFormatException ex) {
+			return 0;
+		}
+	}
+
+	/* Reads all records in a segment on startup, returns the highest sequence number found or 0 if it is empty */
+	private long scan(Segment segment) {
+		ByteBuffer buffer = segment.mBuffer.duplicate();
+		long lastSequence = 0;
+		CRC32 crc = new CRC32();
+		while (buffer.remaining() >= 4) {
+			int length = buffer.getInt();
+			if (length <= 0 || buffer.remaining() < length + 4) {
+				/* End of written data, or a record torn by a crash */
+				break;
+			}
+			ByteBuffer record = buffer.slice();
+			record.limit(length);
+			buffer.position(buffer.position() + length);
+			crc.reset();
+			crc.update(record.duplicate());
+			if ((int) crc.getValue() != buffer.getInt()) {
+				mLogger.warning("Save journal segment " + segment.mPath.getFileName() + " has a corrupt record, ignoring the rest of it");
+				break;
+			}
+
+			byte type = record.get();
+			long sequence = record.getLong();
+			lastSequence = Math.max(lastSequence, sequence);
+			if (type == RECORD_SAVE) {
+				mRecovered.put(sequence, Entry.decode(record));
+				mUnacked.put(sequence, segment);
+				segment.mUnacked++;
+			} else if (type == RECORD_ACK) {
+				mRecovered.remove(sequence);
+				mReplayFailures.remove(sequence);
+				Segment saved = mUnacked.remove(sequence);
+				if (saved != null) {
+					saved.mUnacked--;
+				}
+			} else if (type == RECORD_REPLAY_FAILED && mRecovered.containsKey(sequence)) {
+				mReplayFailures.merge(sequence, 1, Integer::sum);
+			}
+		}
+		return lastSequence;
+	}
+
+	/* Must hold this. The entry, if any, is encoded directly into the mapped segment */
+	private void writeRecord(byte type, long sequence, @Nullable Entry entry) {
+		int length = 1 + 8 + (entry == null ? 0 : entry.encodedSize());
+		if (mCurrent.mBuffer.remaining() < 4 + length + 4) {
+			rollSegment(4 + length + 4);
+		}
+
+		MappedByteBuffer buffer = mCurrent.mBuffer;
+		int start = buffer.position();
+		buffer.putInt(length);
+		buffer.put(type);
+		buffer.putLong(sequence);
+		if (entry != null) {
+			entry.encode(buffer);
+		}
+
+		ByteBuffer record = buffer.duplicate();
+		record.position(start + 4);
+		record.limit(start + 4 + length);
+		CRC32 crc = new CRC32();
+		crc.update(record);
+		buffer.putInt((int) crc.getValue());
+
+		mDirtySegments.add(mCurrent);
+	}
+
+	/* Must hold this */
+	private void rollSegment(int minimumBytes) {
+		try {
+			mCurrent = createSegment(Math.max(mSegmentBytes, minimumBytes));
+		} catch (IOException ex) {
+			throw new IllegalStateException("Failed to create save journal segment", ex);
+		}
+	}
+
+	/* Must hold this, or be in the constructor */
+	private Segment createSegment(int size) throws IOException {
+		Path path = mDirectory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, mLastSegmentIndex + 1, SEGMENT_SUFFIX));
+		Segment segment;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			segment = new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+		}
+		mLastSegmentIndex++;
+		mSegments.addLast(segment);
+		return segment;
+	}
+
+	/* Must hold this. Segments are only deleted oldest first, so an acknowledgement is never deleted before its save */
+	private void deleteAcknowledgedSegments() {
+		while (!mSegments.isEmpty() && mSegments.peekFirst() != mCurrent && mSegments.peekFirst().mUnacked <= 0) {
+			Segment segment = mSegments.removeFirst();
+			mDirtySegments.remove(segment);
+			try {
+				Files.deleteIfExists(segment.mPath);
+			} catch (IOException ex) {
+				mLogger.warning("Failed to delete save journal segment " + segment.mPath + ": " + ex);
+			}
+		}
+	}
+
+	private void sync() {
+		List<Segment> dirty;
+		synchronized (this) {
+			Long ack;
+			while ((ack = mPendingAcks.poll()) != null) {
+				acknowledgeNow(ack);
+			}
+			if (mDirtySegments.isEmpty()) {
+				return;
+			}
+			dirty = new ArrayList<>(mDirtySegments);
+			mDirtySegments.clear();
+		}
+
+		try {
+			for (Segment segment : dirty) {
+				segment.mBuffer.force();
+			}
+		} catch (Exception ex) {
+			mLogger.log(Level.SEVERE, "Failed to sync save journal", ex);
+		}
+	}
+
+	/**
+	 * Number of saves written to the journal that Redis has not acknowledged yet
+	 */
+	public synchronized int getUnacknowledged() {
+		return mUnacked.size();
+	}
+}
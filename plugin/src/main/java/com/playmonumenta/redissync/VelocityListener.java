@@ -12,6 +12,7 @@ import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.ServerConnection;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
 import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import net.kyori.adventure.text.Component;
@@ -100,11 +101,22 @@ public class VelocityListener {
 		String name = player.getUsername();
 		UUID uuid = player.getUniqueId();
 
-		RedisAsyncCommands<String, String> async = RedisAPI.getInstance().async();
-		async.multi();
+		RedisAPI api = RedisAPI.getInstance();
+		if (api.isCluster()) {
+			/* The two hashes are in different slots on a cluster, where they can't be updated in one transaction */
+			setName(api.async(), uuid, name, false);
+		} else {
+			RedisAsyncCommands<String, String> async = api.asyncForKey(uuidToNamePath);
+			async.multi();
+			setName(async, uuid, name, true);
+			async.exec();
+		}
+	}
+
+	private static void setName(RedisClusterAsyncCommands<String, String> async, UUID uuid, String name, boolean transaction) {
 		async.hset(uuidToNamePath, uuid.toString(), name);
 		async.hset(nameToUUIDPath, name, uuid.toString());
-		async.exec();
+		NameCacheLoader.recordChange(async, uuid, name, System.currentTimeMillis(), transaction);
 	}
 
 	private String locationsKey() {
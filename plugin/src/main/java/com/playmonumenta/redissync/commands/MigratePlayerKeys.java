@@ -0,0 +1,70 @@
+package com.playmonumenta.redissync.commands;
+
+import com.playmonumenta.redissync.MonumentaRedisSync;
+import com.playmonumenta.redissync.MonumentaRedisSyncAPI;
+import com.playmonumenta.redissync.config.CommonConfig;
+import dev.jorel.commandapi.CommandAPI;
+import dev.jorel.commandapi.CommandAPICommand;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.Bukkit;
+
+/**
+ * Moves every known player's keys to the hash tagged key layout, see {@link MonumentaRedisSyncAPI#migratePlayerKeys(UUID)}.
+ * <p>
+ * Players are also migrated individually when they log in, so this only needs to run once to catch everyone else.
+ * All work is done on an async thread, so the server can keep running while this is in progress.
+ */
+public class MigratePlayerKeys {
+	public static void register(MonumentaRedisSync plugin) {
+		new CommandAPICommand("monumenta")
+			.withSubcommand(new CommandAPICommand("redissync")
+				.withSubcommand(new CommandAPICommand("migratekeys")
+					.executesPlayer((player, args) -> {
+						player.sendMessage("This command is only available from the console");
+					})
+					.executesConsole((console, args) -> {
+						if (!CommonConfig.getHashTagPlayerKeys()) {
+							throw CommandAPI.failWithString("hash_tag_player_keys and redis_cluster are both disabled, there is nothing to migrate to");
+						}
+						Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> run(plugin));
+					})
+				)).register();
+	}
+
+	private static void run(MonumentaRedisSync mrs) {
+		Bukkit.getServer().sendMessage(Component.text("Player key migration has started"));
+
+		try {
+			Set<UUID> players = MonumentaRedisSyncAPI.getAllPlayerUUIDs().get(MonumentaRedisSyncAPI.TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			int processed = 0;
+			int movedKeys = 0;
+			int failed = 0;
+
+			for (UUID uuid : players) {
+				try {
+					movedKeys += MonumentaRedisSyncAPI.migratePlayerKeys(uuid).get(MonumentaRedisSyncAPI.TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				} catch (Exception ex) {
+					failed++;
+					mrs.getLogger().warning("Failed to migrate keys for player " + uuid + ": " + ex.getMessage());
+				}
+
+				processed++;
+				if (processed % 1000 == 0) {
+					Bukkit.getServer().sendMessage(Component.text("  Players left to process: " + (players.size() - processed)));
+				}
+			}
+
+			Bukkit.getServer().sendMessage(Component.text("Player key migration complete: moved " + movedKeys + " keys for " + processed + " players"));
+			if (failed > 0) {
+				Bukkit.getServer().sendMessage(Component.text("Failed to migrate " + failed + " players, see the log for details").color(NamedTextColor.RED));
+			}
+		} catch (Exception ex) {
+			Bukkit.getServer().sendMessage(Component.text("Player key migration failed: " + ex.getMessage()).color(NamedTextColor.RED));
+			ex.printStackTrace();
+		}
+	}
+}
@@ -35,7 +35,8 @@ public class PlayerHistory {
 		Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
 			// ASYNC
 			RedisAPI api = RedisAPI.getInstance();
-			List<String> history = api.async().lrange(MonumentaRedisSyncAPI.getRedisHistoryPath(target), 0, -1).toCompletableFuture().join();
+			String historyPath = MonumentaRedisSyncAPI.getRedisHistoryPath(target);
+			List<String> history = api.asyncRead(RedisAPI.ReadSource.HISTORY, historyPath).lrange(historyPath, 0, -1).toCompletableFuture().join();
 
 			Bukkit.getScheduler().runTask(plugin, () -> {
 				// SYNC
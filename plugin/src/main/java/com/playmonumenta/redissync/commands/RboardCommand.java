@@ -1,5 +1,6 @@
 package com.playmonumenta.redissync.commands;
 
+import com.playmonumenta.redissync.HashScan;
 import com.playmonumenta.redissync.MonumentaRedisSyncAPI;
 import com.playmonumenta.redissync.RBoardAPI;
 import com.playmonumenta.redissync.utils.ScoreboardUtils;
@@ -12,6 +13,7 @@ import dev.jorel.commandapi.arguments.FunctionArgument;
 import dev.jorel.commandapi.arguments.IntegerArgument;
 import dev.jorel.commandapi.arguments.LiteralArgument;
 import dev.jorel.commandapi.arguments.ObjectiveArgument;
+import dev.jorel.commandapi.arguments.StringArgument;
 import dev.jorel.commandapi.arguments.TextArgument;
 import dev.jorel.commandapi.exceptions.WrapperCommandSyntaxException;
 import dev.jorel.commandapi.executors.CommandArguments;
@@ -34,6 +36,8 @@ import org.bukkit.scoreboard.Objective;
 public class RboardCommand {
 	static final String COMMAND = "rboard";
 	static final CommandPermission PERMS = CommandPermission.fromString("monumenta.command.rboard");
+	/* Small enough to read in chat, HSCAN treats it as a hint anyway */
+	private static final int GETALL_PAGE_SIZE = 50;
 
 	@FunctionalInterface
 	public interface RboardAction {
@@ -102,6 +106,22 @@ public class RboardCommand {
 			.register();
 	}
 
+	private static void sendEntries(CommandSender sender, Map<String, String> data) {
+		List<Component> entryComponents = new ArrayList<>();
+		for (Map.Entry<String, String> entry : data.entrySet()) {
+			entryComponents.add(
+				Component.text(entry.getKey(), NamedTextColor.GOLD)
+					.append(Component.text("=", NamedTextColor.WHITE))
+					.append(Component.text(entry.getValue(), NamedTextColor.GREEN))
+			);
+		}
+		sender.sendMessage(
+			Component.text("[", NamedTextColor.WHITE)
+				.append(Component.join(JoinConfiguration.spaces(), entryComponents))
+				.append(Component.text("]"))
+		);
+	}
+
 	@SuppressWarnings("DataFlowIssue")
 	public static void register(Plugin plugin) {
 		List<Argument<?>> arguments = new ArrayList<>(40);
@@ -110,6 +130,7 @@ public class RboardCommand {
 		IntegerArgument valueArg = new IntegerArgument("value");
 		ObjectiveArgument objectiveToAddArg = new ObjectiveArgument("objectiveToAdd");
 		FunctionArgument functionArg = new FunctionArgument("function");
+		StringArgument cursorArg = new StringArgument("cursor");
 
 		/* ******************* Set ******************* */
 		RboardAction action = (sender, args, rboardName, scoreboardName) -> {
@@ -199,19 +220,7 @@ public class RboardCommand {
 				if (except != null) {
 					plugin.getLogger().log(Level.SEVERE, "rboard getall failed:" + except.getMessage(), except);
 				} else {
-					List<Component> entryComponents = new ArrayList<>();
-					for (Map.Entry<String, String> entry : data.entrySet()) {
-						entryComponents.add(
-							Component.text(entry.getKey(), NamedTextColor.GOLD)
-								.append(Component.text("=", NamedTextColor.WHITE))
-								.append(Component.text(entry.getValue(), NamedTextColor.GREEN))
-						);
-					}
-					sender.sendMessage(
-						Component.text("[", NamedTextColor.WHITE)
-							.append(Component.join(JoinConfiguration.spaces(), entryComponents))
-							.append(Component.text("]"))
-					);
+					sendEntries(sender, data);
 				}
 			});
 
@@ -220,6 +229,24 @@ public class RboardCommand {
 		arguments.add(playersArg);
 		regWrapper(arguments, action);
 
+		/* ******************* GetAll (paged) ******************* */
+		action = (sender, args, rboardName, scoreboardName)
+			-> MonumentaRedisSyncAPI.runOnMainThreadWhenComplete(plugin,
+			RBoardAPI.getAllPage(rboardName, args.getByArgument(cursorArg), GETALL_PAGE_SIZE),
+			(HashScan.Page page, Throwable except) -> {
+				if (except != null) {
+					plugin.getLogger().log(Level.SEVERE, "rboard getall failed:" + except.getMessage(), except);
+				} else {
+					sendEntries(sender, page.getEntries());
+					if (!page.isFinished()) {
+						sender.sendMessage(Component.text("More entries, next cursor: " + page.getCursor(), NamedTextColor.GRAY));
+					}
+				}
+			});
+
+		arguments.add(cursorArg);
+		regWrapper(arguments, action);
+
 		/* ******************* Get ******************* */
 		action = (sender, args, rboardName, scoreboardName) -> {
 			String[] objects = new String[args.count() - 2];
@@ -0,0 +1,26 @@
+package com.playmonumenta.redissync.commands;
+
+import com.playmonumenta.redissync.MonumentaRedisSync;
+import com.playmonumenta.redissync.RedisStats;
+import com.playmonumenta.redissync.SaveJournal;
+import dev.jorel.commandapi.CommandAPICommand;
+import dev.jorel.commandapi.CommandPermission;
+
+public class RedisStatsCommand {
+	public static void register(MonumentaRedisSync plugin) {
+		new CommandAPICommand("monumenta")
+			.withSubcommand(new CommandAPICommand("redissync")
+				.withSubcommand(new CommandAPICommand("stats")
+					.withPermission(CommandPermission.fromString("monumenta.redissync.stats"))
+					.executes((sender, args) -> {
+						for (String line : RedisStats.getSummary()) {
+							sender.sendMessage(line);
+						}
+						SaveJournal journal = plugin.getSaveJournal();
+						if (journal != null) {
+							sender.sendMessage("Save journal: " + journal.getUnacknowledged() + " saves not yet acknowledged by redis");
+						}
+					})
+				)).register();
+	}
+}
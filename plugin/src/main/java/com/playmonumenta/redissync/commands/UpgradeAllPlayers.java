@@ -34,7 +34,7 @@ public class UpgradeAllPlayers {
 	private static void updatePlayer(MonumentaRedisSync mrs, UUID uuid) {
 		Bukkit.getServer().sendMessage(Component.text("Upgrading: " + uuid.toString()));
 		try {
-			RedisPlayerData data = MonumentaRedisSyncAPI.getOfflinePlayerData(uuid).get();
+			RedisPlayerData data = MonumentaRedisSyncAPI.getOfflinePlayerData(uuid, true).get();
 
 			if (data == null) {
 				return;
@@ -1,5 +1,6 @@
 package com.playmonumenta.redissync.config;
 
+import java.util.List;
 import java.util.logging.Logger;
 import org.jetbrains.annotations.Nullable;
 
@@ -10,23 +11,62 @@ public class BukkitConfig extends CommonConfig {
 	protected final int mTicksPerPlayerAutosave;
 	protected final boolean mSavingDisabled;
 	protected final boolean mScoreboardCleanupEnabled;
+	protected final int mMainThreadQueueBudgetMs;
+	protected final String mSaveJournalDir;
+	protected final int mSaveJournalSegmentMb;
+	protected final int mSaveJournalFsyncIntervalMs;
+	protected final boolean mRemoteDataCache;
+	protected final String mNameCacheSnapshotFile;
 
-	public BukkitConfig(Logger logger, String redisHost, int redisPort, String serverDomain, String shardName, int historyAmount, int ticksPerPlayerAutosave, boolean savingDisabled, boolean scoreboardCleanupEnabled) {
-		super(redisHost, redisPort, serverDomain, shardName);
+	public BukkitConfig(Logger logger, String redisHost, int redisPort, String serverDomain, String shardName, boolean redisPipelining, int redisPipelineFlushIntervalMs, boolean redisCluster, boolean hashTagPlayerKeys, List<String> redisReplicaHosts, List<String> redisReplicaReads, List<String> nearCachePrefixes, int nearCacheMaxKeys, String metricsFile, int metricsIntervalSeconds, int rboardCombineIntervalMs, int rboardCombineMaxPending, int leaderboardFlushIntervalMs, List<String> leaderboardGtObjectives, List<String> leaderboardLtObjectives, int leaderboardCacheTtlMs, int leaderboardWindowRetention, boolean leaderboardWindowAllTime, int historyAmount, int ticksPerPlayerAutosave, boolean savingDisabled, boolean scoreboardCleanupEnabled, int mainThreadQueueBudgetMs, String saveJournalDir, int saveJournalSegmentMb, int saveJournalFsyncIntervalMs, boolean remoteDataCache, String nameCacheSnapshotFile) {
+		super(redisHost, redisPort, serverDomain, shardName, redisPipelining, redisPipelineFlushIntervalMs, redisCluster, hashTagPlayerKeys, redisReplicaHosts, redisReplicaReads, nearCachePrefixes, nearCacheMaxKeys, metricsFile, metricsIntervalSeconds, rboardCombineIntervalMs, rboardCombineMaxPending, leaderboardFlushIntervalMs, leaderboardGtObjectives, leaderboardLtObjectives, leaderboardCacheTtlMs, leaderboardWindowRetention, leaderboardWindowAllTime);
 		mHistoryAmount = historyAmount;
 		mTicksPerPlayerAutosave = ticksPerPlayerAutosave;
 		mSavingDisabled = savingDisabled;
 		mScoreboardCleanupEnabled = scoreboardCleanupEnabled;
+		mMainThreadQueueBudgetMs = mainThreadQueueBudgetMs;
+		mSaveJournalDir = saveJournalDir;
+		mSaveJournalSegmentMb = saveJournalSegmentMb;
+		mSaveJournalFsyncIntervalMs = saveJournalFsyncIntervalMs;
+		mRemoteDataCache = remoteDataCache;
+		mNameCacheSnapshotFile = nameCacheSnapshotFile;
 
 		logger.info("Configuration:");
 		logger.info("  redis_host = " + (mRedisHost == null ? "null" : mRedisHost));
 		logger.info("  redis_port = " + mRedisPort);
 		logger.info("  server_domain = " + (mServerDomain == null ? "null" : mServerDomain));
 		logger.info("  shard_name = " + (mShardName == null ? "null" : mShardName));
+		logger.info("  redis_pipelining = " + mRedisPipelining);
+		logger.info("  redis_pipeline_flush_interval_ms = " + mRedisPipelineFlushIntervalMs);
+		logger.info("  redis_cluster = " + mRedisCluster);
+		logger.info("  hash_tag_player_keys = " + mHashTagPlayerKeys);
+		logger.info("  redis_replica_hosts = [" + String.join("  ", mRedisReplicaHosts) + "]");
+		logger.info("  redis_replica_reads = [" + String.join("  ", mRedisReplicaReads) + "]");
+		logger.info("  near_cache_prefixes = [" + String.join("  ", mNearCachePrefixes) + "]");
+		logger.info("  near_cache_max_keys = " + mNearCacheMaxKeys);
+		if (mRedisCluster && !mNearCachePrefixes.isEmpty()) {
+			logger.warning("near_cache_prefixes is ignored with redis_cluster enabled, the near cache is disabled");
+		}
+		logger.info("  metrics_file = " + mMetricsFile);
+		logger.info("  metrics_interval_seconds = " + mMetricsIntervalSeconds);
+		logger.info("  rboard_combine_interval_ms = " + mRboardCombineIntervalMs);
+		logger.info("  rboard_combine_max_pending = " + mRboardCombineMaxPending);
+		logger.info("  leaderboard_flush_interval_ms = " + mLeaderboardFlushIntervalMs);
+		logger.info("  leaderboard_gt_objectives = [" + String.join("  ", mLeaderboardGtObjectives) + "]");
+		logger.info("  leaderboard_lt_objectives = [" + String.join("  ", mLeaderboardLtObjectives) + "]");
+		logger.info("  leaderboard_cache_ttl_ms = " + mLeaderboardCacheTtlMs);
+		logger.info("  leaderboard_window_retention = " + mLeaderboardWindowRetention);
+		logger.info("  leaderboard_window_all_time = " + mLeaderboardWindowAllTime);
 		logger.info("  history_amount = " + mHistoryAmount);
 		logger.info("  ticks_per_player_autosave = " + mTicksPerPlayerAutosave);
 		logger.info("  saving_disabled = " + mSavingDisabled);
 		logger.info("  scoreboard_cleanup_enabled = " + mScoreboardCleanupEnabled);
+		logger.info("  main_thread_queue_budget_ms = " + mMainThreadQueueBudgetMs);
+		logger.info("  save_journal_dir = " + mSaveJournalDir);
+		logger.info("  save_journal_segment_mb = " + mSaveJournalSegmentMb);
+		logger.info("  save_journal_fsync_interval_ms = " + mSaveJournalFsyncIntervalMs);
+		logger.info("  remote_data_cache = " + mRemoteDataCache);
+		logger.info("  name_cache_snapshot_file = " + mNameCacheSnapshotFile);
 
 		COMMON_INSTANCE = this;
 		BUKKIT_INSTANCE = this;
@@ -55,4 +95,41 @@ public class BukkitConfig extends CommonConfig {
 	public static boolean getScoreboardCleanupEnabled() {
 		return getBukkitInstance().mScoreboardCleanupEnabled;
 	}
+
+	/**
+	 * How long the {@link com.playmonumenta.redissync.MainThreadExecutor} may spend running queued callbacks each tick
+	 */
+	public static int getMainThreadQueueBudgetMs() {
+		return getBukkitInstance().mMainThreadQueueBudgetMs;
+	}
+
+	/**
+	 * Directory for the local save journal, relative to the plugin data folder. Empty disables the journal
+	 */
+	public static String getSaveJournalDir() {
+		return getBukkitInstance().mSaveJournalDir;
+	}
+
+	public static int getSaveJournalSegmentMb() {
+		return getBukkitInstance().mSaveJournalSegmentMb;
+	}
+
+	public static int getSaveJournalFsyncIntervalMs() {
+		return getBukkitInstance().mSaveJournalFsyncIntervalMs;
+	}
+
+	/**
+	 * Whether remote data of players on this shard is kept in memory while they are online. Needs MonumentaNetworkRelay on every shard and the proxy, which announce their remote data writes
+	 */
+	public static boolean getRemoteDataCache() {
+		return getBukkitInstance().mRemoteDataCache;
+	}
+
+	/**
+	 * File the player name cache is saved to on shutdown and loaded from on startup, relative to the plugin data folder.
+	 * Empty to always load every name from redis
+	 */
+	public static String getNameCacheSnapshotFile() {
+		return getBukkitInstance().mNameCacheSnapshotFile;
+	}
 }
@@ -1,5 +1,7 @@
 package com.playmonumenta.redissync.config;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.jetbrains.annotations.Nullable;
 
 public class CommonConfig {
@@ -9,13 +11,49 @@ public class CommonConfig {
 	protected final int mRedisPort;
 	protected final String mServerDomain;
 	protected final String mShardName;
+	protected final boolean mRedisPipelining;
+	protected final int mRedisPipelineFlushIntervalMs;
+	protected final boolean mRedisCluster;
+	protected final boolean mHashTagPlayerKeys;
+	protected final List<String> mRedisReplicaHosts = new ArrayList<>();
+	protected final List<String> mRedisReplicaReads = new ArrayList<>();
+	protected final List<String> mNearCachePrefixes = new ArrayList<>();
+	protected final int mNearCacheMaxKeys;
+	protected final String mMetricsFile;
+	protected final int mMetricsIntervalSeconds;
+	protected final int mRboardCombineIntervalMs;
+	protected final int mRboardCombineMaxPending;
+	protected final int mLeaderboardFlushIntervalMs;
+	protected final List<String> mLeaderboardGtObjectives = new ArrayList<>();
+	protected final List<String> mLeaderboardLtObjectives = new ArrayList<>();
+	protected final int mLeaderboardCacheTtlMs;
+	protected final int mLeaderboardWindowRetention;
+	protected final boolean mLeaderboardWindowAllTime;
 
-	public CommonConfig(String redisHost, int redisPort, String serverDomain, String shardName) {
+	public CommonConfig(String redisHost, int redisPort, String serverDomain, String shardName, boolean redisPipelining, int redisPipelineFlushIntervalMs, boolean redisCluster, boolean hashTagPlayerKeys, List<String> redisReplicaHosts, List<String> redisReplicaReads, List<String> nearCachePrefixes, int nearCacheMaxKeys, String metricsFile, int metricsIntervalSeconds, int rboardCombineIntervalMs, int rboardCombineMaxPending, int leaderboardFlushIntervalMs, List<String> leaderboardGtObjectives, List<String> leaderboardLtObjectives, int leaderboardCacheTtlMs, int leaderboardWindowRetention, boolean leaderboardWindowAllTime) {
 		mRedisHost = redisHost;
 		mRedisPort = redisPort;
 		mServerDomain = serverDomain;
 		mShardName = shardName;
-
+		mRedisPipelining = redisPipelining;
+		mRedisPipelineFlushIntervalMs = redisPipelineFlushIntervalMs;
+		mRedisCluster = redisCluster;
+		/* Player keys must share a slot in cluster mode, so hash tags are always on there */
+		mHashTagPlayerKeys = hashTagPlayerKeys || redisCluster;
+		mRedisReplicaHosts.addAll(redisReplicaHosts);
+		mRedisReplicaReads.addAll(redisReplicaReads);
+		mNearCachePrefixes.addAll(nearCachePrefixes);
+		mNearCacheMaxKeys = nearCacheMaxKeys;
+		mMetricsFile = metricsFile;
+		mMetricsIntervalSeconds = metricsIntervalSeconds;
+		mRboardCombineIntervalMs = rboardCombineIntervalMs;
+		mRboardCombineMaxPending = rboardCombineMaxPending;
+		mLeaderboardFlushIntervalMs = leaderboardFlushIntervalMs;
+		mLeaderboardGtObjectives.addAll(leaderboardGtObjectives);
+		mLeaderboardLtObjectives.addAll(leaderboardLtObjectives);
+		mLeaderboardCacheTtlMs = leaderboardCacheTtlMs;
+		mLeaderboardWindowRetention = leaderboardWindowRetention;
+		mLeaderboardWindowAllTime = leaderboardWindowAllTime;
 	}
 
 	public static CommonConfig getCommonInstance() {
@@ -47,4 +85,130 @@ public class CommonConfig {
 	public static String getShardName() {
 		return getCommonInstance().mShardName;
 	}
+
+	/**
+	 * Whether commands sent through {@link com.playmonumenta.redissync.RedisAPI#pipelined()} are buffered
+	 * and written to Redis in batches instead of one socket write per command
+	 */
+	public static boolean getRedisPipelining() {
+		return getCommonInstance().mRedisPipelining;
+	}
+
+	public static int getRedisPipelineFlushIntervalMs() {
+		return getCommonInstance().mRedisPipelineFlushIntervalMs;
+	}
+
+	/**
+	 * Whether redis_host/redis_port point at a Redis Cluster node rather than a standalone server
+	 */
+	public static boolean getRedisCluster() {
+		return getCommonInstance().mRedisCluster;
+	}
+
+	/**
+	 * Whether per-player keys wrap the UUID in a {} hash tag, i.e. domain:playerdata:{uuid}:data
+	 * <p>
+	 * Always true if {@link #getRedisCluster()} is, so that all of a player's keys land in the same slot
+	 */
+	public static boolean getHashTagPlayerKeys() {
+		return getCommonInstance().mHashTagPlayerKeys;
+	}
+
+	/**
+	 * Replicas to read from, as host or host:port. If empty, replicas are discovered from the primary.
+	 * Ignored with redis_cluster, where replicas are always discovered from the cluster topology
+	 */
+	public static List<String> getRedisReplicaHosts() {
+		return new ArrayList<>(getCommonInstance().mRedisReplicaHosts);
+	}
+
+	/**
+	 * Names of the read-only APIs that may be served by a replica, see {@link com.playmonumenta.redissync.RedisAPI.ReadSource}.
+	 * If empty, no replica connection is made and everything reads from the primary
+	 */
+	public static List<String> getRedisReplicaReads() {
+		return new ArrayList<>(getCommonInstance().mRedisReplicaReads);
+	}
+
+	/**
+	 * Key prefixes (after the server domain, i.e. "rboard:event") whose hashes are cached locally by the
+	 * {@link com.playmonumenta.redissync.NearCache}. If empty, the near cache is disabled
+	 */
+	public static List<String> getNearCachePrefixes() {
+		return new ArrayList<>(getCommonInstance().mNearCachePrefixes);
+	}
+
+	public static int getNearCacheMaxKeys() {
+		return getCommonInstance().mNearCacheMaxKeys;
+	}
+
+	/**
+	 * File that {@link com.playmonumenta.redissync.RedisStats} periodically writes in the Prometheus text format,
+	 * i.e. in the node exporter's textfile collector directory. If empty, no file is written
+	 */
+	public static String getMetricsFile() {
+		return getCommonInstance().mMetricsFile;
+	}
+
+	public static int getMetricsIntervalSeconds() {
+		return getCommonInstance().mMetricsIntervalSeconds;
+	}
+
+	/**
+	 * How often {@link com.playmonumenta.redissync.RBoardAPI#add} increments are combined and flushed, in milliseconds.
+	 * If 0, every add is sent to Redis on its own
+	 */
+	public static int getRboardCombineIntervalMs() {
+		return getCommonInstance().mRboardCombineIntervalMs;
+	}
+
+	/**
+	 * Number of distinct pending (board, key) increments that triggers a flush before the interval is up
+	 */
+	public static int getRboardCombineMaxPending() {
+		return getCommonInstance().mRboardCombineMaxPending;
+	}
+
+	/**
+	 * How often {@link com.playmonumenta.redissync.LeaderboardAPI#updateAsync} updates are coalesced and flushed, in milliseconds.
+	 * If 0, every update is sent to Redis on its own
+	 */
+	public static int getLeaderboardFlushIntervalMs() {
+		return getCommonInstance().mLeaderboardFlushIntervalMs;
+	}
+
+	/**
+	 * Leaderboard objectives where only higher scores replace a player's entry (ZADD GT)
+	 */
+	public static List<String> getLeaderboardGtObjectives() {
+		return new ArrayList<>(getCommonInstance().mLeaderboardGtObjectives);
+	}
+
+	/**
+	 * Leaderboard objectives where only lower scores replace a player's entry (ZADD LT)
+	 */
+	public static List<String> getLeaderboardLtObjectives() {
+		return new ArrayList<>(getCommonInstance().mLeaderboardLtObjectives);
+	}
+
+	/**
+	 * How long {@link com.playmonumenta.redissync.LeaderboardAPI#getTop} results are cached, in milliseconds. If 0, nothing is cached
+	 */
+	public static int getLeaderboardCacheTtlMs() {
+		return getCommonInstance().mLeaderboardCacheTtlMs;
+	}
+
+	/**
+	 * How many windows of a windowed leaderboard are kept, counting the current one. Older windows expire
+	 */
+	public static int getLeaderboardWindowRetention() {
+		return getCommonInstance().mLeaderboardWindowRetention;
+	}
+
+	/**
+	 * Whether windowed leaderboard updates are also applied to the objective's all-time board
+	 */
+	public static boolean getLeaderboardWindowAllTime() {
+		return getCommonInstance().mLeaderboardWindowAllTime;
+	}
 }
@@ -17,10 +17,28 @@ public class ProxyConfig extends CommonConfig {
 		int redisPort,
 		String serverDomain,
 		String shardName,
+		boolean redisPipelining,
+		int redisPipelineFlushIntervalMs,
+		boolean redisCluster,
+		boolean hashTagPlayerKeys,
+		List<String> redisReplicaHosts,
+		List<String> redisReplicaReads,
+		List<String> nearCachePrefixes,
+		int nearCacheMaxKeys,
+		String metricsFile,
+		int metricsIntervalSeconds,
+		int rboardCombineIntervalMs,
+		int rboardCombineMaxPending,
+		int leaderboardFlushIntervalMs,
+		List<String> leaderboardGtObjectives,
+		List<String> leaderboardLtObjectives,
+		int leaderboardCacheTtlMs,
+		int leaderboardWindowRetention,
+		boolean leaderboardWindowAllTime,
 		String defaultServer,
 		List<String> excludedServers
 	) {
-		super(redisHost, redisPort, serverDomain, shardName);
+		super(redisHost, redisPort, serverDomain, shardName, redisPipelining, redisPipelineFlushIntervalMs, redisCluster, hashTagPlayerKeys, redisReplicaHosts, redisReplicaReads, nearCachePrefixes, nearCacheMaxKeys, metricsFile, metricsIntervalSeconds, rboardCombineIntervalMs, rboardCombineMaxPending, leaderboardFlushIntervalMs, leaderboardGtObjectives, leaderboardLtObjectives, leaderboardCacheTtlMs, leaderboardWindowRetention, leaderboardWindowAllTime);
 		mDefaultServer = defaultServer;
 		mExcludedServers.addAll(excludedServers);
 
@@ -29,6 +47,27 @@ public class ProxyConfig extends CommonConfig {
 		logger.info("  redis_port = {}", mRedisPort);
 		logger.info("  server_domain = {}", (mServerDomain == null ? "null" : mServerDomain));
 		logger.info("  shard_name = {}", (mShardName == null ? "null" : mShardName));
+		logger.info("  redis_pipelining = {}", mRedisPipelining);
+		logger.info("  redis_pipeline_flush_interval_ms = {}", mRedisPipelineFlushIntervalMs);
+		logger.info("  redis_cluster = {}", mRedisCluster);
+		logger.info("  hash_tag_player_keys = {}", mHashTagPlayerKeys);
+		logger.info("  redis_replica_hosts = [{}]", String.join("  ", mRedisReplicaHosts));
+		logger.info("  redis_replica_reads = [{}]", String.join("  ", mRedisReplicaReads));
+		logger.info("  near_cache_prefixes = [{}]", String.join("  ", mNearCachePrefixes));
+		logger.info("  near_cache_max_keys = {}", mNearCacheMaxKeys);
+		if (mRedisCluster && !mNearCachePrefixes.isEmpty()) {
+			logger.warn("near_cache_prefixes is ignored with redis_cluster enabled, the near cache is disabled");
+		}
+		logger.info("  metrics_file = {}", mMetricsFile);
+		logger.info("  metrics_interval_seconds = {}", mMetricsIntervalSeconds);
+		logger.info("  rboard_combine_interval_ms = {}", mRboardCombineIntervalMs);
+		logger.info("  rboard_combine_max_pending = {}", mRboardCombineMaxPending);
+		logger.info("  leaderboard_flush_interval_ms = {}", mLeaderboardFlushIntervalMs);
+		logger.info("  leaderboard_gt_objectives = [{}]", String.join("  ", mLeaderboardGtObjectives));
+		logger.info("  leaderboard_lt_objectives = [{}]", String.join("  ", mLeaderboardLtObjectives));
+		logger.info("  leaderboard_cache_ttl_ms = {}", mLeaderboardCacheTtlMs);
+		logger.info("  leaderboard_window_retention = {}", mLeaderboardWindowRetention);
+		logger.info("  leaderboard_window_all_time = {}", mLeaderboardWindowAllTime);
 		logger.info("  default_server = {}", (mDefaultServer == null ? "null" : mDefaultServer));
 		logger.info("  excluded_servers = [{}]", String.join("  ", mExcludedServers));
 
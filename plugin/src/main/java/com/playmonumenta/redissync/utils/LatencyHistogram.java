@@ -0,0 +1,92 @@
+package com.playmonumenta.redissync.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear histogram of durations in nanoseconds, in the style of HdrHistogram.
+ * <p>
+ * Every power of two is split into 16 linear buckets, so recorded values are accurate to within ~6%.
+ * Values above ~68 seconds are counted in the last bucket. Recording never allocates.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 36;
+	private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+	private final LongAdder mCount = new LongAdder();
+	private final LongAdder mSumNanos = new LongAdder();
+	private final AtomicLong mMaxNanos = new AtomicLong();
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		mCounts.incrementAndGet(bucketIndex(nanos));
+		mCount.increment();
+		mSumNanos.add(nanos);
+		mMaxNanos.accumulateAndGet(nanos, Math::max);
+	}
+
+	public long getCount() {
+		return mCount.sum();
+	}
+
+	public long getSumNanos() {
+		return mSumNanos.sum();
+	}
+
+	public long getMaxNanos() {
+		return mMaxNanos.get();
+	}
+
+	/**
+	 * Returns the approximate value at the given percentile (0-100), or 0 if nothing has been recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = mCounts.get(i);
+			total += counts[i];
+		}
+		if (total == 0) {
+			return 0;
+		}
+
+		long target = Math.max(1, (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= target) {
+				return Math.min(bucketUpperBound(i), getMaxNanos());
+			}
+		}
+		return getMaxNanos();
+	}
+
+	private static int bucketIndex(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		int subBucket = (int) ((nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+		return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long bucketUpperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+		int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+		long lower = (1L << exponent) + ((long) subBucket << (exponent - SUB_BUCKET_BITS));
+		return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+}
@@ -0,0 +1,379 @@
+package com.playmonumenta.redissync.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import javax.annotation.Nullable;
+
+/**
+ * Local index of the names every player has used, and of which players have used each name.
+ * <p>
+ * A player's history is kept as the same encoded string that is stored in Redis, "name:millis,name:millis,...", oldest
+ * first, where millis is when the player first logged in with that name after using a different one. Like
+ * {@link NameIndex}, most histories live in immutable arrays sorted by UUID (as pairs of longs), with one String per
+ * player that is only parsed when looked up. The reverse index is one row per lowercase name and player that used it,
+ * sorted by name, with when the player first and last started using it, so owner lookups never parse a history.
+ * Updates go to a small map first and are merged into new arrays once there are enough of them.
+ */
+public class NameHistoryIndex {
+	public static final class Entry {
+		private final String mName;
+		private final long mTimestamp;
+
+		public Entry(String name, long timestamp) {
+			mName = name;
+			mTimestamp = timestamp;
+		}
+
+		public String getName() {
+			return mName;
+		}
+
+		/**
+		 * When the player started using this name, in epoch millis, or 0 if that isn't known
+		 */
+		public long getTimestamp() {
+			return mTimestamp;
+		}
+	}
+
+	private static final int MIN_MERGE_THRESHOLD = 1024;
+	/* Merge once the pending updates are this fraction of the arrays, so merging costs O(1) amortized per update */
+	private static final int MERGE_FRACTION = 16;
+
+	private record Owner(UUID mUuid, long mFirstUsed, long mLastUsed) {
+	}
+
+	private static final class Tables {
+		private static final Tables EMPTY = new Tables(new long[0], new String[0], new String[0], new long[0], new long[0], new long[0]);
+
+		/* Sorted by UUID, UUID i is (mUuids[2i], mUuids[2i + 1]) */
+		private final long[] mUuids;
+		private final String[] mHistories;
+		/* One row per lowercase name and player, sorted by name. Player i is (mOwnerUuids[2i], mOwnerUuids[2i + 1]) */
+		private final String[] mOwnerNames;
+		private final long[] mOwnerUuids;
+		private final long[] mFirstUsed;
+		private final long[] mLastUsed;
+
+		private Tables(long[] uuids, String[] histories, String[] ownerNames, long[] ownerUuids, long[] firstUsed, long[] lastUsed) {
+			mUuids = uuids;
+			mHistories = histories;
+			mOwnerNames = ownerNames;
+			mOwnerUuids = ownerUuids;
+			mFirstUsed = firstUsed;
+			mLastUsed = lastUsed;
+		}
+	}
+
+	private volatile Tables mTables = Tables.EMPTY;
+	/* Histories updated since the last merge, replacing the tables' history of the same player. Only written holding this */
+	private final ConcurrentHashMap<UUID, String> mPending = new ConcurrentHashMap<>();
+	/* The players with a pending history that uses each lowercase name, as a small copy-on-write array */
+	private final ConcurrentHashMap<String, UUID[]> mPendingOwners = new ConcurrentHashMap<>();
+
+	/**
+	 * Replaces a player's history with one read from Redis or a snapshot
+	 */
+	public synchronized void put(UUID uuid, String history) {
+		if (history.equals(getHistoryString(uuid))) {
+			return;
+		}
+		putPending(uuid, history);
+	}
+
+	/**
+	 * Records that a player logged in with a name, unless it is the last name in their history already
+	 */
+	public synchronized void record(UUID uuid, String name, long timestamp) {
+		String history = getHistoryString(uuid);
+		if (history == null) {
+			putPending(uuid, name + ":" + timestamp);
+			return;
+		}
+		int lastStart = history.lastIndexOf(',') + 1;
+		if (!history.regionMatches(lastStart, name + ":", 0, name.length() + 1)) {
+			putPending(uuid, history + "," + name + ":" + timestamp);
+		}
+	}
+
+	/**
+	 * Returns every name the player has used, oldest first, or an empty list if the player's history isn't cached
+	 */
+	public List<Entry> getHistory(UUID uuid) {
+		String history = getHistoryString(uuid);
+		return history == null ? List.of() : decode(history);
+	}
+
+	public boolean containsHistory(UUID uuid) {
+		return getHistoryString(uuid) != null;
+	}
+
+	/**
+	 * Returns every player that has used a name (ignoring case), in the order they started using it
+	 */
+	public List<UUID> getOwners(String name) {
+		List<Owner> owners = getOwnerRows(name);
+		if (owners.size() > 1) {
+			owners.sort(Comparator.comparingLong(Owner::mFirstUsed));
+		}
+		List<UUID> result = new ArrayList<>(owners.size());
+		for (Owner owner : owners) {
+			result.add(owner.mUuid());
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the player that used a name (ignoring case) most recently, or null if nobody has used it
+	 */
+	public @Nullable UUID getLatestOwner(String name) {
+		Owner latest = null;
+		for (Owner owner : getOwnerRows(name)) {
+			if (latest == null || owner.mLastUsed() > latest.mLastUsed()) {
+				latest = owner;
+			}
+		}
+		return latest == null ? null : latest.mUuid();
+	}
+
+	public void forEachHistory(BiConsumer<UUID, String> consumer) {
+		Tables tables = mTables;
+		for (int i = 0; i < tables.mHistories.length; i++) {
+			UUID uuid = new UUID(tables.mUuids[2 * i], tables.mUuids[2 * i + 1]);
+			if (!mPending.containsKey(uuid)) {
+				consumer.accept(uuid, tables.mHistories[i]);
+			}
+		}
+		mPending.forEach(consumer);
+	}
+
+	public int size() {
+		Tables tables = mTables;
+		int size = tables.mHistories.length;
+		for (UUID uuid : mPending.keySet()) {
+			if (findUuid(tables.mUuids, uuid) < 0) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Parses a history string in the format stored in Redis, skipping malformed entries
+	 */
+	public static List<Entry> decode(String history) {
+		List<Entry> entries = new ArrayList<>();
+		int start = 0;
+		while (start < history.length()) {
+			int end = history.indexOf(',', start);
+			if (end < 0) {
+				end = history.length();
+			}
+			int separator = history.lastIndexOf(':', end - 1);
+			if (separator > start) {
+				try {
+					entries.add(new Entry(history.substring(start, separator), Long.parseLong(history.substring(separator + 1, end))));
+				} catch (NumberFormatException ex) {
+					/* Skip it */
+				}
+			}
+			start = end + 1;
+		}
+		return entries;
+	}
+
+	private @Nullable String getHistoryString(UUID uuid) {
+		String pending = mPending.get(uuid);
+		if (pending != null) {
+			return pending;
+		}
+		Tables tables = mTables;
+		int index = findUuid(tables.mUuids, uuid);
+		return index < 0 ? null : tables.mHistories[index];
+	}
+
+	/* Must hold this */
+	private void putPending(UUID uuid, String history) {
+		mPending.put(uuid, history);
+		for (Entry entry : decode(history)) {
+			mPendingOwners.compute(entry.getName().toLowerCase(Locale.ROOT), (unused, owners) -> {
+				if (owners == null) {
+					return new UUID[] {uuid};
+				}
+				for (UUID owner : owners) {
+					if (owner.equals(uuid)) {
+						return owners;
+					}
+				}
+				UUID[] added = Arrays.copyOf(owners, owners.length + 1);
+				added[owners.length] = uuid;
+				return added;
+			});
+		}
+		int threshold = Math.max(MIN_MERGE_THRESHOLD, mTables.mHistories.length / MERGE_FRACTION);
+		if (mPending.size() >= threshold) {
+			merge();
+		}
+	}
+
+	/* Every player that used a name, from the table rows of players without a pending history, and the pending histories */
+	private List<Owner> getOwnerRows(String name) {
+		String key = name.toLowerCase(Locale.ROOT);
+		List<Owner> owners = new ArrayList<>();
+		Tables tables = mTables;
+		for (int i = lowerBound(tables.mOwnerNames, key); i < tables.mOwnerNames.length && tables.mOwnerNames[i].equals(key); i++) {
+			UUID uuid = new UUID(tables.mOwnerUuids[2 * i], tables.mOwnerUuids[2 * i + 1]);
+			if (!mPending.containsKey(uuid)) {
+				owners.add(new Owner(uuid, tables.mFirstUsed[i], tables.mLastUsed[i]));
+			}
+		}
+		for (UUID uuid : mPendingOwners.getOrDefault(key, new UUID[0])) {
+			String history = mPending.get(uuid);
+			Owner owner = history == null ? null : ownerOf(uuid, history, key);
+			if (owner != null) {
+				owners.add(owner);
+			}
+		}
+		return owners;
+	}
+
+	private static @Nullable Owner ownerOf(UUID uuid, String history, String lowerName) {
+		long first = Long.MAX_VALUE;
+		long last = Long.MIN_VALUE;
+		for (Entry entry : decode(history)) {
+			if (entry.getName().equalsIgnoreCase(lowerName)) {
+				first = Math.min(first, entry.getTimestamp());
+				last = entry.getTimestamp();
+			}
+		}
+		return first == Long.MAX_VALUE ? null : new Owner(uuid, first, last);
+	}
+
+	private static int lowerBound(String[] sorted, String key) {
+		int low = 0;
+		int high = sorted.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sorted[mid].compareTo(key) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private static int findUuid(long[] uuids, UUID uuid) {
+		long msb = uuid.getMostSignificantBits();
+		long lsb = uuid.getLeastSignificantBits();
+		int low = 0;
+		int high = uuids.length / 2 - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compareUuid(uuids[2 * mid], uuids[2 * mid + 1], msb, lsb);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	private static int compareUuid(long msb1, long lsb1, long msb2, long lsb2) {
+		int cmp = Long.compare(msb1, msb2);
+		return cmp != 0 ? cmp : Long.compare(lsb1, lsb2);
+	}
+
+	/* Must hold this. Rebuilds the arrays with every pending history. Readers keep using the old tables until the new ones are published */
+	private void merge() {
+		Tables old = mTables;
+
+		/* Histories: merge two sorted sequences, pending entries replacing equal table entries */
+		List<Map.Entry<UUID, String>> pending = new ArrayList<>(mPending.entrySet());
+		pending.sort(Map.Entry.comparingByKey((a, b) -> compareUuid(a.getMostSignificantBits(), a.getLeastSignificantBits(), b.getMostSignificantBits(), b.getLeastSignificantBits())));
+		int oldCount = old.mHistories.length;
+		long[] uuids = new long[(oldCount + pending.size()) * 2];
+		String[] histories = new String[oldCount + pending.size()];
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while (i < oldCount || j < pending.size()) {
+			int cmp;
+			if (i >= oldCount) {
+				cmp = 1;
+			} else if (j >= pending.size()) {
+				cmp = -1;
+			} else {
+				UUID next = pending.get(j).getKey();
+				cmp = compareUuid(old.mUuids[2 * i], old.mUuids[2 * i + 1], next.getMostSignificantBits(), next.getLeastSignificantBits());
+			}
+			if (cmp < 0) {
+				uuids[2 * count] = old.mUuids[2 * i];
+				uuids[2 * count + 1] = old.mUuids[2 * i + 1];
+				histories[count] = old.mHistories[i];
+				i++;
+			} else {
+				Map.Entry<UUID, String> entry = pending.get(j);
+				uuids[2 * count] = entry.getKey().getMostSignificantBits();
+				uuids[2 * count + 1] = entry.getKey().getLeastSignificantBits();
+				histories[count] = entry.getValue();
+				j++;
+				if (cmp == 0) {
+					i++;
+				}
+			}
+			count++;
+		}
+		uuids = Arrays.copyOf(uuids, count * 2);
+		histories = Arrays.copyOf(histories, count);
+
+		/* Owner rows: parse every history once here, so lookups never have to */
+		List<String> rowNames = new ArrayList<>();
+		List<long[]> rows = new ArrayList<>();
+		Map<String, long[]> used = new HashMap<>();
+		for (int player = 0; player < count; player++) {
+			used.clear();
+			for (Entry entry : decode(histories[player])) {
+				long[] times = used.computeIfAbsent(entry.getName().toLowerCase(Locale.ROOT), unused -> new long[] {entry.getTimestamp(), 0});
+				times[1] = entry.getTimestamp();
+			}
+			for (Map.Entry<String, long[]> entry : used.entrySet()) {
+				rowNames.add(entry.getKey());
+				rows.add(new long[] {uuids[2 * player], uuids[2 * player + 1], entry.getValue()[0], entry.getValue()[1]});
+			}
+		}
+		Integer[] order = new Integer[rows.size()];
+		for (int row = 0; row < order.length; row++) {
+			order[row] = row;
+		}
+		Arrays.sort(order, Comparator.comparing(rowNames::get));
+		String[] ownerNames = new String[order.length];
+		long[] ownerUuids = new long[order.length * 2];
+		long[] firstUsed = new long[order.length];
+		long[] lastUsed = new long[order.length];
+		for (int row = 0; row < order.length; row++) {
+			long[] values = rows.get(order[row]);
+			ownerNames[row] = rowNames.get(order[row]);
+			ownerUuids[2 * row] = values[0];
+			ownerUuids[2 * row + 1] = values[1];
+			firstUsed[row] = values[2];
+			lastUsed[row] = values[3];
+		}
+
+		mTables = new Tables(uuids, histories, ownerNames, ownerUuids, firstUsed, lastUsed);
+		/* Writers hold this too, so nothing was added since the pending entries were copied */
+		mPending.clear();
+		mPendingOwners.clear();
+	}
+}
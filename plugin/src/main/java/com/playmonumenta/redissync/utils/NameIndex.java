@@ -0,0 +1,426 @@
+package com.playmonumenta.redissync.utils;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
+import javax.annotation.Nullable;
+
+/**
+ * Compact two-way index of player names and UUIDs, with prefix search for completion.
+ * <p>
+ * Most entries live in immutable sorted arrays: names (sorted case-insensitively, so a case-insensitive prefix is one
+ * contiguous range) with their UUIDs as pairs of longs, and UUIDs as pairs of longs with their current names, which
+ * share the String instances of the name arrays. Lookups binary search those arrays without locking or allocating.
+ * Updates go to small concurrent maps first, and are merged into new arrays once there are enough of them that
+ * rebuilding the arrays costs little per update.
+ * <p>
+ * Name lookups are case-sensitive unless noted otherwise, like {@link Trie}. A case-sensitive prefix search still
+ * scans the whole case-insensitive range of the prefix, so prefer {@link #suggestionsIgnoreCase} for short prefixes.
+ */
+public class NameIndex {
+	/* Case-insensitive first so prefixes of any case are contiguous, then case-sensitive so equal names compare equal */
+	public static final Comparator<String> NAME_ORDER = String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+	private static final int MIN_MERGE_THRESHOLD = 1024;
+	/* Merge once the pending updates are this fraction of the arrays, so merging costs O(1) amortized per update */
+	private static final int MERGE_FRACTION = 16;
+
+	private static final class Tables {
+		private static final Tables EMPTY = new Tables(0, new String[0], new long[0], new long[0], new String[0]);
+
+		private final NameSnapshot mSnapshot;
+
+		/* Sorted by NAME_ORDER, UUID i is (mNameUuids[2i], mNameUuids[2i + 1]) */
+		private final String[] mNames;
+		private final long[] mNameUuids;
+		/* Sorted by UUID, UUID i is (mUuids[2i], mUuids[2i + 1]) */
+		private final long[] mUuids;
+		private final String[] mUuidNames;
+
+		private Tables(long version, String[] names, long[] nameUuids, long[] uuids, String[] uuidNames) {
+			mSnapshot = new NameSnapshot(version, names);
+			mNames = names;
+			mNameUuids = nameUuids;
+			mUuids = uuids;
+			mUuidNames = uuidNames;
+		}
+	}
+
+	private volatile Tables mTables = Tables.EMPTY;
+	private final ConcurrentSkipListMap<String, UUID> mPendingNames = new ConcurrentSkipListMap<>(NAME_ORDER);
+	private final ConcurrentHashMap<UUID, String> mPendingUuids = new ConcurrentHashMap<>();
+
+	/**
+	 * Maps name to uuid (a player's current or past name). Does nothing if it already does
+	 */
+	public void putName(String name, UUID uuid) {
+		if (uuid.equals(getUuid(name))) {
+			return;
+		}
+		mPendingNames.put(name, uuid);
+		maybeMerge();
+	}
+
+	/**
+	 * Sets the current name of uuid. Does nothing if it already is
+	 */
+	public void putUuid(UUID uuid, String name) {
+		if (name.equals(getName(uuid))) {
+			return;
+		}
+		mPendingUuids.put(uuid, name);
+		maybeMerge();
+	}
+
+	public @Nullable UUID getUuid(String name) {
+		UUID pending = mPendingNames.get(name);
+		if (pending != null) {
+			return pending;
+		}
+		Tables tables = mTables;
+		int index = Arrays.binarySearch(tables.mNames, name, NAME_ORDER);
+		return index < 0 ? null : new UUID(tables.mNameUuids[2 * index], tables.mNameUuids[2 * index + 1]);
+	}
+
+	public @Nullable String getName(UUID uuid) {
+		String pending = mPendingUuids.get(uuid);
+		if (pending != null) {
+			return pending;
+		}
+		Tables tables = mTables;
+		int index = findUuid(tables.mUuids, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+		return index < 0 ? null : tables.mUuidNames[index];
+	}
+
+	public boolean containsName(String name) {
+		return getUuid(name) != null;
+	}
+
+	/**
+	 * Returns the longest name that key starts with, or null if there is none. Same as {@link Trie#closestKey}
+	 */
+	public @Nullable String closestKey(@Nullable String key) {
+		if (key == null) {
+			key = "";
+		}
+		for (int length = key.length(); length >= 0; length--) {
+			String candidate = key.substring(0, length);
+			if (containsName(candidate)) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns up to limit names starting with start (case-sensitive), in sorted order
+	 */
+	public List<String> suggestions(@Nullable String start, int limit) {
+		return prefixSearch(start == null ? "" : start, limit, false);
+	}
+
+	/**
+	 * Returns up to limit names starting with start, ignoring case, in sorted order
+	 */
+	public List<String> suggestionsIgnoreCase(@Nullable String start, int limit) {
+		return prefixSearch(start == null ? "" : start, limit, true);
+	}
+
+	/**
+	 * Returns every name starting with prefix, ignoring case, in sorted order. Nothing is copied: when no pending
+	 * update matches this is a view of the current snapshot, otherwise a view that merges it with the pending names
+	 * while iterating
+	 */
+	public Collection<String> withPrefix(@Nullable String prefix) {
+		String start = prefix == null ? "" : prefix;
+		Tables tables = mTables;
+		if (nextMatching(pendingFrom(start), start) == null) {
+			return tables.mSnapshot.withPrefix(start);
+		}
+		return new AbstractCollection<>() {
+			@Override
+			public Iterator<String> iterator() {
+				return new MergingIterator(tables, start);
+			}
+
+			@Override
+			public int size() {
+				int size = 0;
+				for (Iterator<String> it = iterator(); it.hasNext(); it.next()) {
+					size++;
+				}
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * Returns every name, including pending updates, as a new sorted list
+	 */
+	public List<String> getNames() {
+		return prefixSearch("", Integer.MAX_VALUE, true);
+	}
+
+	/**
+	 * Returns the immutable sorted snapshot of the names as of the last merge. Names updated since then may be
+	 * missing until enough updates are pending to merge them; {@link #withPrefix} and {@link #getNames} include them
+	 */
+	public NameSnapshot getSnapshot() {
+		return mTables.mSnapshot;
+	}
+
+	/**
+	 * Calls action with every name and the UUID it maps to, in sorted order, including pending updates
+	 */
+	public void forEachName(BiConsumer<String, UUID> action) {
+		Tables tables = mTables;
+		for (Iterator<String> it = new MergingIterator(tables, ""); it.hasNext(); ) {
+			String name = it.next();
+			UUID uuid = getUuid(name);
+			if (uuid != null) {
+				action.accept(name, uuid);
+			}
+		}
+	}
+
+	/**
+	 * Calls action with every UUID and its current name, including pending updates
+	 */
+	public void forEachUuid(BiConsumer<UUID, String> action) {
+		Tables tables = mTables;
+		for (int i = 0; i < tables.mUuidNames.length; i++) {
+			UUID uuid = new UUID(tables.mUuids[2 * i], tables.mUuids[2 * i + 1]);
+			String pending = mPendingUuids.get(uuid);
+			action.accept(uuid, pending != null ? pending : tables.mUuidNames[i]);
+		}
+		mPendingUuids.forEach((uuid, name) -> {
+			if (findUuid(tables.mUuids, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) < 0) {
+				action.accept(uuid, name);
+			}
+		});
+	}
+
+	/**
+	 * Number of distinct names, including pending updates
+	 */
+	public int nameCount() {
+		Tables tables = mTables;
+		int count = tables.mNames.length;
+		for (String name : mPendingNames.keySet()) {
+			if (Arrays.binarySearch(tables.mNames, name, NAME_ORDER) < 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Number of distinct UUIDs, including pending updates
+	 */
+	public int uuidCount() {
+		Tables tables = mTables;
+		int count = tables.mUuidNames.length;
+		for (UUID uuid : mPendingUuids.keySet()) {
+			if (findUuid(tables.mUuids, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) < 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private List<String> prefixSearch(String prefix, int limit, boolean ignoreCase) {
+		List<String> result = new ArrayList<>();
+		for (Iterator<String> it = new MergingIterator(mTables, prefix); result.size() < limit && it.hasNext(); ) {
+			String next = it.next();
+			if (ignoreCase || next.startsWith(prefix)) {
+				result.add(next);
+			}
+		}
+		return result;
+	}
+
+	/* The all upper case form is the first in NAME_ORDER of all the strings equal to prefix ignoring case */
+	private Iterator<String> pendingFrom(String prefix) {
+		return mPendingNames.tailMap(prefix.toUpperCase(Locale.ROOT), true).keySet().iterator();
+	}
+
+	/* Names starting with a prefix (ignoring case) from the tables and the pending names, in NAME_ORDER, pending entries shadowing equal table entries */
+	private final class MergingIterator implements Iterator<String> {
+		private final String[] mNames;
+		private final String mPrefix;
+		private final Iterator<String> mPending;
+		private int mIndex;
+		private @Nullable String mNextPending;
+
+		private MergingIterator(Tables tables, String prefix) {
+			mNames = tables.mNames;
+			mPrefix = prefix;
+			mIndex = tables.mSnapshot.lowerBound(prefix);
+			mPending = pendingFrom(prefix);
+			mNextPending = nextMatching(mPending, prefix);
+		}
+
+		private @Nullable String nextTable() {
+			return mIndex < mNames.length && mNames[mIndex].regionMatches(true, 0, mPrefix, 0, mPrefix.length()) ? mNames[mIndex] : null;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return mNextPending != null || nextTable() != null;
+		}
+
+		@Override
+		public String next() {
+			String nextTable = nextTable();
+			String nextPending = mNextPending;
+			if (nextTable == null && nextPending == null) {
+				throw new NoSuchElementException();
+			}
+			int cmp = nextTable == null ? 1 : nextPending == null ? -1 : NAME_ORDER.compare(nextTable, nextPending);
+			if (cmp < 0) {
+				mIndex++;
+				return nextTable;
+			}
+			mNextPending = nextMatching(mPending, mPrefix);
+			if (cmp == 0) {
+				mIndex++;
+			}
+			return nextPending;
+		}
+	}
+
+	private static @Nullable String nextMatching(Iterator<String> iterator, String prefix) {
+		if (iterator.hasNext()) {
+			String next = iterator.next();
+			if (next.regionMatches(true, 0, prefix, 0, prefix.length())) {
+				return next;
+			}
+		}
+		return null;
+	}
+
+	private static int findUuid(long[] uuids, long msb, long lsb) {
+		int low = 0;
+		int high = uuids.length / 2 - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compareUuid(uuids[2 * mid], uuids[2 * mid + 1], msb, lsb);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	private static int compareUuid(long msb1, long lsb1, long msb2, long lsb2) {
+		int cmp = Long.compare(msb1, msb2);
+		return cmp != 0 ? cmp : Long.compare(lsb1, lsb2);
+	}
+
+	private void maybeMerge() {
+		int threshold = Math.max(MIN_MERGE_THRESHOLD, mTables.mNames.length / MERGE_FRACTION);
+		if (mPendingNames.size() >= threshold || mPendingUuids.size() >= threshold) {
+			merge();
+		}
+	}
+
+	/* Rebuilds the arrays with every pending update. Readers keep using the old tables until the new ones are published */
+	private synchronized void merge() {
+		if (mPendingNames.isEmpty() && mPendingUuids.isEmpty()) {
+			return;
+		}
+		Tables old = mTables;
+
+		/* Names: merge two sorted sequences, pending entries replacing equal table entries */
+		List<Map.Entry<String, UUID>> pendingNames = new ArrayList<>(mPendingNames.entrySet());
+		String[] names = new String[old.mNames.length + pendingNames.size()];
+		long[] nameUuids = new long[names.length * 2];
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while (i < old.mNames.length || j < pendingNames.size()) {
+			int cmp = i >= old.mNames.length ? 1 : j >= pendingNames.size() ? -1 : NAME_ORDER.compare(old.mNames[i], pendingNames.get(j).getKey());
+			if (cmp < 0) {
+				names[count] = old.mNames[i];
+				nameUuids[2 * count] = old.mNameUuids[2 * i];
+				nameUuids[2 * count + 1] = old.mNameUuids[2 * i + 1];
+				i++;
+			} else {
+				Map.Entry<String, UUID> entry = pendingNames.get(j);
+				names[count] = entry.getKey();
+				nameUuids[2 * count] = entry.getValue().getMostSignificantBits();
+				nameUuids[2 * count + 1] = entry.getValue().getLeastSignificantBits();
+				j++;
+				if (cmp == 0) {
+					i++;
+				}
+			}
+			count++;
+		}
+		names = Arrays.copyOf(names, count);
+		nameUuids = Arrays.copyOf(nameUuids, count * 2);
+
+		/* UUIDs: same, after sorting the pending ones */
+		List<Map.Entry<UUID, String>> pendingUuids = new ArrayList<>(mPendingUuids.entrySet());
+		pendingUuids.sort(Map.Entry.comparingByKey((a, b) -> compareUuid(a.getMostSignificantBits(), a.getLeastSignificantBits(), b.getMostSignificantBits(), b.getLeastSignificantBits())));
+		int oldUuidCount = old.mUuidNames.length;
+		long[] uuids = new long[(oldUuidCount + pendingUuids.size()) * 2];
+		String[] uuidNames = new String[oldUuidCount + pendingUuids.size()];
+		count = 0;
+		i = 0;
+		j = 0;
+		while (i < oldUuidCount || j < pendingUuids.size()) {
+			int cmp;
+			if (i >= oldUuidCount) {
+				cmp = 1;
+			} else if (j >= pendingUuids.size()) {
+				cmp = -1;
+			} else {
+				UUID pending = pendingUuids.get(j).getKey();
+				cmp = compareUuid(old.mUuids[2 * i], old.mUuids[2 * i + 1], pending.getMostSignificantBits(), pending.getLeastSignificantBits());
+			}
+			if (cmp < 0) {
+				uuids[2 * count] = old.mUuids[2 * i];
+				uuids[2 * count + 1] = old.mUuids[2 * i + 1];
+				uuidNames[count] = old.mUuidNames[i];
+				i++;
+			} else {
+				Map.Entry<UUID, String> entry = pendingUuids.get(j);
+				uuids[2 * count] = entry.getKey().getMostSignificantBits();
+				uuids[2 * count + 1] = entry.getKey().getLeastSignificantBits();
+				/* Share the name arrays' copy of the string where there is one */
+				int nameIndex = Arrays.binarySearch(names, entry.getValue(), NAME_ORDER);
+				uuidNames[count] = nameIndex >= 0 ? names[nameIndex] : entry.getValue();
+				j++;
+				if (cmp == 0) {
+					i++;
+				}
+			}
+			count++;
+		}
+
+		mTables = new Tables(old.mSnapshot.getVersion() + 1, names, nameUuids, Arrays.copyOf(uuids, count * 2), Arrays.copyOf(uuidNames, count));
+
+		/* Only now that they are visible in the tables, and only if they weren't updated again in the meantime */
+		for (Map.Entry<String, UUID> entry : pendingNames) {
+			mPendingNames.remove(entry.getKey(), entry.getValue());
+		}
+		for (Map.Entry<UUID, String> entry : pendingUuids) {
+			mPendingUuids.remove(entry.getKey(), entry.getValue());
+		}
+	}
+}
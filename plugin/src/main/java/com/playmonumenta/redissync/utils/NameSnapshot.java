@@ -0,0 +1,89 @@
+package com.playmonumenta.redissync.utils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable sorted view of every name in a {@link NameIndex} at one point in time.
+ * <p>
+ * Names are in {@link NameIndex#NAME_ORDER}, so all the names starting with a prefix (ignoring case) are one
+ * contiguous range, found with a binary search. Every list returned is a view of the same array, nothing is copied.
+ * The version increases every time the index's names change, so callers can cheaply tell whether anything they
+ * derived from a snapshot is out of date.
+ */
+public final class NameSnapshot {
+	private final long mVersion;
+	private final String[] mNames;
+	private final List<String> mView;
+
+	NameSnapshot(long version, String[] names) {
+		mVersion = version;
+		mNames = names;
+		mView = Collections.unmodifiableList(Arrays.asList(names));
+	}
+
+	public long getVersion() {
+		return mVersion;
+	}
+
+	public int size() {
+		return mNames.length;
+	}
+
+	public String get(int index) {
+		return mNames[index];
+	}
+
+	/**
+	 * All names, sorted
+	 */
+	public List<String> getNames() {
+		return mView;
+	}
+
+	/**
+	 * All names starting with prefix, ignoring case, sorted. O(log n)
+	 */
+	public List<String> withPrefix(String prefix) {
+		int start = lowerBound(prefix);
+		int end = start;
+		/* Find the end of the range by galloping, then binary searching, so a short range stays O(log n) */
+		int step = 1;
+		while (end + step <= mNames.length && startsWithIgnoreCase(mNames[end + step - 1], prefix)) {
+			end += step;
+			step *= 2;
+		}
+		int high = Math.min(mNames.length, end + step - 1);
+		while (end < high) {
+			int mid = (end + high) >>> 1;
+			if (startsWithIgnoreCase(mNames[mid], prefix)) {
+				end = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return mView.subList(start, end);
+	}
+
+	/**
+	 * Index of the first name not less than prefix, ignoring case
+	 */
+	public int lowerBound(String prefix) {
+		int low = 0;
+		int high = mNames.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (String.CASE_INSENSITIVE_ORDER.compare(mNames[mid], prefix) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private static boolean startsWithIgnoreCase(String name, String prefix) {
+		return name.regionMatches(true, 0, prefix, 0, prefix.length());
+	}
+}
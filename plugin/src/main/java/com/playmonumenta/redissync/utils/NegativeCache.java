@@ -0,0 +1,55 @@
+package com.playmonumenta.redissync.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers for a short time that a lookup found nothing, so repeating it (i.e. a mistyped name in a command) doesn't
+ * go to Redis every time. Entries expire after a fixed TTL, and the whole cache is cleared if it ever grows past its
+ * maximum size, so it can't be used to fill the heap with junk lookups.
+ */
+public class NegativeCache<K> {
+	private final ConcurrentHashMap<K, Long> mExpiries = new ConcurrentHashMap<>();
+	private final long mTtlNanos;
+	private final int mMaxSize;
+
+	public NegativeCache(long ttlNanos, int maxSize) {
+		mTtlNanos = ttlNanos;
+		mMaxSize = maxSize;
+	}
+
+	/**
+	 * Records that looking up key found nothing
+	 */
+	public void add(K key) {
+		if (mExpiries.size() >= mMaxSize) {
+			long now = System.nanoTime();
+			mExpiries.values().removeIf(expiry -> expiry - now <= 0);
+			if (mExpiries.size() >= mMaxSize) {
+				mExpiries.clear();
+			}
+		}
+		mExpiries.put(key, System.nanoTime() + mTtlNanos);
+	}
+
+	/**
+	 * Whether looking up key recently found nothing
+	 */
+	public boolean contains(K key) {
+		Long expiry = mExpiries.get(key);
+		if (expiry == null) {
+			return false;
+		}
+		if (expiry - System.nanoTime() <= 0) {
+			mExpiries.remove(key, expiry);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Forgets key, i.e. once it has been found after all
+	 */
+	public void remove(K key) {
+		mExpiries.remove(key);
+	}
+}